@@ -0,0 +1,331 @@
+package com.chopping.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code com.chopping.rest.RestMapper} for every {@code com.chopping.rest.RestObject} annotated with
+ * {@code com.chopping.rest.RestMapping}.
+ * <p/>
+ * The generated mapper copies properties with plain getter and setter calls, no reflection and no intermediate
+ * objects.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RestMappingProcessor extends AbstractProcessor {
+	private static final String REST_MAPPING = "com.chopping.rest.RestMapping";
+	private static final String REST_MAPPER  = "com.chopping.rest.RestMapper";
+	private static final String SUFFIX       = "_RestMapper";
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton( REST_MAPPING );
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv ) {
+		TypeElement mapping = processingEnv.getElementUtils()
+										   .getTypeElement( REST_MAPPING );
+		if( mapping == null ) {
+			return false;
+		}
+		for( Element element : roundEnv.getElementsAnnotatedWith( mapping ) ) {
+			if( element.getKind() != ElementKind.CLASS ) {
+				error(
+						element,
+						"@RestMapping is only allowed on classes."
+				);
+				continue;
+			}
+			TypeElement restType = (TypeElement) element;
+			TypeElement dbType   = findDbType( restType );
+			if( dbType == null ) {
+				error(
+						restType,
+						"@RestMapping needs dbType."
+				);
+				continue;
+			}
+			try {
+				generate(
+						restType,
+						dbType
+				);
+			} catch( IOException e ) {
+				error(
+						restType,
+						"Can not write mapper: " + e.getMessage()
+				);
+			}
+		}
+		return true;
+	}
+
+	private TypeElement findDbType( TypeElement restType ) {
+		for( AnnotationMirror mirror : restType.getAnnotationMirrors() ) {
+			if( !( (TypeElement) mirror.getAnnotationType()
+									   .asElement() ).getQualifiedName()
+													 .contentEquals( REST_MAPPING ) ) {
+				continue;
+			}
+			for( Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues()
+																								 .entrySet() ) {
+				if( entry.getKey()
+						 .getSimpleName()
+						 .contentEquals( "dbType" ) ) {
+					TypeMirror type = (TypeMirror) entry.getValue()
+														.getValue();
+					return (TypeElement) ( (DeclaredType) type ).asElement();
+				}
+			}
+		}
+		return null;
+	}
+
+	private void generate( TypeElement restType, TypeElement dbType ) throws IOException {
+		Map<String, ExecutableElement> restGetters = getters( restType );
+		Map<String, ExecutableElement> restSetters = setters( restType );
+		Map<String, ExecutableElement> dbGetters   = getters( dbType );
+		Map<String, ExecutableElement> dbSetters   = setters( dbType );
+
+		ExecutableElement setStatus = dbSetters.get( "Status" );
+		if( setStatus == null || setStatus.getParameters()
+										  .get( 0 )
+										  .asType()
+										  .getKind() != TypeKind.INT ) {
+			error(
+					dbType,
+					dbType.getSimpleName() + " needs setStatus(int)."
+			);
+			return;
+		}
+		if( !hasPublicNoArgConstructor( restType ) || !hasPublicNoArgConstructor( dbType ) ) {
+			error(
+					restType,
+					"@RestMapping needs public no-arg constructors of " + restType.getSimpleName() + " and " + dbType.getSimpleName() + "."
+			);
+			return;
+		}
+
+		String packageName = processingEnv.getElementUtils()
+										  .getPackageOf( restType )
+										  .getQualifiedName()
+										  .toString();
+		String mapperName = flatName( restType ) + SUFFIX;
+		String restName   = restType.getQualifiedName()
+									.toString();
+		String dbName     = dbType.getQualifiedName()
+								  .toString();
+
+		StringBuilder toDB   = new StringBuilder();
+		StringBuilder fromDB = new StringBuilder();
+		for( Map.Entry<String, ExecutableElement> getter : restGetters.entrySet() ) {
+			String property = getter.getKey();
+			if( property.equals( "Status" ) ) {
+				continue;
+			}
+			ExecutableElement setter = dbSetters.get( property );
+			if( setter != null && sameType(
+					getter.getValue()
+						  .getReturnType(),
+					setter.getParameters()
+						  .get( 0 )
+						  .asType()
+			) ) {
+				toDB.append( "\t\tdbItem." )
+					.append( setter.getSimpleName() )
+					.append( "( restObject." )
+					.append( getter.getValue()
+								   .getSimpleName() )
+					.append( "() );\n" );
+			}
+		}
+		for( Map.Entry<String, ExecutableElement> getter : dbGetters.entrySet() ) {
+			String            property = getter.getKey();
+			ExecutableElement setter   = restSetters.get( property );
+			if( setter != null && sameType(
+					getter.getValue()
+						  .getReturnType(),
+					setter.getParameters()
+						  .get( 0 )
+						  .asType()
+			) ) {
+				fromDB.append( "\t\trestObject." )
+					  .append( setter.getSimpleName() )
+					  .append( "( dbItem." )
+					  .append( getter.getValue()
+									 .getSimpleName() )
+					  .append( "() );\n" );
+			}
+		}
+
+		JavaFileObject file = processingEnv.getFiler()
+										   .createSourceFile(
+												   packageName.isEmpty() ? mapperName : packageName + "." + mapperName,
+												   restType
+										   );
+		Writer writer = file.openWriter();
+		try {
+			if( !packageName.isEmpty() ) {
+				writer.write( "package " + packageName + ";\n\n" );
+			}
+			writer.write( "/**\n * Generated by RestMappingProcessor, do not edit.\n */\n" );
+			writer.write( "public final class " + mapperName + " implements " + REST_MAPPER + "<" + restName + ", " + dbName + "> {\n" );
+			writer.write( "\tpublic static final " + mapperName + " INSTANCE = new " + mapperName + "();\n\n" );
+			writer.write( "\tprivate " + mapperName + "() {\n\t}\n\n" );
+			writer.write( "\t@Override\n\tpublic " + dbName + " newDBItem() {\n\t\treturn new " + dbName + "();\n\t}\n\n" );
+			writer.write( "\t@Override\n\tpublic " + dbName + " toDB( " + restName + " restObject, " + dbName + " dbItem, int status ) {\n" );
+			writer.write( toDB.toString() );
+			writer.write( "\t\tdbItem." + setStatus.getSimpleName() + "( status );\n\t\treturn dbItem;\n\t}\n\n" );
+			writer.write( "\t@Override\n\tpublic " + restName + " fromDB( " + dbName + " dbItem ) {\n" );
+			writer.write( "\t\t" + restName + " restObject = new " + restName + "();\n" );
+			writer.write( fromDB.toString() );
+			writer.write( "\t\treturn restObject;\n\t}\n}\n" );
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * @return Public instance getters of {@code type} and its super classes associated with property names, i.e.
+	 * "ReqId" of "getReqId()".
+	 */
+	private Map<String, ExecutableElement> getters( TypeElement type ) {
+		Map<String, ExecutableElement> getters = new LinkedHashMap<>();
+		for( ExecutableElement method : methods( type ) ) {
+			String name = method.getSimpleName()
+								.toString();
+			if( !method.getParameters()
+					   .isEmpty() || method.getReturnType()
+										   .getKind() == TypeKind.VOID ) {
+				continue;
+			}
+			String property = null;
+			if( name.startsWith( "get" ) && name.length() > 3 && !name.equals( "getClass" ) ) {
+				property = name.substring( 3 );
+			} else if( name.startsWith( "is" ) && name.length() > 2 && method.getReturnType()
+																			 .getKind() == TypeKind.BOOLEAN ) {
+				property = name.substring( 2 );
+			}
+			if( property != null && !getters.containsKey( property ) ) {
+				getters.put(
+						property,
+						method
+				);
+			}
+		}
+		return getters;
+	}
+
+	/**
+	 * @return Public instance setters of {@code type} and its super classes associated with property names, i.e.
+	 * "ReqId" of "setReqId(String)".
+	 */
+	private Map<String, ExecutableElement> setters( TypeElement type ) {
+		Map<String, ExecutableElement> setters = new LinkedHashMap<>();
+		for( ExecutableElement method : methods( type ) ) {
+			String name = method.getSimpleName()
+								.toString();
+			if( name.startsWith( "set" ) && name.length() > 3 && method.getParameters()
+																	   .size() == 1 && !setters.containsKey( name.substring( 3 ) ) ) {
+				setters.put(
+						name.substring( 3 ),
+						method
+				);
+			}
+		}
+		return setters;
+	}
+
+	/**
+	 * @return Public non-static non-abstract methods of {@code type} and its super classes, sub classes first.
+	 */
+	private List<ExecutableElement> methods( TypeElement type ) {
+		List<ExecutableElement> methods = new ArrayList<>();
+		TypeElement             current = type;
+		while( current != null && !current.getQualifiedName()
+										  .contentEquals( "java.lang.Object" ) ) {
+			for( ExecutableElement method : ElementFilter.methodsIn( current.getEnclosedElements() ) ) {
+				Set<Modifier> modifiers = method.getModifiers();
+				if( modifiers.contains( Modifier.PUBLIC ) && !modifiers.contains( Modifier.STATIC ) && !modifiers.contains( Modifier.ABSTRACT ) ) {
+					methods.add( method );
+				}
+			}
+			TypeMirror superclass = current.getSuperclass();
+			current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ( (DeclaredType) superclass ).asElement() : null;
+		}
+		return methods;
+	}
+
+	private boolean hasPublicNoArgConstructor( TypeElement type ) {
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn( type.getEnclosedElements() );
+		for( ExecutableElement constructor : constructors ) {
+			if( constructor.getParameters()
+						   .isEmpty() && constructor.getModifiers()
+													.contains( Modifier.PUBLIC ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean sameType( TypeMirror a, TypeMirror b ) {
+		return processingEnv.getTypeUtils()
+							.isSameType(
+									a,
+									b
+							);
+	}
+
+	/**
+	 * @return Simple name of {@code type} with names of enclosing classes, i.e. "Outer_Inner".
+	 */
+	private static String flatName( TypeElement type ) {
+		String  name      = type.getSimpleName()
+								.toString();
+		Element enclosing = type.getEnclosingElement();
+		while( enclosing != null && !( enclosing instanceof PackageElement ) ) {
+			name = enclosing.getSimpleName() + "_" + name;
+			enclosing = enclosing.getEnclosingElement();
+		}
+		return name;
+	}
+
+	private void error( Element element, String message ) {
+		processingEnv.getMessager()
+					 .printMessage(
+							 Diagnostic.Kind.ERROR,
+							 message,
+							 element
+					 );
+	}
+}
@@ -0,0 +1,141 @@
+package com.chopping.rest;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * Commits per second of {@link RestObject#updateDB(int)} for every object against one {@link
+ * RestObject#updateDB(java.util.Collection, int)} for all, on a device. Results are logged with tag "UpdateDBBenchmark".
+ *
+ * @author Xinyue Zhao
+ */
+public class UpdateDBBenchmark extends AndroidTestCase {
+	private static final String TAG   = "UpdateDBBenchmark";
+	private static final int    COUNT = 500;
+
+	public static class BenchmarkItem extends RealmObject {
+		@PrimaryKey
+		private String reqId;
+		private long   reqTime;
+		private int    status;
+
+		public String getReqId() {
+			return reqId;
+		}
+
+		public void setReqId( String reqId ) {
+			this.reqId = reqId;
+		}
+
+		public long getReqTime() {
+			return reqTime;
+		}
+
+		public void setReqTime( long reqTime ) {
+			this.reqTime = reqTime;
+		}
+
+		public int getStatus() {
+			return status;
+		}
+
+		public void setStatus( int status ) {
+			this.status = status;
+		}
+	}
+
+	private static final class Item extends TestItem {
+		private Item( String reqId, long reqTime ) {
+			super(
+					reqId,
+					reqTime
+			);
+		}
+
+		@Override
+		protected RealmObject[] newInstances( Realm db, int status ) {
+			BenchmarkItem item = new BenchmarkItem();
+			item.setReqId( getReqId() );
+			item.setReqTime( getReqTime() );
+			item.setStatus( status );
+			return new RealmObject[] { item };
+		}
+
+		@Override
+		public Class<? extends RealmObject> DBType() {
+			return BenchmarkItem.class;
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		RealmConfiguration config = new RealmConfiguration.Builder( getContext() ).name( "benchmark.realm" )
+																				  .deleteRealmIfMigrationNeeded()
+																				  .build();
+		Realm.deleteRealm( config );
+		Realm.setDefaultConfiguration( config );
+	}
+
+	public void testCommitsPerSecond() {
+		List<Item> items = newItems( "single" );
+		long       start = SystemClock.elapsedRealtime();
+		for( Item item : items ) {
+			item.updateDB( RestObject.SYNCED );
+		}
+		long singleMs = Math.max(
+				1,
+				SystemClock.elapsedRealtime() - start
+		);
+
+		items = newItems( "bulk" );
+		start = SystemClock.elapsedRealtime();
+		RestObject.updateDB(
+				items,
+				RestObject.SYNCED
+		);
+		long bulkMs = Math.max(
+				1,
+				SystemClock.elapsedRealtime() - start
+		);
+
+		Log.i(
+				TAG,
+				COUNT + " objects, one commit per object: " + singleMs + "ms, " + ( COUNT * 1000L / singleMs ) + " commits/s"
+		);
+		Log.i(
+				TAG,
+				COUNT + " objects, one commit for all: " + bulkMs + "ms, " + ( COUNT * 1000L / bulkMs ) + " objects/s"
+		);
+		Realm db = Realm.getDefaultInstance();
+		try {
+			assertEquals(
+					2 * COUNT,
+					db.where( BenchmarkItem.class )
+					  .count()
+			);
+		} finally {
+			db.close();
+		}
+	}
+
+	private static List<Item> newItems( String prefix ) {
+		List<Item> items = new ArrayList<>( COUNT );
+		for( int i = 0; i < COUNT; i++ ) {
+			items.add( new Item(
+					prefix + i,
+					i
+			) );
+		}
+		return items;
+	}
+}
@@ -2,9 +2,17 @@ package com.chopping.activities;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.support.annotation.Nullable;
 
+import com.chopping.bus.RestApiProgressEvent;
 import com.chopping.bus.RestApiResponseEvent;
+import com.chopping.bus.SyncProgressEvent;
 import com.chopping.bus.UpdateNetworkStatusEvent;
+import com.chopping.rest.SyncCursor;
+import com.chopping.rest.SyncEngine;
+import com.chopping.utils.ChangeSet;
+import com.chopping.utils.FrameCoalescer;
+import com.chopping.utils.PagedResults;
 import com.chopping.utils.RestUtils;
 
 import io.realm.Realm;
@@ -38,7 +46,8 @@ public abstract class RestfulActivity extends BaseActivity {
 	}
 
 	/**
-	 * Handler for {@link RestApiResponseEvent}.
+	 * Handler for {@link RestApiResponseEvent}, it is posted unless per-item events have been turned off, see {@link
+	 * com.chopping.rest.RestApiManager#setPerItemEvents(boolean)}.
 	 *
 	 * @param e
 	 * 		Event {@link RestApiResponseEvent}.
@@ -51,20 +60,134 @@ public abstract class RestfulActivity extends BaseActivity {
 		}
 	}
 
+	/**
+	 * Handler for {@link RestApiProgressEvent}.
+	 *
+	 * @param e
+	 * 		Event {@link RestApiProgressEvent}.
+	 */
+	public void onEventMainThread( RestApiProgressEvent e ) {
+		mPendingApiProgress = mPendingApiProgress == null ? e : merge(
+				mPendingApiProgress,
+				e
+		);
+		mFrameCoalescer.request();
+	}
+
+	/**
+	 * Handler for {@link SyncProgressEvent}.
+	 *
+	 * @param e
+	 * 		Event {@link SyncProgressEvent}.
+	 */
+	public void onEventMainThread( SyncProgressEvent e ) {
+		//The latest is enough.
+		mPendingSyncProgress = e;
+		mFrameCoalescer.request();
+	}
+
 
 	//------------------------------------------------
 
 
 	private Realm                               mRealm;
+	private SyncEngine                          mSyncEngine;
 	private RealmResults<? extends RealmObject> mRealmData;
+	/**
+	 * The data while paging is enabled, instead of {@link #mRealmData}.
+	 */
+	private PagedResults                        mPagedData;
+	/**
+	 * The data that views have been built for, only while change sets are enabled.
+	 */
+	private ChangeSet.Snapshot                  mSnapshot;
+	/**
+	 * Merges data changes and sync events into at most one UI update per frame.
+	 */
+	private FrameCoalescer                      mFrameCoalescer;
+	private boolean                             mDataChanged;
+	private RestApiProgressEvent                mPendingApiProgress;
+	private SyncProgressEvent                   mPendingSyncProgress;
 	private RealmChangeListener mListListener = new RealmChangeListener() {
 		@Override
 		public void onChange() {
-			buildViews();
+			mDataChanged = true;
+			mFrameCoalescer.request();
+		}
+	};
+	private final PagedResults.OnPagesChangedListener mPagesListener = new PagedResults.OnPagesChangedListener() {
+		@Override
+		public void onPagesChanged( ChangeSet changes ) {
+			if( isChangeSetEnabled() ) {
+				onDataChanged( changes );
+			} else {
+				buildViews();
+			}
+		}
+	};
+	private final Runnable mFrameUpdate = new Runnable() {
+		@Override
+		public void run() {
+			if( mDataChanged ) {
+				mDataChanged = false;
+				deliverDataChange();
+			}
+			if( mPendingSyncProgress != null ) {
+				SyncProgressEvent e = mPendingSyncProgress;
+				mPendingSyncProgress = null;
+				onSyncProgress( e );
+			}
+			if( mPendingApiProgress != null ) {
+				RestApiProgressEvent e = mPendingApiProgress;
+				mPendingApiProgress = null;
+				onRestApiProgress( e );
+			}
 		}
 	};
 
 
+	private void deliverDataChange() {
+		if( mPagedData != null ) {
+			//Pages are copies, load them again, mPagesListener delivers the diff.
+			mPagedData.invalidate();
+			return;
+		}
+		if( !isChangeSetEnabled() ) {
+			buildViews();
+			return;
+		}
+		ChangeSet.Snapshot snapshot = ChangeSet.Snapshot.of(
+				mRealmData,
+				getIdentity()
+		);
+		ChangeSet changes = mSnapshot == null ? ChangeSet.reload() : ChangeSet.diff(
+				mSnapshot,
+				snapshot
+		);
+		mSnapshot = snapshot;
+		if( !changes.isEmpty() ) {
+			onDataChanged( changes );
+		}
+	}
+
+	private static RestApiProgressEvent merge( RestApiProgressEvent before, RestApiProgressEvent after ) {
+		int beforeDone = before.getCompleted() + before.getFailed();
+		int afterDone  = after.getCompleted() + after.getFailed();
+		int done       = beforeDone + afterDone;
+		return new RestApiProgressEvent(
+				before.getCompleted() + after.getCompleted(),
+				before.getFailed() + after.getFailed(),
+				after.getRemaining(),
+				done == 0 ? 0 : ( before.getAverageLatencyMs() * beforeDone + after.getAverageLatencyMs() * afterDone ) / done,
+				Math.max(
+						before.getMaxLatencyMs(),
+						after.getMaxLatencyMs()
+				),
+				before.isPerItemReported() && after.isPerItemReported()
+		);
+	}
+
+
 	private void load() {
 		sendPending();
 		if( !shouldLoadLocal(getApplication() ) ) {
@@ -83,16 +206,46 @@ public abstract class RestfulActivity extends BaseActivity {
 	}
 
 	protected void queryLocalData() {
-		RealmQuery<? extends RealmObject> query = mRealm.where( getDataClazz() );
-		buildQuery(query);
-		mRealmData = createQuery(query);
-		mRealmData.removeChangeListeners();
-		mRealmData.addChangeListener( mListListener );
+		mSnapshot = null;
+		if( getPageSize() > 0 ) {
+			queryPagedData();
+		} else {
+			RealmQuery<? extends RealmObject> query = mRealm.where( getDataClazz() );
+			buildQuery( query );
+			mRealmData = createQuery( query );
+			mRealmData.removeChangeListeners();
+			mRealmData.addChangeListener( mListListener );
+		}
 		if( shouldLoadLocal(getApplication() ) ) {
 			buildViews();
 		}
 	}
 
+	private void queryPagedData() {
+		if( mPagedData != null ) {
+			mPagedData.close();
+		}
+		mPagedData = new PagedResults(
+				mRealm,
+				new PagedResults.QueryFactory() {
+					@Override
+					public RealmQuery<? extends RealmObject> create( Realm realm ) {
+						RealmQuery<? extends RealmObject> query = realm.where( getDataClazz() );
+						buildQuery( query );
+						return query;
+					}
+				},
+				getIdentity(),
+				getPageSize(),
+				getPrefetchDistance(),
+				getKeptPages()
+		);
+		mPagedData.setOnPagesChangedListener( mPagesListener );
+		//Pages are not live, any change of database invalidates them.
+		mRealm.removeChangeListener( mListListener );
+		mRealm.addChangeListener( mListListener );
+	}
+
 	protected boolean shouldLoadLocal(Context cxt) {
 		return RestUtils.shouldLoadLocal( cxt );
 	}
@@ -103,12 +256,99 @@ public abstract class RestfulActivity extends BaseActivity {
 
 	protected abstract Class<? extends RealmObject> getDataClazz();
 
-	protected abstract void sendPending();
+	/**
+	 * Create the {@link SyncEngine} that sends pending items in default {@link #sendPending()}.
+	 *
+	 * @return {@code null} as default, then {@link #sendPending()} must be overridden.
+	 */
+	protected
+	@Nullable
+	SyncEngine onCreateSyncEngine() {
+		return null;
+	}
+
+	/**
+	 * Send all pending items, default uses {@link SyncEngine} of {@link #onCreateSyncEngine()}.
+	 */
+	protected void sendPending() {
+		if( mSyncEngine != null ) {
+			mSyncEngine.sync();
+		}
+	}
 
 	protected abstract void loadList();
 
 	protected abstract void buildViews();
 
+	/**
+	 * @return Count of items of a page of local data, default is 0: no paging, {@link #getData()} is a live result of
+	 * {@link #createQuery(RealmQuery)} over the whole table. Otherwise views bind against {@link #getPagedData()}, its
+	 * pages are loaded on a background thread where {@link #buildQuery(RealmQuery)} is called, and items of released pages
+	 * are {@code null} placeholders until they are there again.
+	 */
+	protected int getPageSize() {
+		return 0;
+	}
+
+	/**
+	 * @return Count of items to the end of loaded pages when the next page is loaded, default is a quarter of {@link
+	 * #getPageSize()}.
+	 */
+	protected int getPrefetchDistance() {
+		return getPageSize() / 4;
+	}
+
+	/**
+	 * @return Count of pages before and after the visible page that are kept in memory, default is 2.
+	 */
+	protected int getKeptPages() {
+		return 2;
+	}
+
+	/**
+	 * @return Min time between two UI updates by data changes and sync events, default is 0: at most one update per
+	 * frame.
+	 */
+	protected long getMinUpdateIntervalMs() {
+		return 0;
+	}
+
+	/**
+	 * @return Count of data changes and sync events that have been merged into other UI updates, for tuning of {@link
+	 * #getMinUpdateIntervalMs()}.
+	 */
+	protected long getMergedNotifications() {
+		return mFrameCoalescer.getMerged();
+	}
+
+	/**
+	 * @return {@code true} if changes of data are delivered as {@link ChangeSet}s to {@link
+	 * #onDataChanged(ChangeSet)}, default is {@code false}: every change calls {@link #buildViews()}.
+	 */
+	protected boolean isChangeSetEnabled() {
+		return false;
+	}
+
+	/**
+	 * @return The {@link ChangeSet.Identity} of data items, default identifies items by "reqId" and detects changes of
+	 * "status" and "reqTime".
+	 */
+	protected ChangeSet.Identity getIdentity() {
+		return ChangeSet.DEFAULT_IDENTITY;
+	}
+
+	/**
+	 * Callback when data have changed while change sets are enabled, default calls {@link #buildViews()}. Update only
+	 * the affected rows, i.e. with {@code notifyItemRangeRemoved}, {@code notifyItemRangeInserted} and {@code
+	 * notifyItemRangeChanged}, unless {@link ChangeSet#isReload()}.
+	 *
+	 * @param changes
+	 * 		The {@link ChangeSet} since last call.
+	 */
+	protected void onDataChanged( ChangeSet changes ) {
+		buildViews();
+	}
+
 	/**
 	 * Callback when event of network status changed and connection is connected.
 	 */
@@ -116,14 +356,31 @@ public abstract class RestfulActivity extends BaseActivity {
 		sendPending();
 	}
 
+	/**
+	 * @return The highest "reqTime" of data of {@link #getDataClazz()} loaded from server, {@link #loadList()} can load only data
+	 * that are newer, see {@link SyncCursor}.
+	 */
+	protected long getSyncWatermark() {
+		return SyncCursor.getWatermark( getDataClazz() );
+	}
+
 	protected RealmResults<? extends RealmObject> getData() {
 		return mRealmData;
 	}
 
+	/**
+	 * @return The pages of local data while {@link #getPageSize()} is positive, otherwise {@code null}.
+	 */
+	protected
+	@Nullable
+	PagedResults getPagedData() {
+		return mPagedData;
+	}
+
 
 
 	protected boolean isDataLoaded() {
-		return mRealmData.isLoaded();
+		return mRealmData == null ? mPagedData != null && mPagedData.isLoaded() : mRealmData.isLoaded();
 	}
 
 	protected void onRestApiSuccess(){
@@ -134,10 +391,44 @@ public abstract class RestfulActivity extends BaseActivity {
 	protected void onRestApiFail() {
 	}
 
+	/**
+	 * Callback when results of requests have been aggregated. When per-item events have been turned off default calls
+	 * {@link #onRestApiSuccess()} and {@link #onRestApiFail()} once per event instead of once per request, otherwise they
+	 * have been called by {@link RestApiResponseEvent}s.
+	 *
+	 * @param e
+	 * 		Event {@link RestApiProgressEvent}.
+	 */
+	protected void onRestApiProgress( RestApiProgressEvent e ) {
+		if( e.isPerItemReported() ) {
+			return;
+		}
+		if( e.getCompleted() > 0 ) {
+			onRestApiSuccess();
+		}
+		if( e.getFailed() > 0 ) {
+			onRestApiFail();
+		}
+	}
+
+	/**
+	 * Callback when {@link SyncEngine} reports progress.
+	 *
+	 * @param e
+	 * 		Event {@link SyncProgressEvent}.
+	 */
+	protected void onSyncProgress( SyncProgressEvent e ) {
+	}
+
 	@Override
 	protected void onCreate( Bundle savedInstanceState ) {
 		super.onCreate( savedInstanceState );
 		mRealm = Realm.getDefaultInstance();
+		mSyncEngine = onCreateSyncEngine();
+		mFrameCoalescer = new FrameCoalescer(
+				mFrameUpdate,
+				getMinUpdateIntervalMs()
+		);
 		initDataBinding();
 		queryLocalData();
 		load();
@@ -145,10 +436,20 @@ public abstract class RestfulActivity extends BaseActivity {
 
 	@Override
 	protected void onDestroy() {
+		if( mFrameCoalescer != null ) {
+			mFrameCoalescer.cancel();
+		}
+		if( mSyncEngine != null ) {
+			mSyncEngine.cancel();
+		}
 		if( mRealmData != null   ) {
 			mRealmData.removeChangeListener( mListListener );
 		}
+		if( mPagedData != null ) {
+			mPagedData.close();
+		}
 		if( mRealm != null  ) {
+			mRealm.removeChangeListener( mListListener );
 			mRealm.close();
 		}
 		super.onDestroy();
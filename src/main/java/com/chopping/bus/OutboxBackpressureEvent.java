@@ -0,0 +1,48 @@
+package com.chopping.bus;
+
+
+import io.realm.RealmObject;
+
+/**
+ * The outbox of a type has become full or has room again, producers of the type should slow down while it is full.
+ */
+public final class OutboxBackpressureEvent {
+	private Class<? extends RealmObject> mDBType;
+	private int                          mPending;
+	private int                          mMaxPending;
+
+	public OutboxBackpressureEvent( Class<? extends RealmObject> dbType, int pending, int maxPending ) {
+		mDBType = dbType;
+		mPending = pending;
+		mMaxPending = maxPending;
+	}
+
+
+	/**
+	 * @return The type of the outbox.
+	 */
+	public Class<? extends RealmObject> getDBType() {
+		return mDBType;
+	}
+
+	/**
+	 * @return Count of pending items of the type.
+	 */
+	public int getPending() {
+		return mPending;
+	}
+
+	/**
+	 * @return Limit of pending items of the type.
+	 */
+	public int getMaxPending() {
+		return mMaxPending;
+	}
+
+	/**
+	 * @return {@code true} if the outbox is full.
+	 */
+	public boolean isFull() {
+		return mPending >= mMaxPending;
+	}
+}
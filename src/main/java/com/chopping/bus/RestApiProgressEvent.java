@@ -0,0 +1,71 @@
+package com.chopping.bus;
+
+
+/**
+ * Aggregated results of async requests of {@link com.chopping.rest.RestApiManager} since the last event, it can
+ * replace one {@link RestApiResponseEvent} per request, see {@link com.chopping.rest.RestApiManager#setPerItemEvents(boolean)}.
+ * <p/>
+ * It counts every request of the manager that has no listener, all the time, and reports changes since the last event.
+ * {@link SyncProgressEvent} instead reports one run of {@link com.chopping.rest.SyncEngine} with totals of the run, its
+ * requests have listeners and are not counted here.
+ */
+public final class RestApiProgressEvent {
+	private int     mCompleted;
+	private int     mFailed;
+	private int     mRemaining;
+	private long    mAverageLatencyMs;
+	private long    mMaxLatencyMs;
+	private boolean mPerItemReported;
+
+	public RestApiProgressEvent( int completed, int failed, int remaining, long averageLatencyMs, long maxLatencyMs, boolean perItemReported ) {
+		mCompleted = completed;
+		mFailed = failed;
+		mRemaining = remaining;
+		mAverageLatencyMs = averageLatencyMs;
+		mMaxLatencyMs = maxLatencyMs;
+		mPerItemReported = perItemReported;
+	}
+
+
+	/**
+	 * @return Count of requests that have succeeded since the last event.
+	 */
+	public int getCompleted() {
+		return mCompleted;
+	}
+
+	/**
+	 * @return Count of requests that have failed since the last event.
+	 */
+	public int getFailed() {
+		return mFailed;
+	}
+
+	/**
+	 * @return Count of requests that are still running.
+	 */
+	public int getRemaining() {
+		return mRemaining;
+	}
+
+	/**
+	 * @return Average time from submit to result of requests since the last event.
+	 */
+	public long getAverageLatencyMs() {
+		return mAverageLatencyMs;
+	}
+
+	/**
+	 * @return Max time from submit to result of requests since the last event.
+	 */
+	public long getMaxLatencyMs() {
+		return mMaxLatencyMs;
+	}
+
+	/**
+	 * @return {@code true} if every request of the event has also been reported by a {@link RestApiResponseEvent}.
+	 */
+	public boolean isPerItemReported() {
+		return mPerItemReported;
+	}
+}
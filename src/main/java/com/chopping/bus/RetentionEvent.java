@@ -0,0 +1,54 @@
+package com.chopping.bus;
+
+
+/**
+ * A run of {@link com.chopping.rest.DataRetention} has been done.
+ */
+public final class RetentionEvent {
+	/**
+	 * Size of live data has not been measured, no {@link com.chopping.rest.RetentionPolicy} limits the size.
+	 */
+	public static final long NOT_MEASURED = -1;
+
+	private int  mRowsRemoved;
+	private long mBytesReclaimed;
+	private long mLiveBytes;
+	private long mElapsedMs;
+
+	public RetentionEvent( int rowsRemoved, long bytesReclaimed, long liveBytes, long elapsedMs ) {
+		mRowsRemoved = rowsRemoved;
+		mBytesReclaimed = bytesReclaimed;
+		mLiveBytes = liveBytes;
+		mElapsedMs = elapsedMs;
+	}
+
+
+	/**
+	 * @return Count of evicted items of all types.
+	 */
+	public int getRowsRemoved() {
+		return mRowsRemoved;
+	}
+
+	/**
+	 * @return Decrease of size of live data, the space is reused by later writes and given back by compaction, {@link
+	 * #NOT_MEASURED} if no policy limits the size.
+	 */
+	public long getBytesReclaimed() {
+		return mBytesReclaimed;
+	}
+
+	/**
+	 * @return Size of live data after the run, {@link #NOT_MEASURED} if no policy limits the size.
+	 */
+	public long getLiveBytes() {
+		return mLiveBytes;
+	}
+
+	/**
+	 * @return Time of the run in milliseconds.
+	 */
+	public long getElapsedMs() {
+		return mElapsedMs;
+	}
+}
@@ -0,0 +1,55 @@
+package com.chopping.bus;
+
+
+/**
+ * Aggregated progress of a sync of pending items by {@link com.chopping.rest.SyncEngine}, with totals of the running
+ * sync so that a progress bar of the sync can be shown. Requests outside of a sync are reported by {@link
+ * RestApiProgressEvent}.
+ */
+public final class SyncProgressEvent {
+	private int mTotal;
+	private int mCompleted;
+	private int mFailed;
+
+	public SyncProgressEvent( int total, int completed, int failed ) {
+		mTotal = total;
+		mCompleted = completed;
+		mFailed = failed;
+	}
+
+
+	/**
+	 * @return Count of all requests of the sync.
+	 */
+	public int getTotal() {
+		return mTotal;
+	}
+
+	/**
+	 * @return Count of successful requests.
+	 */
+	public int getCompleted() {
+		return mCompleted;
+	}
+
+	/**
+	 * @return Count of failed requests.
+	 */
+	public int getFailed() {
+		return mFailed;
+	}
+
+	/**
+	 * @return Count of requests that are still queued or running.
+	 */
+	public int getRemaining() {
+		return mTotal - mCompleted - mFailed;
+	}
+
+	/**
+	 * @return {@code true} if all requests have been done.
+	 */
+	public boolean isFinished() {
+		return getRemaining() == 0;
+	}
+}
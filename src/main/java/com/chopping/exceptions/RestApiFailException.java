@@ -0,0 +1,24 @@
+package com.chopping.exceptions;
+
+import com.chopping.rest.RestObject;
+
+/**
+ * A rest request has failed.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RestApiFailException extends Exception {
+	private final RestObject mRequestObject;
+
+	public RestApiFailException( RestObject requestObject ) {
+		super( "Rest request failed: " + requestObject.getReqId() );
+		mRequestObject = requestObject;
+	}
+
+	/**
+	 * @return The request data that has failed.
+	 */
+	public RestObject getRequestObject() {
+		return mRequestObject;
+	}
+}
@@ -0,0 +1,19 @@
+package com.chopping.rest;
+
+import java.util.List;
+
+import retrofit2.Call;
+
+/**
+ * Factory that creates the {@link Call} to a batch endpoint, it sends many items of same {@link RestObject#DBType()}
+ * in one request.
+ * <p/>
+ * The response lists the server data of all items that have been done, items are associated by {@link
+ * RestObject#getReqId()}, items that are missing stay pending.
+ *
+ * @param <SD>
+ * 		Type of server data.
+ */
+public interface BatchCallFactory<SD extends RestObject> {
+	Call<List<SD>> create( List<RestObject> items, int statusBefore );
+}
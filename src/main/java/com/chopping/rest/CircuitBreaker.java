@@ -0,0 +1,175 @@
+package com.chopping.rest;
+
+import android.os.SystemClock;
+
+/**
+ * Circuit breaker of an endpoint. After {@code failureThreshold} failures in a row no request is sent to the endpoint
+ * for {@code openMs}, after that one trial request is allowed, it closes the breaker when it succeeds. A trial that is
+ * cancelled opens the breaker again, a trial without any result for {@code openMs} is replaced by a new one.
+ * Cancellations of other requests do not change the breaker.
+ *
+ * @author Xinyue Zhao
+ */
+public final class CircuitBreaker {
+	private static final int CLOSED    = 0;
+	private static final int OPEN      = 1;
+	private static final int HALF_OPEN = 2;
+
+	private final int  mFailureThreshold;
+	private final long mOpenMs;
+	private int        mState = CLOSED;
+	private int        mFailures;
+	private long       mOpenedAt;
+	private long       mTrialAt;
+	/**
+	 * The trial request while the breaker is half open.
+	 */
+	private Object     mTrial;
+
+	/**
+	 * Constructor of {@link CircuitBreaker}
+	 *
+	 * @param failureThreshold
+	 * 		Count of failures in a row that opens the breaker, at least 1.
+	 * @param openMs
+	 * 		Time that the breaker keeps open before a trial request, not negative.
+	 */
+	public CircuitBreaker( int failureThreshold, long openMs ) {
+		if( failureThreshold < 1 ) {
+			throw new IllegalArgumentException( "failureThreshold must be at least 1: " + failureThreshold );
+		}
+		if( openMs < 0 ) {
+			throw new IllegalArgumentException( "openMs must not be negative: " + openMs );
+		}
+		mFailureThreshold = failureThreshold;
+		mOpenMs = openMs;
+	}
+
+	/**
+	 * @param request
+	 * 		The request that would be sent, it becomes the trial when the breaker lets one request through.
+	 *
+	 * @return {@code true} if a request can be sent now.
+	 */
+	public boolean allowRequest( Object request ) {
+		return allowRequest(
+				request,
+				SystemClock.elapsedRealtime()
+		);
+	}
+
+	/**
+	 * {@link #allowRequest(Object)} at time {@code now} of {@link SystemClock#elapsedRealtime()}.
+	 */
+	synchronized boolean allowRequest( Object request, long now ) {
+		switch( mState ) {
+			case OPEN:
+				if( now - mOpenedAt >= mOpenMs ) {
+					//ONE TRIAL.
+					mState = HALF_OPEN;
+					mTrialAt = now;
+					mTrial = request;
+					return true;
+				}
+				return false;
+			case HALF_OPEN:
+				if( now - mTrialAt >= mOpenMs ) {
+					//THE TRIAL HAS BEEN LOST, ANOTHER ONE.
+					mTrialAt = now;
+					mTrial = request;
+					return true;
+				}
+				return false;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Called when the endpoint has responded.
+	 */
+	public synchronized void onSuccess() {
+		mState = CLOSED;
+		mFailures = 0;
+		mTrial = null;
+	}
+
+	/**
+	 * Called when a request to the endpoint failed.
+	 */
+	public void onFailure() {
+		onFailure( SystemClock.elapsedRealtime() );
+	}
+
+	/**
+	 * {@link #onFailure()} at time {@code now} of {@link SystemClock#elapsedRealtime()}.
+	 */
+	synchronized void onFailure( long now ) {
+		mFailures++;
+		if( mState == HALF_OPEN || mFailures >= mFailureThreshold ) {
+			mState = OPEN;
+			mOpenedAt = now;
+			mTrial = null;
+		}
+	}
+
+	/**
+	 * Called when a request to the endpoint has been cancelled. When it is the trial, the trial has no result and the
+	 * breaker opens again.
+	 *
+	 * @param request
+	 * 		The request that has been passed to {@link #allowRequest(Object)}.
+	 */
+	public void onCancelled( Object request ) {
+		onCancelled(
+				request,
+				SystemClock.elapsedRealtime()
+		);
+	}
+
+	/**
+	 * {@link #onCancelled(Object)} at time {@code now} of {@link SystemClock#elapsedRealtime()}.
+	 */
+	synchronized void onCancelled( Object request, long now ) {
+		if( mState == HALF_OPEN && request == mTrial ) {
+			mState = OPEN;
+			mOpenedAt = now;
+			mTrial = null;
+		}
+	}
+
+	/**
+	 * @return {@code true} if the breaker is not closed, the endpoint keeps failing.
+	 */
+	public synchronized boolean isOpen() {
+		return mState != CLOSED;
+	}
+
+	/**
+	 * @return Time until {@link #allowRequest(Object)} lets a trial through, 0 if the breaker is closed.
+	 */
+	long getWaitMs() {
+		return getWaitMs( SystemClock.elapsedRealtime() );
+	}
+
+	/**
+	 * {@link #getWaitMs()} at time {@code now} of {@link SystemClock#elapsedRealtime()}.
+	 */
+	synchronized long getWaitMs( long now ) {
+		long since;
+		switch( mState ) {
+			case OPEN:
+				since = mOpenedAt;
+				break;
+			case HALF_OPEN:
+				since = mTrialAt;
+				break;
+			default:
+				return 0;
+		}
+		return Math.max(
+				0,
+				since + mOpenMs - now
+		);
+	}
+}
@@ -0,0 +1,119 @@
+package com.chopping.rest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads values written by {@link CompactWriter}.
+ *
+ * @author Xinyue Zhao
+ */
+public final class CompactReader {
+	private static final String CHARSET = "UTF-8";
+
+	private final byte[]       mBytes;
+	private       int          mPosition;
+	private final List<String> mStrings = new ArrayList<>();
+
+	public CompactReader( byte[] bytes ) {
+		this(
+				bytes,
+				0
+		);
+	}
+
+	public CompactReader( byte[] bytes, int offset ) {
+		mBytes = bytes;
+		mPosition = offset;
+	}
+
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	public int readInt() throws IOException {
+		long value = readVarLong();
+		return (int) ( value >>> 1 ) ^ -(int) ( value & 1 );
+	}
+
+	public long readLong() throws IOException {
+		long value = readVarLong();
+		return ( value >>> 1 ) ^ -( value & 1 );
+	}
+
+	public double readDouble() throws IOException {
+		long bits = 0;
+		for( int i = 0; i < 8; i++ ) {
+			bits |= ( (long) readByte() & 0xFF ) << ( 8 * i );
+		}
+		return Double.longBitsToDouble( bits );
+	}
+
+	public String readString() throws IOException {
+		long tag = readVarLong();
+		if( tag == 0 ) {
+			return null;
+		}
+		if( tag >= 2 ) {
+			int index = (int) ( tag - 2 );
+			if( index >= mStrings.size() ) {
+				throw new IOException( "Unknown string reference: " + index );
+			}
+			return mStrings.get( index );
+		}
+		int    length = (int) readVarLong();
+		String value  = new String(
+				mBytes,
+				take( length ),
+				length,
+				CHARSET
+		);
+		mStrings.add( value );
+		return value;
+	}
+
+	public byte[] readBytes() throws IOException {
+		int    length = (int) readVarLong();
+		byte[] value  = new byte[ length ];
+		System.arraycopy(
+				mBytes,
+				take( length ),
+				value,
+				0,
+				length
+		);
+		return value;
+	}
+
+	long readVarLong() throws IOException {
+		long value = 0;
+		for( int shift = 0; shift < 64; shift += 7 ) {
+			byte b = readByte();
+			value |= (long) ( b & 0x7F ) << shift;
+			if( ( b & 0x80 ) == 0 ) {
+				return value;
+			}
+		}
+		throw new IOException( "Malformed var-int." );
+	}
+
+	private byte readByte() throws IOException {
+		return mBytes[ take( 1 ) ];
+	}
+
+	/**
+	 * Take {@code length} bytes.
+	 *
+	 * @return Position of the bytes.
+	 */
+	private int take( int length ) throws IOException {
+		if( length < 0 || mPosition + length > mBytes.length ) {
+			throw new EOFException();
+		}
+		int position = mPosition;
+		mPosition += length;
+		return position;
+	}
+}
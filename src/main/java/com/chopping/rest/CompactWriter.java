@@ -0,0 +1,88 @@
+package com.chopping.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes values in a compact binary form: integers as var-ints(zig-zag for signed values), strings once in a string
+ * table and then by reference. Read it with {@link CompactReader}.
+ *
+ * @author Xinyue Zhao
+ */
+public final class CompactWriter {
+	private static final String CHARSET = "UTF-8";
+
+	private final ByteArrayOutputStream mOut     = new ByteArrayOutputStream( 64 );
+	/**
+	 * Strings that have been written associated with their indices.
+	 */
+	private final Map<String, Integer>  mStrings = new HashMap<>();
+
+	public CompactWriter writeBoolean( boolean value ) {
+		mOut.write( value ? 1 : 0 );
+		return this;
+	}
+
+	public CompactWriter writeInt( int value ) {
+		return writeVarLong( ( ( value << 1 ) ^ ( value >> 31 ) ) & 0xFFFFFFFFL );
+	}
+
+	public CompactWriter writeLong( long value ) {
+		return writeVarLong( ( value << 1 ) ^ ( value >> 63 ) );
+	}
+
+	public CompactWriter writeDouble( double value ) {
+		long bits = Double.doubleToLongBits( value );
+		for( int i = 0; i < 8; i++ ) {
+			mOut.write( (int) ( bits >>> ( 8 * i ) ) );
+		}
+		return this;
+	}
+
+	/**
+	 * Write a string, a string that has been written before costs only its reference.
+	 */
+	public CompactWriter writeString( String value ) throws IOException {
+		if( value == null ) {
+			return writeVarLong( 0 );
+		}
+		Integer index = mStrings.get( value );
+		if( index != null ) {
+			//REFERENCE: index + 2.
+			return writeVarLong( index + 2 );
+		}
+		mStrings.put(
+				value,
+				mStrings.size()
+		);
+		byte[] bytes = value.getBytes( CHARSET );
+		writeVarLong( 1 );
+		writeVarLong( bytes.length );
+		mOut.write( bytes );
+		return this;
+	}
+
+	public CompactWriter writeBytes( byte[] value ) throws IOException {
+		writeVarLong( value.length );
+		mOut.write( value );
+		return this;
+	}
+
+	/**
+	 * Write an unsigned var-int, 7 bits per byte.
+	 */
+	CompactWriter writeVarLong( long value ) {
+		while( ( value & ~0x7FL ) != 0 ) {
+			mOut.write( (int) ( ( value & 0x7F ) | 0x80 ) );
+			value >>>= 7;
+		}
+		mOut.write( (int) value );
+		return this;
+	}
+
+	public byte[] toByteArray() {
+		return mOut.toByteArray();
+	}
+}
@@ -0,0 +1,256 @@
+package com.chopping.rest;
+
+import android.os.SystemClock;
+
+import com.chopping.application.LL;
+import com.chopping.bus.RetentionEvent;
+import com.chopping.utils.RestUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import de.greenrobot.event.EventBus;
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmQuery;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Eviction of synced local data by {@link RetentionPolicy}s of types, runs on a background thread.
+ * <p/>
+ * Only items of {@link RestObject#SYNCED}, {@link RestObject#UPDATE_SYNCED} and {@link RestObject#DELETE_SYNCED} are
+ * evicted, oldest "reqTime" first, pending items are never touched. Evicted items are not loaded again, the {@link
+ * SyncCursor} of a type is kept apart from its items, even when all synced items have been evicted.
+ * <p/>
+ * Live data of the database is only measured when a {@link RetentionPolicy#getMaxFileBytes()} is set, it writes a
+ * copy of the database, see {@link RestUtils#measureLiveBytes(Realm)}. It is measured again before a type with a
+ * size limit when items have been evicted meanwhile. Every run posts a {@link RetentionEvent}.
+ *
+ * @author Xinyue Zhao
+ */
+public final class DataRetention {
+	private static final String STATUS   = "status";
+	private static final String REQ_TIME = "reqTime";
+
+	private static final Map<Class<? extends RealmObject>, RetentionPolicy> sPolicies = new LinkedHashMap<>();
+	private static final ScheduledExecutorService                            sExecutor = Executors.newSingleThreadScheduledExecutor();
+	private static ScheduledFuture<?> sScheduled;
+
+	private static final Runnable sRun = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				DataRetention.run();
+			} catch( RuntimeException e ) {
+				//Next run tries again.
+				LL.e( "DataRetention: " + e.toString() );
+			}
+		}
+	};
+
+	private DataRetention() {
+	}
+
+	/**
+	 * Set the {@link RetentionPolicy} of a type.
+	 *
+	 * @param dbType
+	 * 		The {@link RestObject#DBType()}.
+	 * @param policy
+	 * 		The {@link RetentionPolicy}, {@code null} keeps all items of the type.
+	 */
+	public static void setPolicy( Class<? extends RealmObject> dbType, RetentionPolicy policy ) {
+		synchronized( sPolicies ) {
+			if( policy == null ) {
+				sPolicies.remove( dbType );
+			} else {
+				sPolicies.put(
+						dbType,
+						policy
+				);
+			}
+		}
+	}
+
+	/**
+	 * Run eviction every {@code periodMs}, the first run starts after {@code initialDelayMs}. A former schedule is
+	 * cancelled.
+	 */
+	public static synchronized void schedule( long initialDelayMs, long periodMs ) {
+		cancel();
+		sScheduled = sExecutor.scheduleWithFixedDelay(
+				sRun,
+				initialDelayMs,
+				periodMs,
+				TimeUnit.MILLISECONDS
+		);
+	}
+
+	/**
+	 * Cancel the schedule of {@link #schedule(long, long)}, a running eviction is completed.
+	 */
+	public static synchronized void cancel() {
+		if( sScheduled != null ) {
+			sScheduled.cancel( false );
+			sScheduled = null;
+		}
+	}
+
+	/**
+	 * Run eviction once on the background thread.
+	 */
+	public static void runAsync() {
+		sExecutor.execute( sRun );
+	}
+
+	/**
+	 * Run eviction on calling thread, one transaction per type.
+	 *
+	 * @return The {@link RetentionEvent} that has been posted.
+	 */
+	public static RetentionEvent run() {
+		Map<Class<? extends RealmObject>, RetentionPolicy> policies;
+		synchronized( sPolicies ) {
+			policies = new LinkedHashMap<>( sPolicies );
+		}
+		long           start = SystemClock.elapsedRealtime();
+		Realm          db    = Realm.getDefaultInstance();
+		RetentionEvent event;
+		try {
+			boolean sizeLimited = false;
+			for( RetentionPolicy policy : policies.values() ) {
+				sizeLimited |= policy.getMaxFileBytes() > RetentionPolicy.UNLIMITED;
+			}
+			long    liveBefore = sizeLimited ? RestUtils.measureLiveBytes( db ) : RetentionEvent.NOT_MEASURED;
+			long    live       = liveBefore;
+			//ITEMS HAVE BEEN EVICTED SINCE LIVE DATA HAS BEEN MEASURED.
+			boolean stale      = false;
+			long    now        = System.currentTimeMillis();
+			int     removed    = 0;
+			for( Map.Entry<Class<? extends RealmObject>, RetentionPolicy> entry : policies.entrySet() ) {
+				if( stale && entry.getValue()
+								  .getMaxFileBytes() > RetentionPolicy.UNLIMITED ) {
+					live = RestUtils.measureLiveBytes( db );
+					stale = false;
+				}
+				int rows = evict(
+						db,
+						entry.getKey(),
+						entry.getValue(),
+						now,
+						live
+				);
+				if( rows > 0 ) {
+					LL.d( "DataRetention: " + entry.getKey()
+												   .getSimpleName() + " evicted rows: " + rows );
+					stale = true;
+				}
+				removed += rows;
+			}
+			long liveAfter = sizeLimited && stale ? RestUtils.measureLiveBytes( db ) : live;
+			event = new RetentionEvent(
+					removed,
+					sizeLimited ? Math.max(
+							0,
+							liveBefore - liveAfter
+					) : RetentionEvent.NOT_MEASURED,
+					liveAfter,
+					SystemClock.elapsedRealtime() - start
+			);
+		} finally {
+			if( !db.isClosed() ) {
+				db.close();
+			}
+		}
+		LL.d( "DataRetention: rows removed: " + event.getRowsRemoved() + ", bytes reclaimed: " + event.getBytesReclaimed() + ", live bytes: " +
+				event.getLiveBytes() + ", elapsed: " + event.getElapsedMs() + "ms" );
+		EventBus.getDefault()
+				.post( event );
+		return event;
+	}
+
+	/**
+	 * @return Count of evicted items of {@code dbType}.
+	 */
+	private static int evict( Realm db, Class<? extends RealmObject> dbType, RetentionPolicy policy, long now, long liveBytes ) {
+		int removed = 0;
+		db.beginTransaction();
+		try {
+			if( policy.getMaxAgeMs() > RetentionPolicy.UNLIMITED ) {
+				RealmResults<? extends RealmObject> expired = evictable(
+						db,
+						dbType
+				).lessThan(
+						REQ_TIME,
+						now - policy.getMaxAgeMs()
+				)
+				 .findAll();
+				removed += expired.size();
+				expired.deleteAllFromRealm();
+			}
+			long excess = 0;
+			if( policy.getMaxRows() > RetentionPolicy.UNLIMITED ) {
+				excess = db.where( dbType )
+						   .count() - policy.getMaxRows();
+			}
+			if( policy.getMaxFileBytes() > RetentionPolicy.UNLIMITED && liveBytes > policy.getMaxFileBytes() ) {
+				//Rows of the type are assumed to take a share of the exceeded size as big as their share of the type.
+				long synced = evictable(
+						db,
+						dbType
+				).count();
+				excess = Math.max(
+						excess,
+						(long) Math.ceil( synced * (double) ( liveBytes - policy.getMaxFileBytes() ) / liveBytes )
+				);
+			}
+			if( excess > 0 ) {
+				RealmResults<? extends RealmObject> oldest = evictable(
+						db,
+						dbType
+				).findAllSorted(
+						REQ_TIME,
+						Sort.ASCENDING
+				);
+				long count = Math.min(
+						excess,
+						oldest.size()
+				);
+				for( long i = 0; i < count; i++ ) {
+					oldest.deleteFirstFromRealm();
+				}
+				removed += count;
+			}
+			db.commitTransaction();
+		} catch( RuntimeException e ) {
+			db.cancelTransaction();
+			throw e;
+		}
+		return removed;
+	}
+
+	private static RealmQuery<? extends RealmObject> evictable( Realm db, Class<? extends RealmObject> dbType ) {
+		return db.where( dbType )
+				 .beginGroup()
+				 .equalTo(
+						 STATUS,
+						 RestObject.SYNCED
+				 )
+				 .or()
+				 .equalTo(
+						 STATUS,
+						 RestObject.UPDATE_SYNCED
+				 )
+				 .or()
+				 .equalTo(
+						 STATUS,
+						 RestObject.DELETE_SYNCED
+				 )
+				 .endGroup();
+	}
+}
@@ -0,0 +1,18 @@
+package com.chopping.rest;
+
+import java.util.List;
+
+
+/**
+ * Paged variant of {@link ExecutePending}, pending items are delivered page by page on a background thread so that
+ * memory stays flat no matter how many items are pending.
+ */
+public interface ExecutePendingPaged {
+	//Called on a background thread for each page, lastPage is true for the last one, which is empty when nothing is pending.
+	void executePending( List<RestObject> pendingItems, boolean lastPage );
+
+	RestObject build();
+
+	//Max count of items of a page.
+	int getPageSize();
+}
@@ -0,0 +1,15 @@
+package com.chopping.rest;
+
+import java.util.List;
+
+
+/**
+ * Variant of {@link ExecutePending} that receives the coalesced pending operations of all pending status, one net
+ * {@link PendingRequest} per request-id.
+ */
+public interface ExecutePendingRequests {
+	//Called on a background thread.
+	void executePending( List<PendingRequest> pendingRequests );
+
+	RestObject build();
+}
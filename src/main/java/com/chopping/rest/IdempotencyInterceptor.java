@@ -0,0 +1,143 @@
+package com.chopping.rest;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import retrofit2.Call;
+
+/**
+ * Attaches a stable idempotency key to the mutations of {@link RestApiManager}, add it to the {@link
+ * okhttp3.OkHttpClient} of Retrofit:
+ * <p/>
+ * {@code new OkHttpClient.Builder().addInterceptor(IdempotencyInterceptor.getInstance())}
+ * <p/>
+ * The key is derived from {@link RestObject#getReqId()}, the operation and {@link RestObject#getReqTime()}, it is the
+ * same for every delivery of an operation: retries, replays after restart or a request that timed out but reached the
+ * server. A server that remembers the keys it has done can ignore duplicated deliveries, so pending items can be sent
+ * in parallel and retried safely.
+ * <p/>
+ * A request is found by its {@link Request#tag()}, which is the request itself unless a tag has been set. It is kept by
+ * {@link Request#newBuilder()}, so interceptors that run before and rebuild the request don't lose the key. Requests
+ * must not share a tag.
+ *
+ * @author Xinyue Zhao
+ */
+public final class IdempotencyInterceptor implements Interceptor {
+	public static final String HEADER = "Idempotency-Key";
+
+	private static final IdempotencyInterceptor sInstance = new IdempotencyInterceptor();
+
+	/**
+	 * Keys associated with tags of requests, they are released with the requests. Tags are requests or objects that
+	 * don't override equals(), the map works on identity.
+	 */
+	private final Map<Object, String> mKeys = Collections.synchronizedMap( new WeakHashMap<Object, String>() );
+
+	public static IdempotencyInterceptor getInstance() {
+		return sInstance;
+	}
+
+	private IdempotencyInterceptor() {
+	}
+
+	/**
+	 * @param requestObject
+	 * 		The request data.
+	 * @param statusBefore
+	 * 		The status before sync, it tells the operation.
+	 *
+	 * @return The idempotency key of the operation.
+	 */
+	public static String keyOf( RestObject requestObject, int statusBefore ) {
+		return requestObject.getReqId() + ":" + operationOf( statusBefore ) + ":" + requestObject.getReqTime();
+	}
+
+	/**
+	 * @param requestObjects
+	 * 		The request data of a batch.
+	 * @param statusBefore
+	 * 		The status before sync.
+	 *
+	 * @return The idempotency key of a batch, it is the same for same items in same order.
+	 */
+	public static String keyOf( List<? extends RestObject> requestObjects, int statusBefore ) {
+		StringBuilder keys = new StringBuilder();
+		for( RestObject requestObject : requestObjects ) {
+			keys.append( keyOf(
+					requestObject,
+					statusBefore
+			) )
+				.append( '\n' );
+		}
+		try {
+			return "batch:" + UUID.nameUUIDFromBytes( keys.toString()
+														  .getBytes( "UTF-8" ) );
+		} catch( UnsupportedEncodingException e ) {
+			throw new AssertionError( e );
+		}
+	}
+
+	private static String operationOf( int statusBefore ) {
+		switch( statusBefore ) {
+			case RestObject.NOT_SYNCED:
+				return "create";
+			case RestObject.UPDATE:
+				return "update";
+			case RestObject.DELETE:
+				return "delete";
+			default:
+				return String.valueOf( statusBefore );
+		}
+	}
+
+	/**
+	 * Attach {@code key} to the request of {@code call}, call it before every {@link Call#enqueue(retrofit2.Callback)}
+	 * or {@link Call#execute()}, a clone of a call has its own request.
+	 */
+	void register( Call<?> call, String key ) {
+		Request request;
+		try {
+			request = call.request();
+		} catch( RuntimeException e ) {
+			//The call can not be created, enqueue() or execute() will report it.
+			return;
+		}
+		register(
+				request,
+				key
+		);
+	}
+
+	/**
+	 * Attach {@code key} to {@code request}.
+	 */
+	public void register( Request request, String key ) {
+		mKeys.put(
+				request.tag(),
+				key
+		);
+	}
+
+	@Override
+	public Response intercept( Chain chain ) throws IOException {
+		Request request = chain.request();
+		String  key     = mKeys.get( request.tag() );
+		if( key == null || request.header( HEADER ) != null ) {
+			return chain.proceed( request );
+		}
+		return chain.proceed( request.newBuilder()
+									 .header(
+											 HEADER,
+											 key
+									 )
+									 .build() );
+	}
+}
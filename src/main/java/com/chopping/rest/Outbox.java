@@ -0,0 +1,230 @@
+package com.chopping.rest;
+
+import android.support.annotation.Nullable;
+
+import com.chopping.bus.OutboxBackpressureEvent;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.greenrobot.event.EventBus;
+import io.realm.RealmObject;
+
+/**
+ * Pending items of one {@link RestObject#DBType()} with a limit, it tells {@link RestApiManager} whether an operation
+ * can be sent. The count of pending items never exceeds the limit. A {@link OutboxBackpressureEvent} is posted when the
+ * outbox becomes full and when it has room again.
+ *
+ * @author Xinyue Zhao
+ */
+final class Outbox {
+	/**
+	 * Decision of an operation.
+	 */
+	static final class Admission {
+		/**
+		 * {@code true} if the operation should be sent.
+		 */
+		final boolean        mSend;
+		/**
+		 * {@code true} if the operation should be saved locally.
+		 */
+		final boolean        mSave;
+		/**
+		 * The pending operation that has been dropped for the operation.
+		 */
+		final PendingRequest mDropped;
+
+		private Admission( boolean send, boolean save, @Nullable PendingRequest dropped ) {
+			mSend = send;
+			mSave = save;
+			mDropped = dropped;
+		}
+	}
+
+	private static final Admission SEND  = new Admission(
+			true,
+			true,
+			null
+	);
+	private static final Admission DEFER = new Admission(
+			false,
+			true,
+			null
+	);
+	private static final Admission DENY  = new Admission(
+			false,
+			false,
+			null
+	);
+
+	private final Class<? extends RealmObject>          mDBType;
+	private final int                                   mMaxPending;
+	private final OutboxPolicy                          mPolicy;
+	/**
+	 * Latest pending operations associated with request-ids, least recently changed first.
+	 */
+	private final LinkedHashMap<String, PendingRequest> mPending = new LinkedHashMap<>();
+	/**
+	 * "reqTime"s of operations that are being sent associated with request-ids.
+	 */
+	private final Map<String, Long>                     mSending = new HashMap<>();
+	private       boolean                               mFull;
+
+	/**
+	 * @param pending
+	 * 		Pending operations in database sorted by "reqTime".
+	 */
+	Outbox( Class<? extends RealmObject> dbType, int maxPending, OutboxPolicy policy, List<PendingRequest> pending ) {
+		if( maxPending <= 0 ) {
+			throw new IllegalArgumentException( "maxPending must be positive: " + maxPending );
+		}
+		mDBType = dbType;
+		mMaxPending = maxPending;
+		mPolicy = policy;
+		for( PendingRequest request : pending ) {
+			put( request );
+		}
+		mFull = mPending.size() >= mMaxPending;
+	}
+
+	/**
+	 * Decide an operation, an accepted operation becomes pending.
+	 */
+	synchronized Admission admit( RestObject requestObject, int statusBefore ) {
+		PendingRequest request = new PendingRequest(
+				requestObject,
+				statusBefore
+		);
+		boolean pending = mPending.containsKey( requestObject.getReqId() );
+		if( mPending.size() < mMaxPending || ( pending && mPolicy != OutboxPolicy.COALESCE ) ) {
+			return send(
+					request,
+					null
+			);
+		}
+		switch( mPolicy ) {
+			case COALESCE:
+				if( !pending ) {
+					return DENY;
+				}
+				//Merged into the pending operation of the item, the count stays.
+				put( request );
+				return DEFER;
+			case DROP_OLDEST:
+				PendingRequest dropped = removeOldestUnsentCreate();
+				if( dropped == null ) {
+					//Items that are known by server or being sent are never dropped.
+					return DENY;
+				}
+				return send(
+						request,
+						dropped
+				);
+			default:
+				return DENY;
+		}
+	}
+
+	/**
+	 * An operation has been done or refused by server, the item is not pending anymore unless it has been changed
+	 * after.
+	 */
+	synchronized void done( RestObject requestObject ) {
+		failed( requestObject );
+		PendingRequest pending = mPending.get( requestObject.getReqId() );
+		if( pending != null && pending.getObject()
+									  .getReqTime() <= requestObject.getReqTime() ) {
+			mPending.remove( requestObject.getReqId() );
+			onChanged();
+		}
+	}
+
+	/**
+	 * An operation has not been sent or not been answered, the item stays pending.
+	 */
+	synchronized void failed( RestObject requestObject ) {
+		Long sending = mSending.get( requestObject.getReqId() );
+		if( sending != null && sending == requestObject.getReqTime() ) {
+			mSending.remove( requestObject.getReqId() );
+		}
+	}
+
+	synchronized boolean isFull() {
+		return mFull;
+	}
+
+	private Admission send( PendingRequest request, @Nullable PendingRequest dropped ) {
+		put( request );
+		mSending.put(
+				request.getObject()
+					   .getReqId(),
+				request.getObject()
+					   .getReqTime()
+		);
+		onChanged();
+		return dropped == null ? SEND : new Admission(
+				true,
+				true,
+				dropped
+		);
+	}
+
+	/**
+	 * Remove the least recently changed item that has never been on server and is not being sent, its local item can be
+	 * removed without request.
+	 *
+	 * @return The removed operation, {@code null} if there's no such item.
+	 */
+	private
+	@Nullable
+	PendingRequest removeOldestUnsentCreate() {
+		for( Iterator<PendingRequest> it = mPending.values()
+												   .iterator(); it.hasNext(); ) {
+			PendingRequest request = it.next();
+			if( request.getStatusBefore() == RestObject.NOT_SYNCED && !mSending.containsKey( request.getObject()
+																								  .getReqId() ) ) {
+				it.remove();
+				return request;
+			}
+		}
+		return null;
+	}
+
+	private void put( PendingRequest request ) {
+		String         reqId    = request.getObject()
+									   .getReqId();
+		//Move to the end, most recently changed.
+		PendingRequest previous = mPending.remove( reqId );
+		if( previous != null && previous.getStatusBefore() == RestObject.NOT_SYNCED ) {
+			//The stored item has never been synced, see PendingCoalescer.
+			request = new PendingRequest(
+					request.getObject(),
+					PendingCoalescer.fold(
+							true,
+							request.getStatusBefore()
+					)
+			);
+		}
+		mPending.put(
+				reqId,
+				request
+		);
+	}
+
+	private void onChanged() {
+		boolean full = mPending.size() >= mMaxPending;
+		if( full != mFull ) {
+			mFull = full;
+			EventBus.getDefault()
+					.post( new OutboxBackpressureEvent(
+							mDBType,
+							mPending.size(),
+							mMaxPending
+					) );
+		}
+	}
+}
@@ -0,0 +1,601 @@
+package com.chopping.rest;
+
+import com.chopping.application.LL;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of pending {@link RestObject} operations in a memory-mapped file, independent of {@link
+ * io.realm.Realm}.
+ * <p/>
+ * An operation is appended before its local status is written and acknowledged after the server has responded. On
+ * start the journal is read sequentially by {@link #replay()}, which returns all operations that have not been
+ * acknowledged, no table scan is needed. A record that has been torn by a crash fails its checksum and ends the
+ * journal.
+ * <p/>
+ * A later operation of the same object(same {@link RestObject#DBType()} and {@link RestObject#getReqId()}) supersedes
+ * the earlier ones, only the latest is replayed, folded by {@link PendingCoalescer#fold(boolean, int)}: an update of an
+ * object whose create has not been acknowledged is replayed as create, a delete of it is not replayed at all. Once
+ * the create is acknowledged, i.e. it has been in flight while the object was changed, the latest operation is
+ * replayed as it is.
+ * <p/>
+ * Record: [int length][int crc32][byte kind][int status][utf key][utf class][int body-length][body].
+ * <p/>
+ * Objects are encoded by {@link RestCodecs}.
+ * <p/>
+ * Records are written, forced and compacted on a background thread of the journal, callers only encode the object,
+ * so that it can be used on main thread. Changes are forced to disk in batches: after {@code syncEvery} records or
+ * {@code syncDelayMs} after the first record that has not been forced.
+ *
+ * @author Xinyue Zhao
+ */
+public final class OutboxJournal {
+	private static final byte OPERATION   = 1;
+	private static final byte ACKNOWLEDGE = 2;
+	private static final int  HEADER      = 8;
+
+	/**
+	 * Latest operation of an object and the create of the object while they have not been acknowledged.
+	 */
+	private static final class Entry {
+		private final String mKey;
+		private final int[]  mRecord;
+		/**
+		 * Status of the latest operation as it has been recorded.
+		 */
+		private final int    mStatus;
+		/**
+		 * Key of the create of the object that has not been acknowledged, {@code null} if there's none.
+		 */
+		private String       mCreate;
+		private int[]        mCreateRecord;
+		/**
+		 * {@code true} if the latest operation has been acknowledged while the create has not.
+		 */
+		private boolean      mDone;
+
+		private Entry( String key, int[] record, int status ) {
+			mKey = key;
+			mRecord = record;
+			mStatus = status;
+		}
+
+		/**
+		 * @return Status to replay, {@link RestObject#DELETE_SYNCED} if nothing is replayed.
+		 */
+		private int getFoldedStatus() {
+			return PendingCoalescer.fold(
+					mCreate != null,
+					mStatus
+			);
+		}
+	}
+
+	private final File                     mFile;
+	private final int                      mCapacity;
+	private final int                      mSyncEvery;
+	private final long                     mSyncDelayMs;
+	/**
+	 * Thread of all I/O after {@link #open()}.
+	 */
+	private final ScheduledExecutorService mExecutor = Executors.newSingleThreadScheduledExecutor();
+	private final Runnable                 mSync     = new Runnable() {
+		@Override
+		public void run() {
+			force();
+		}
+	};
+	private RandomAccessFile mRaf;
+	private MappedByteBuffer mBuffer;
+	/**
+	 * Position to append next record.
+	 */
+	private int              mPosition;
+	/**
+	 * Count of records that have not been forced to disk.
+	 */
+	private int              mUnsynced;
+	/**
+	 * {@code true} after {@link #open()}, the file is mapped again when it has been lost by a failed compaction.
+	 */
+	private boolean          mOpened;
+
+	/**
+	 * Constructor of {@link OutboxJournal}
+	 *
+	 * @param file
+	 * 		The file of journal.
+	 * @param capacity
+	 * 		Size of the mapped file in bytes, the journal is compacted when it is full.
+	 * @param syncEvery
+	 * 		Count of records that are forced to disk together.
+	 * @param syncDelayMs
+	 * 		Max delay before records are forced to disk.
+	 */
+	public OutboxJournal( File file, int capacity, int syncEvery, long syncDelayMs ) {
+		mFile = file;
+		mCapacity = capacity;
+		mSyncEvery = syncEvery;
+		mSyncDelayMs = syncDelayMs;
+	}
+
+	/**
+	 * Open the journal, call it before other methods and off main thread.
+	 */
+	public synchronized void open() throws IOException {
+		map( mFile );
+		scan();
+		mOpened = true;
+	}
+
+	/**
+	 * Record an operation of {@code object}.
+	 *
+	 * @param object
+	 * 		The request data.
+	 * @param statusBefore
+	 * 		The status before sync.
+	 */
+	public void append( RestObject object, int statusBefore ) {
+		try {
+			writeAsync( record(
+					OPERATION,
+					object,
+					statusBefore,
+					encode( object )
+			) );
+		} catch( IOException e ) {
+			LL.w( "OutboxJournal append: " + e.toString() );
+		}
+	}
+
+	/**
+	 * Acknowledge an operation of {@code object} that has been done by server.
+	 *
+	 * @param object
+	 * 		The request data.
+	 * @param statusBefore
+	 * 		The status before sync.
+	 */
+	public void acknowledge( RestObject object, int statusBefore ) {
+		try {
+			writeAsync( record(
+					ACKNOWLEDGE,
+					object,
+					statusBefore,
+					new byte[ 0 ]
+			) );
+		} catch( IOException e ) {
+			LL.w( "OutboxJournal acknowledge: " + e.toString() );
+		}
+	}
+
+	/**
+	 * Read all operations that have not been acknowledged, call it off main thread.
+	 *
+	 * @return Operations in order of their records.
+	 */
+	public List<PendingRequest> replay() {
+		//Records that are still queued are written before.
+		awaitQueued();
+		synchronized( this ) {
+			return readAll();
+		}
+	}
+
+	private List<PendingRequest> readAll() {
+		List<PendingRequest> requests = new ArrayList<>();
+		for( Entry entry : scan().values() ) {
+			int status = entry.getFoldedStatus();
+			if( status == RestObject.DELETE_SYNCED ) {
+				//CREATED AND DELETED BEFORE THE CREATE HAS BEEN ACKNOWLEDGED.
+				continue;
+			}
+			try {
+				DataInputStream in = new DataInputStream( new ByteArrayInputStream( read( entry.mRecord ) ) );
+				in.readByte();
+				in.readInt();
+				in.readUTF();
+				String className = in.readUTF();
+				byte[] body      = new byte[ in.readInt() ];
+				in.readFully( body );
+				requests.add( new PendingRequest(
+						decode(
+								className,
+								body
+						),
+						status
+				) );
+			} catch( IOException | ClassNotFoundException | ClassCastException e ) {
+				LL.w( "OutboxJournal replay: " + e.toString() );
+			}
+		}
+		return requests;
+	}
+
+	/**
+	 * Force all records to disk on the thread of journal.
+	 */
+	public void flush() {
+		execute( mSync );
+	}
+
+	/**
+	 * Force all records to disk and close the journal on the thread of journal.
+	 */
+	public void close() {
+		execute( new Runnable() {
+			@Override
+			public void run() {
+				synchronized( OutboxJournal.this ) {
+					force();
+					closeFile();
+					mOpened = false;
+				}
+			}
+		} );
+		mExecutor.shutdown();
+	}
+
+	private void writeAsync( final byte[] record ) {
+		execute( new Runnable() {
+			@Override
+			public void run() {
+				synchronized( OutboxJournal.this ) {
+					try {
+						write( record );
+					} catch( IOException e ) {
+						LL.w( "OutboxJournal write: " + e.toString() );
+					}
+				}
+			}
+		} );
+	}
+
+	private void execute( Runnable task ) {
+		try {
+			mExecutor.execute( task );
+		} catch( RejectedExecutionException e ) {
+			LL.w( "OutboxJournal is closed." );
+		}
+	}
+
+	/**
+	 * Wait until all tasks that have been queued are done.
+	 */
+	private void awaitQueued() {
+		try {
+			mExecutor.submit( new Runnable() {
+				@Override
+				public void run() {
+				}
+			} )
+					 .get();
+		} catch( InterruptedException e ) {
+			Thread.currentThread()
+				  .interrupt();
+		} catch( ExecutionException | RejectedExecutionException e ) {
+			LL.w( "OutboxJournal: " + e.toString() );
+		}
+	}
+
+	private synchronized void force() {
+		if( mBuffer != null && mUnsynced > 0 ) {
+			mBuffer.force();
+			mUnsynced = 0;
+		}
+	}
+
+	private static byte[] encode( RestObject object ) throws IOException {
+		return RestCodecs.encode( object );
+	}
+
+	private static RestObject decode( String className, byte[] body ) throws IOException, ClassNotFoundException {
+		return RestCodecs.decode(
+				className,
+				body
+		);
+	}
+
+	private static String keyOf( RestObject object, int statusBefore ) {
+		return object.DBType()
+					 .getName() + "#" + object.getReqId() + "#" + object.getReqTime() + "#" + statusBefore;
+	}
+
+	/**
+	 * @return The object of key of an operation: type and request-id without time and status.
+	 */
+	private static String objectOf( String key ) {
+		return key.substring(
+				0,
+				key.lastIndexOf(
+						'#',
+						key.lastIndexOf( '#' ) - 1
+				)
+		);
+	}
+
+	private static byte[] record( byte kind, RestObject object, int statusBefore, byte[] body ) throws IOException {
+		return record(
+				kind,
+				keyOf(
+						object,
+						statusBefore
+				),
+				statusBefore,
+				object.getClass()
+					  .getName(),
+				body
+		);
+	}
+
+	private static byte[] record( byte kind, String key, int statusBefore, String className, byte[] body ) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream( 64 + body.length );
+		DataOutputStream      out   = new DataOutputStream( bytes );
+		out.writeByte( kind );
+		out.writeInt( statusBefore );
+		out.writeUTF( key );
+		out.writeUTF( className );
+		out.writeInt( body.length );
+		out.write( body );
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private void write( byte[] record ) throws IOException {
+		if( mBuffer == null && mOpened ) {
+			//LOST BY A FAILED COMPACTION.
+			closeFile();
+			map( mFile );
+			scan();
+		}
+		if( mBuffer == null ) {
+			throw new IOException( "Journal is not open." );
+		}
+		if( HEADER + record.length > mCapacity ) {
+			throw new IOException( "Record is larger than journal: " + record.length );
+		}
+		if( mPosition + HEADER + record.length > mCapacity ) {
+			compact();
+			if( mPosition + HEADER + record.length > mCapacity ) {
+				throw new IOException( "Journal is full." );
+			}
+		}
+		CRC32 crc = new CRC32();
+		crc.update( record );
+		mBuffer.position( mPosition + HEADER );
+		mBuffer.put( record );
+		mBuffer.putInt(
+				mPosition + 4,
+				(int) crc.getValue()
+		);
+		//Length at last, a record without length is not there.
+		mBuffer.putInt(
+				mPosition,
+				record.length
+		);
+		mPosition += HEADER + record.length;
+		if( ++mUnsynced >= mSyncEvery ) {
+			force();
+		} else if( mUnsynced == 1 ) {
+			mExecutor.schedule(
+					mSync,
+					mSyncDelayMs,
+					TimeUnit.MILLISECONDS
+			);
+		}
+	}
+
+	/**
+	 * Read journal from begin, find position of end.
+	 *
+	 * @return Latest operations that have not been acknowledged associated with their objects, in order of records.
+	 * Operations that are folded away are included while their create has not been acknowledged.
+	 */
+	private Map<String, Entry> scan() {
+		Map<String, Entry> entries  = new LinkedHashMap<>();
+		int                position = 0;
+		while( position + HEADER <= mCapacity ) {
+			int length = mBuffer.getInt( position );
+			if( length <= 0 || position + HEADER + length > mCapacity ) {
+				break;
+			}
+			int[]  record = { position , length };
+			byte[] bytes  = read( record );
+			CRC32  crc    = new CRC32();
+			crc.update( bytes );
+			if( (int) crc.getValue() != mBuffer.getInt( position + 4 ) ) {
+				//TORN BY CRASH.
+				break;
+			}
+			try {
+				DataInputStream in     = new DataInputStream( new ByteArrayInputStream( bytes ) );
+				byte            kind   = in.readByte();
+				int             status = in.readInt();
+				String          key    = in.readUTF();
+				String          object = objectOf( key );
+				Entry           latest = entries.get( object );
+				if( kind == OPERATION ) {
+					//SUPERSEDES EARLIER OPERATIONS OF THE OBJECT.
+					entries.remove( object );
+					Entry entry = new Entry(
+							key,
+							record,
+							status
+					);
+					if( status == RestObject.NOT_SYNCED ) {
+						entry.mCreate = key;
+						entry.mCreateRecord = record;
+					} else if( latest != null ) {
+						//Folded while the create has not been acknowledged.
+						entry.mCreate = latest.mCreate;
+						entry.mCreateRecord = latest.mCreateRecord;
+					}
+					entries.put(
+							object,
+							entry
+					);
+				} else if( latest != null ) {
+					acknowledge(
+							entries,
+							object,
+							latest,
+							key
+					);
+				}
+			} catch( IOException e ) {
+				break;
+			}
+			position += HEADER + length;
+		}
+		mPosition = position;
+		return entries;
+	}
+
+	/**
+	 * Apply an acknowledgement of {@code key} to the {@link Entry} of its object. An acknowledgement of a superseded
+	 * operation other than the create is ignored, the latest stays.
+	 */
+	private static void acknowledge( Map<String, Entry> entries, String object, Entry latest, String key ) {
+		boolean create = key.equals( latest.mCreate );
+		boolean done   = latest.mDone || key.equals( latest.mKey );
+		if( create ) {
+			latest.mCreate = null;
+			latest.mCreateRecord = null;
+		}
+		if( !create && !done ) {
+			return;
+		}
+		if( done && ( latest.mCreate == null || latest.getFoldedStatus() == RestObject.DELETE_SYNCED ) ) {
+			//-------------------------
+			//NOTHING LEFT, OR CREATED AND DELETED BY FOLDING WITHOUT REQUEST.
+			//-------------------------
+			entries.remove( object );
+			return;
+		}
+		//The create of a folded update has still to be sent.
+		latest.mDone = done;
+	}
+
+	private byte[] read( int[] record ) {
+		byte[] bytes = new byte[ record[ 1 ] ];
+		mBuffer.position( record[ 0 ] + HEADER );
+		mBuffer.get( bytes );
+		return bytes;
+	}
+
+	/**
+	 * Rewrite the journal with latest operations that have not been acknowledged and their creates that have not been
+	 * acknowledged, so that later acknowledgements still find them.
+	 */
+	private void compact() throws IOException {
+		Map<String, Entry> entries = scan();
+		File               temp    = new File(
+				mFile.getPath() + ".tmp"
+		);
+		if( temp.exists() && !temp.delete() ) {
+			throw new IOException( "Can not delete " + temp );
+		}
+		RandomAccessFile out = new RandomAccessFile(
+				temp,
+				"rw"
+		);
+		try {
+			out.setLength( mCapacity );
+			for( Entry entry : entries.values() ) {
+				if( entry.mCreateRecord != null && entry.mCreateRecord != entry.mRecord ) {
+					writeRecord(
+							out,
+							read( entry.mCreateRecord )
+					);
+				}
+				writeRecord(
+						out,
+						read( entry.mRecord )
+				);
+				if( entry.mDone ) {
+					writeRecord(
+							out,
+							record(
+									ACKNOWLEDGE,
+									entry.mKey,
+									entry.mStatus,
+									"",
+									new byte[ 0 ]
+							)
+					);
+				}
+			}
+			out.getFD()
+			   .sync();
+		} finally {
+			out.close();
+		}
+		closeFile();
+		try {
+			if( !temp.renameTo( mFile ) ) {
+				//The original journal is mapped again.
+				temp.delete();
+				throw new IOException( "Can not rename " + temp );
+			}
+		} finally {
+			map( mFile );
+			scan();
+		}
+		mUnsynced = 0;
+	}
+
+	private static void writeRecord( RandomAccessFile out, byte[] bytes ) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update( bytes );
+		out.writeInt( bytes.length );
+		out.writeInt( (int) crc.getValue() );
+		out.write( bytes );
+	}
+
+	private void map( File file ) throws IOException {
+		mRaf = new RandomAccessFile(
+				file,
+				"rw"
+		);
+		if( mRaf.length() < mCapacity ) {
+			mRaf.setLength( mCapacity );
+		}
+		mBuffer = mRaf.getChannel()
+					  .map(
+							  FileChannel.MapMode.READ_WRITE,
+							  0,
+							  mCapacity
+					  );
+	}
+
+	private void closeFile() {
+		mBuffer = null;
+		if( mRaf != null ) {
+			try {
+				mRaf.close();
+			} catch( IOException e ) {
+				LL.w( "OutboxJournal close: " + e.toString() );
+			}
+			mRaf = null;
+		}
+	}
+}
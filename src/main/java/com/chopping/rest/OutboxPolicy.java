@@ -0,0 +1,26 @@
+package com.chopping.rest;
+
+/**
+ * What {@link RestApiManager} does with an operation on a new item when the outbox of its type is full, see {@link
+ * RestApiManager#setOutboxLimit(RestObject, int, OutboxPolicy)}. Operations on items that are already pending are
+ * always accepted, they replace the pending operation of the item. The count of pending items never exceeds the limit.
+ *
+ * @author Xinyue Zhao
+ */
+public enum OutboxPolicy {
+	/**
+	 * An operation on a pending item is merged into it locally but not sent, it is sent coalesced with later operations
+	 * of the item by next sync of pending items. An operation on a new item is refused.
+	 */
+	COALESCE,
+	/**
+	 * The least recently changed pending item of the type that has never been on server and is not being sent is
+	 * dropped to make room: its local item is removed and its create will never be sent. Updates and deletes are never
+	 * dropped, when there's no such item the operation is refused.
+	 */
+	DROP_OLDEST,
+	/**
+	 * The operation is refused, nothing is saved or sent.
+	 */
+	REJECT_NEW
+}
@@ -0,0 +1,198 @@
+package com.chopping.rest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Folds chains of pending operations of same request-id into one net operation before they are sent.
+ * <p/>
+ * The database keeps one item per request-id, so a chain is folded when it is written, see {@link #fold(boolean,
+ * int)}: an item that has never been synced stays {@link RestObject#NOT_SYNCED} when it is updated and is removed when
+ * it is deleted. A create that is being sent is on server soon, so it is never folded, see {@link
+ * #onDispatched(RestObject)}. {@link #coalesce(List)} folds chains of operations that are kept apart, i.e. read from a journal.
+ * <p/>
+ * <ul>
+ * <li>Created and deleted offline: nothing to send, the local items can be removed.</li>
+ * <li>Created then updated: one create with the latest data.</li>
+ * <li>Updated many times: one update with the latest data.</li>
+ * <li>Updated then deleted: one delete.</li>
+ * </ul>
+ *
+ * @author Xinyue Zhao
+ */
+public final class PendingCoalescer {
+	/**
+	 * Operations of one request-id.
+	 */
+	private static final class Chain {
+		private final int              mFirstStatus;
+		private       PendingRequest   mLast;
+		private final List<RestObject> mObjects = new ArrayList<>( 1 );
+
+		private Chain( PendingRequest first ) {
+			mFirstStatus = first.getStatusBefore();
+			add( first );
+		}
+
+		private void add( PendingRequest request ) {
+			mLast = request;
+			mObjects.add( request.getObject() );
+		}
+	}
+
+	/**
+	 * Count of creates that are being sent associated with keys of objects, guarded by itself.
+	 */
+	private static final Map<String, Integer> sDispatched = new HashMap<>();
+
+	private final List<PendingRequest> mRequests = new ArrayList<>();
+	private final List<RestObject>     mDropped  = new ArrayList<>();
+	private       int                  mSaved;
+
+	private PendingCoalescer() {
+	}
+
+	/**
+	 * Fold a pending operation into the item that is stored with same request-id.
+	 *
+	 * @param neverSynced
+	 * 		{@code true} if the stored item is {@link RestObject#NOT_SYNCED}, it has never been on server.
+	 * @param status
+	 * 		The status to write.
+	 *
+	 * @return The status to write instead, {@link RestObject#DELETE_SYNCED} removes the stored item without request.
+	 */
+	public static int fold( boolean neverSynced, int status ) {
+		if( !neverSynced ) {
+			return status;
+		}
+		switch( status ) {
+			case RestObject.UPDATE:
+				//STILL A CREATE, WITH THE LATEST DATA.
+				return RestObject.NOT_SYNCED;
+			case RestObject.DELETE:
+				//NEVER ON SERVER, NOTHING TO SEND.
+				return RestObject.DELETE_SYNCED;
+			default:
+				return status;
+		}
+	}
+
+	/**
+	 * A create of {@code object} is being sent, later updates and deletes are not folded into it until {@link
+	 * #onSettled(RestObject)}.
+	 */
+	static void onDispatched( RestObject object ) {
+		String key = keyOf( object );
+		synchronized( sDispatched ) {
+			Integer count = sDispatched.get( key );
+			sDispatched.put(
+					key,
+					count == null ? 1 : count + 1
+			);
+		}
+	}
+
+	/**
+	 * A create of {@code object} that has been reported by {@link #onDispatched(RestObject)} has ended.
+	 */
+	static void onSettled( RestObject object ) {
+		String key = keyOf( object );
+		synchronized( sDispatched ) {
+			Integer count = sDispatched.get( key );
+			if( count == null || count <= 1 ) {
+				sDispatched.remove( key );
+			} else {
+				sDispatched.put(
+						key,
+						count - 1
+				);
+			}
+		}
+	}
+
+	/**
+	 * @return {@code true} if a create of {@code object} is being sent.
+	 */
+	static boolean isDispatched( RestObject object ) {
+		synchronized( sDispatched ) {
+			return sDispatched.containsKey( keyOf( object ) );
+		}
+	}
+
+	private static String keyOf( RestObject object ) {
+		return object.DBType()
+					 .getName() + "#" + object.getReqId();
+	}
+
+	/**
+	 * Coalesce pending operations.
+	 *
+	 * @param operations
+	 * 		Pending operations of one {@link RestObject#DBType()} sorted by "reqTime".
+	 *
+	 * @return The {@link PendingCoalescer} that holds the result.
+	 */
+	public static PendingCoalescer coalesce( List<PendingRequest> operations ) {
+		Map<String, Chain> chains = new LinkedHashMap<>();
+		for( PendingRequest operation : operations ) {
+			String reqId = operation.getObject()
+									.getReqId();
+			Chain chain = chains.get( reqId );
+			if( chain == null ) {
+				chains.put(
+						reqId,
+						new Chain( operation )
+				);
+			} else {
+				chain.add( operation );
+			}
+		}
+
+		PendingCoalescer result = new PendingCoalescer();
+		for( Chain chain : chains.values() ) {
+			int        lastStatus = chain.mLast.getStatusBefore();
+			RestObject latest     = chain.mLast.getObject();
+			if( chain.mFirstStatus == RestObject.NOT_SYNCED && lastStatus == RestObject.DELETE ) {
+				//NEVER ON SERVER, NOTHING TO SEND.
+				result.mDropped.addAll( chain.mObjects );
+				result.mSaved += chain.mObjects.size();
+			} else if( chain.mFirstStatus == RestObject.NOT_SYNCED && lastStatus == RestObject.UPDATE ) {
+				result.mRequests.add( new PendingRequest(
+						latest,
+						RestObject.NOT_SYNCED
+				) );
+				result.mSaved += chain.mObjects.size() - 1;
+			} else {
+				result.mRequests.add( chain.mLast );
+				result.mSaved += chain.mObjects.size() - 1;
+			}
+		}
+		RestStats.addCoalescedRequests( result.mSaved );
+		return result;
+	}
+
+	/**
+	 * @return The net operations to send, one per request-id.
+	 */
+	public List<PendingRequest> getRequests() {
+		return mRequests;
+	}
+
+	/**
+	 * @return Objects that have never been on server and were deleted, they can be removed locally without request.
+	 */
+	public List<RestObject> getDropped() {
+		return mDropped;
+	}
+
+	/**
+	 * @return Count of requests that have been saved.
+	 */
+	public int getSaved() {
+		return mSaved;
+	}
+}
@@ -0,0 +1,113 @@
+package com.chopping.rest;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Pages through pending items of one {@link RestObject#DBType()} in "reqTime" order.
+ * <p/>
+ * The pending items are selected and sorted once by first {@link #next()}, pages are read from that result by position,
+ * so paging a big outbox costs one sort, not one per page. The result is a snapshot of the items that were pending when
+ * paging started. The pager holds a {@link Realm} until the last page has been read or {@link #close()}, it must be used
+ * and closed on one thread.
+ *
+ * @author Xinyue Zhao
+ */
+public final class PendingPager implements Closeable {
+	private final RestObject                    mPrototype;
+	private final int                           mStatus;
+	private final int                           mPageSize;
+	private Realm                               mDb;
+	private RealmResults<? extends RealmObject> mItems;
+	/**
+	 * Position of first item of next page in {@link #mItems}.
+	 */
+	private int                                 mPosition;
+	private boolean                             mHasNext = true;
+
+	/**
+	 * Constructor of {@link PendingPager}
+	 *
+	 * @param prototype
+	 * 		The {@link RestObject} whose {@link RestObject#DBType()} is paged, it converts database items.
+	 * @param status
+	 * 		The status of pending items.
+	 * @param pageSize
+	 * 		Max count of items of a page.
+	 */
+	public PendingPager( RestObject prototype, int status, int pageSize ) {
+		if( pageSize <= 0 ) {
+			throw new IllegalArgumentException( "pageSize must be positive: " + pageSize );
+		}
+		mPrototype = prototype;
+		mStatus = status;
+		mPageSize = pageSize;
+	}
+
+	/**
+	 * @return {@code true} if there are more pages, before the first {@link #next()} there's always one, maybe empty.
+	 */
+	public boolean hasNext() {
+		return mHasNext;
+	}
+
+	/**
+	 * Select next page, the pager is closed after the last one.
+	 *
+	 * @return Items of next page, empty if there's nothing pending.
+	 */
+	public List<RestObject> next() {
+		List<RestObject> page = new ArrayList<>( mPageSize );
+		if( !mHasNext ) {
+			return page;
+		}
+		try {
+			if( mItems == null ) {
+				mDb = Realm.getDefaultInstance();
+				mItems = mDb.where( mPrototype.DBType() )
+							.equalTo(
+									"status",
+									mStatus
+							)
+							.findAllSorted(
+									"reqTime",
+									Sort.ASCENDING
+							);
+			}
+			int size = mItems.size();
+			while( mPosition < size && page.size() < mPageSize ) {
+				RestObject restObject = mPrototype.newFromDB( mItems.get( mPosition++ ) );
+				if( restObject != null ) {
+					page.add( restObject );
+				}
+			}
+			mHasNext = mPosition < size;
+		} catch( RuntimeException e ) {
+			close();
+			throw e;
+		}
+		if( !mHasNext ) {
+			close();
+		}
+		return page;
+	}
+
+	/**
+	 * Release the {@link Realm}, no more pages are read. Call it on the thread that has read the pages.
+	 */
+	@Override
+	public void close() {
+		mHasNext = false;
+		mItems = null;
+		if( mDb != null && !mDb.isClosed() ) {
+			mDb.close();
+		}
+		mDb = null;
+	}
+}
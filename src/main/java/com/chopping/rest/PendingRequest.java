@@ -0,0 +1,53 @@
+package com.chopping.rest;
+
+/**
+ * A pending operation of a {@link RestObject}: the object with its status before sync.
+ *
+ * @author Xinyue Zhao
+ */
+public class PendingRequest {
+	private final RestObject mObject;
+	private final int        mStatusBefore;
+
+	/**
+	 * Constructor of {@link PendingRequest}
+	 *
+	 * @param object
+	 * 		The {@link RestObject} to send.
+	 * @param statusBefore
+	 * 		One of {@link RestObject#NOT_SYNCED}, {@link RestObject#UPDATE}, {@link RestObject#DELETE}.
+	 */
+	public PendingRequest( RestObject object, int statusBefore ) {
+		mObject = object;
+		mStatusBefore = statusBefore;
+	}
+
+	public RestObject getObject() {
+		return mObject;
+	}
+
+	public int getStatusBefore() {
+		return mStatusBefore;
+	}
+
+	/**
+	 * @return The status after a successful sync of {@link #getStatusBefore()}.
+	 */
+	public int getStatusAfter() {
+		return statusAfter( mStatusBefore );
+	}
+
+	/**
+	 * @return The status after a successful sync of {@code statusBefore}.
+	 */
+	public static int statusAfter( int statusBefore ) {
+		switch( statusBefore ) {
+			case RestObject.UPDATE:
+				return RestObject.UPDATE_SYNCED;
+			case RestObject.DELETE:
+				return RestObject.DELETE_SYNCED;
+			default:
+				return RestObject.SYNCED;
+		}
+	}
+}
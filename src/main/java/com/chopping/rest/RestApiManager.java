@@ -1,13 +1,24 @@
 package com.chopping.rest;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
+import com.chopping.bus.RestApiProgressEvent;
 import com.chopping.bus.RestApiResponseEvent;
 import com.chopping.utils.RestUtils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import de.greenrobot.event.EventBus;
+import io.realm.RealmObject;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -15,14 +26,143 @@ import retrofit2.Response;
 
 /**
  * Architecture for working with Retrofit.
+ * <p/>
+ * Failed async requests are retried by the {@link RetryPolicy} of their endpoint, a {@link CircuitBreaker} stops
+ * sending to an endpoint that keeps failing. Items blocked by the breaker wait in their pending status, one of them is
+ * sent as trial when the breaker allows it, all of them are sent when the breaker closes.
+ * <p/>
+ * A request that is submitted again while it is still running is not sent twice, it gets the result of the running
+ * one.
+ * <p/>
+ * Results of requests without {@link OnResponseListener} are reported by one {@link RestApiResponseEvent} per request
+ * and by throttled {@link RestApiProgressEvent}s, the per-request events can be turned off, see {@link
+ * #setPerItemEvents(boolean)}.
+ * <p/>
+ * All mutations carry a stable idempotency key when {@link IdempotencyInterceptor} has been added to the client of
+ * Retrofit.
  *
  * @author Xinyue Zhao
  */
 public class RestApiManager {
+	/**
+	 * Callback of an async request, called on main thread after the local status has been written.
+	 */
+	public interface OnResponseListener {
+		/**
+		 * @param requestObject
+		 * 		The request data.
+		 * @param success
+		 * 		{@code true} if server has responded successfully.
+		 */
+		void onResponse( RestObject requestObject, boolean success );
+	}
+
+	/**
+	 * Retry policy and circuit breaker of requests whose path starts with a prefix.
+	 */
+	private static final class Endpoint {
+		private final String         mPathPrefix;
+		private final RetryPolicy    mRetryPolicy;
+		private final CircuitBreaker mBreaker;
+		/**
+		 * Sends that wait for the breaker, guarded by itself.
+		 */
+		private final List<Runnable> mBlocked = new ArrayList<>();
+		/**
+		 * Runs {@link #mBlocked} when the breaker allows a trial, guarded by {@link #mBlocked}.
+		 */
+		private Runnable             mWake;
+
+		private Endpoint( String pathPrefix, RetryPolicy retryPolicy, @Nullable CircuitBreaker breaker ) {
+			mPathPrefix = pathPrefix;
+			mRetryPolicy = retryPolicy;
+			mBreaker = breaker;
+		}
+	}
+
+	/**
+	 * A running request.
+	 */
+	private static final class Running {
+		private final long                     mStartedAt  = SystemClock.elapsedRealtime();
+		/**
+		 * Listener of the request.
+		 */
+		private final OnResponseListener       mListener;
+		/**
+		 * Listeners of duplicated requests that wait for it.
+		 */
+		private final List<OnResponseListener> mDuplicates = new ArrayList<>( 0 );
+		/**
+		 * The call that is sent or will be sent by {@link #mRetry}, {@code null} if the request is not sent by its own
+		 * call, guarded by {@link #mInFlight}.
+		 */
+		private Call<?>                        mCall;
+		/**
+		 * Scheduled retry, guarded by {@link #mInFlight}.
+		 */
+		private Runnable                       mRetry;
+		/**
+		 * {@code true} if the request has been cancelled by {@link #cancel(RestObject, int, OnResponseListener)},
+		 * guarded by {@link #mInFlight}.
+		 */
+		private boolean                        mCancelled;
+		/**
+		 * {@code true} if {@link #mListener} has left, the request goes on for duplicates, guarded by {@link
+		 * #mInFlight}.
+		 */
+		private boolean                        mDetached;
+		/**
+		 * The request data if the request is a create, see {@link PendingCoalescer#onDispatched(RestObject)}.
+		 */
+		private RestObject                     mCreate;
+
+		private Running( @Nullable OnResponseListener listener ) {
+			mListener = listener;
+		}
+	}
+
+	/**
+	 * Default min interval between two {@link RestApiProgressEvent}s.
+	 */
+	private static final long PROGRESS_INTERVAL_MS = 500;
+
 	/**
 	 * The id of manger.
 	 */
 	private long mId;
+	private final Handler        mHandler         = new Handler( Looper.getMainLooper() );
+	/**
+	 * Endpoints sorted by length of path prefix, longest first.
+	 */
+	private final List<Endpoint> mEndpoints       = new ArrayList<>();
+	/**
+	 * Running requests associated with listeners of duplicated requests that wait for them, guarded by itself.
+	 */
+	private final Map<String, Running>   mInFlight = new HashMap<>();
+	private final RestProgress           mProgress = new RestProgress( PROGRESS_INTERVAL_MS );
+	/**
+	 * {@code true} if a {@link RestApiResponseEvent} is posted for every request without {@link OnResponseListener}.
+	 */
+	private volatile boolean             mPerItemEvents = true;
+	/**
+	 * Batchers of types in batch mode, guarded by itself.
+	 */
+	private final Map<Class<? extends RealmObject>, RestBatcher> mBatchers = new HashMap<>();
+	private volatile OutboxJournal mJournal;
+	/**
+	 * {@code true} if async requests of types in batch mode are collected by their batchers.
+	 */
+	private volatile boolean       mMicroBatching;
+	/**
+	 * Outboxes of types that have a limit, guarded by itself.
+	 */
+	private final Map<Class<? extends RealmObject>, Outbox> mOutboxes = new HashMap<>();
+	private Endpoint             mDefaultEndpoint = new Endpoint(
+			"",
+			RetryPolicy.NONE,
+			null
+	);
 
 
 	/**
@@ -40,6 +180,117 @@ public class RestApiManager {
 		mId = id;
 	}
 
+	/**
+	 * Set min interval between two {@link RestApiProgressEvent}s, a last event is posted at once when no request is
+	 * running anymore. Default is 500ms.
+	 *
+	 * @param intervalMs
+	 * 		The interval, i.e. 16ms for one event per frame.
+	 */
+	public void setProgressInterval( long intervalMs ) {
+		mProgress.setInterval( intervalMs );
+	}
+
+	/**
+	 * Post a {@link RestApiResponseEvent} for every request without {@link OnResponseListener} additionally to {@link
+	 * RestApiProgressEvent}s. Default is {@code true}, turn it off when many requests are sent at once and only the
+	 * aggregated {@link RestApiProgressEvent}s are subscribed, subscribers of {@link RestApiResponseEvent} get nothing
+	 * then.
+	 */
+	public void setPerItemEvents( boolean perItemEvents ) {
+		mPerItemEvents = perItemEvents;
+		mProgress.setPerItemReported( perItemEvents );
+	}
+
+	/**
+	 * Set retry policy and circuit breaker of requests that no endpoint has been set for, see {@link
+	 * #setEndpointPolicy(String, RetryPolicy, CircuitBreaker)}. Default is {@link RetryPolicy#NONE} without breaker.
+	 *
+	 * @param retryPolicy
+	 * 		The {@link RetryPolicy}.
+	 * @param breaker
+	 * 		The {@link CircuitBreaker}, {@code null} if the endpoint should never be blocked.
+	 */
+	public void setDefaultPolicy( RetryPolicy retryPolicy, @Nullable CircuitBreaker breaker ) {
+		mDefaultEndpoint = new Endpoint(
+				"",
+				retryPolicy,
+				breaker
+		);
+	}
+
+	/**
+	 * Set retry policy and circuit breaker of an endpoint, i.e. requests whose url-path starts with {@code
+	 * pathPrefix}.
+	 *
+	 * @param pathPrefix
+	 * 		The url-path prefix of endpoint, i.e. "/api/messages".
+	 * @param retryPolicy
+	 * 		The {@link RetryPolicy}.
+	 * @param breaker
+	 * 		The {@link CircuitBreaker}, {@code null} if the endpoint should never be blocked.
+	 */
+	public void setEndpointPolicy( String pathPrefix, RetryPolicy retryPolicy, @Nullable CircuitBreaker breaker ) {
+		for( Iterator<Endpoint> it = mEndpoints.iterator(); it.hasNext(); ) {
+			if( it.next().mPathPrefix.equals( pathPrefix ) ) {
+				it.remove();
+			}
+		}
+		int i = 0;
+		while( i < mEndpoints.size() && mEndpoints.get( i ).mPathPrefix.length() >= pathPrefix.length() ) {
+			i++;
+		}
+		mEndpoints.add(
+				i,
+				new Endpoint(
+						pathPrefix,
+						retryPolicy,
+						breaker
+				)
+		);
+	}
+
+	/**
+	 * Run {@code task} on main thread.
+	 */
+	void post( Runnable task ) {
+		mHandler.post( task );
+	}
+
+	/**
+	 * Run {@code task} on main thread after {@code delayMs}.
+	 */
+	void postDelayed( Runnable task, long delayMs ) {
+		mHandler.postDelayed(
+				task,
+				delayMs
+		);
+	}
+
+	/**
+	 * Remove {@code task} that has been posted and not run yet.
+	 */
+	void removeCallbacks( Runnable task ) {
+		mHandler.removeCallbacks( task );
+	}
+
+	/**
+	 * @return The {@link Endpoint} of {@code call}.
+	 */
+	private Endpoint findEndpoint( Call<?> call ) {
+		if( !mEndpoints.isEmpty() ) {
+			String path = call.request()
+							  .url()
+							  .encodedPath();
+			for( Endpoint endpoint : mEndpoints ) {
+				if( path.startsWith( endpoint.mPathPrefix ) ) {
+					return endpoint;
+				}
+			}
+		}
+		return mDefaultEndpoint;
+	}
+
 	/**
 	 * Run a rest request for non-delete or update async.
 	 *
@@ -76,6 +327,8 @@ public class RestApiManager {
 
 	/**
 	 * Run a rest request for update async.
+	 * <p/>
+	 * To send only changed fields create the {@code call} with body of {@link RestPatch#mergePatch(RestObject)}.
 	 *
 	 * @param call
 	 * 		The {@link Call} to the request.
@@ -105,35 +358,516 @@ public class RestApiManager {
 	 */
 	public <LD extends RestObject, SD extends RestObject> void execAsync( Call<SD> call, LD requestObject, int statusBefore, final int statusAfter
 	) {
-		//MAKE A LOCAL STATUS.
-		requestObject.updateDB( statusBefore );
+		execAsync(
+				call,
+				requestObject,
+				statusBefore,
+				statusAfter,
+				null
+		);
+	}
+
+	/**
+	 * Run a rest request async.
+	 *
+	 * @param call
+	 * 		The {@link Call} to the request.
+	 * @param requestObject
+	 * 		The request data to post on server.
+	 * @param statusBefore
+	 * 		The status of begin request.
+	 * @param statusAfter
+	 * 		The status of after request.
+	 * @param listener
+	 * 		The {@link OnResponseListener} for result, the request is not counted by {@link RestApiProgressEvent} when it is not
+	 * 		{@code null}.
+	 */
+	public <LD extends RestObject, SD extends RestObject> void execAsync( final Call<SD> call, final LD requestObject, final int statusBefore,
+			final int statusAfter, @Nullable final OnResponseListener listener
+	) {
+		if( mMicroBatching && isBatchMode( requestObject.DBType() ) ) {
+			//GATHERED WITH OTHERS OF THE BURST, THE CALL IS NOT USED.
+			batchAsync(
+					requestObject,
+					statusBefore,
+					statusAfter,
+					listener
+			);
+			return;
+		}
+		final String key = keyOf(
+				requestObject,
+				statusBefore
+		);
+		if( waitForRunning(
+				key,
+				requestObject,
+				statusBefore,
+				listener
+		) ) {
+			return;
+		}
+		if( !admit(
+				key,
+				requestObject,
+				statusBefore,
+				listener
+		) ) {
+			return;
+		}
+		journal(
+				requestObject,
+				statusBefore
+		);
+		writeThenDispatch(
+				key,
+				requestObject,
+				statusBefore,
+				listener,
+				new Runnable() {
+					@Override
+					public void run() {
+						send(
+								call,
+								key,
+								requestObject,
+								statusBefore,
+								statusAfter,
+								listener
+						);
+					}
+				}
+		);
+	}
+
+	/**
+	 * Make the local status of a request, then dispatch it. An update or delete of a created item that has not been
+	 * sent is folded into the item by the write, see {@link PendingCoalescer}, then it is done without request.
+	 */
+	private void writeThenDispatch( final String key, final RestObject requestObject, final int statusBefore,
+			@Nullable final OnResponseListener listener, final Runnable dispatch ) {
+		if( statusBefore != RestObject.UPDATE && statusBefore != RestObject.DELETE ) {
+			//MAKE A LOCAL STATUS.
+			requestObject.updateDBAsync( statusBefore );
+			dispatch.run();
+			return;
+		}
+		//MAKE A LOCAL STATUS, IT TELLS WHETHER THE REQUEST IS STILL NEEDED.
+		requestObject.updateDBAsync(
+				statusBefore,
+				new RestWriter.OnWrittenListener() {
+					@Override
+					public void onWritten() {
+						if( !requestObject.isFolded() ) {
+							dispatch.run();
+							return;
+						}
+						//-------------------------
+						//FOLDED INTO A CREATE THAT HAS NOT BEEN SENT, NO REQUEST.
+						//-------------------------
+						RestStats.addCoalescedRequests( 1 );
+						acknowledge(
+								requestObject,
+								statusBefore
+						);
+						settleOutbox(
+								requestObject,
+								true
+						);
+						new PostResponse(
+								key,
+								requestObject,
+								true,
+								false,
+								listener
+						).onWritten();
+					}
+
+					@Override
+					public void onWriteFailed( List<RestObject> lost ) {
+						dispatch.run();
+					}
+				}
+		);
+	}
+
+	private <SD extends RestObject> void send( Call<SD> call, String key, RestObject requestObject, int statusBefore, int statusAfter,
+			@Nullable OnResponseListener listener ) {
 		//CALL API.
-		call.enqueue( new  Callback<SD>() {
-			@Override
-			public void onResponse(Call<SD> call,  Response<SD> response  ) {
-				if( response.isSuccessful() ) {
-					//-------------------------
-					//THE REQUEST IS SUCCESS.
-					//-------------------------
-					RestObject serverData = response.body();
-					//UPDATE LOCAL STATUS.
-					serverData.updateDB( statusAfter );
+		IdempotencyInterceptor.getInstance()
+							  .register(
+									  call,
+									  IdempotencyInterceptor.keyOf(
+											  requestObject,
+											  statusBefore
+									  )
+							  );
+		new ResponseCallback<SD>(
+				key,
+				requestObject,
+				statusBefore,
+				statusAfter,
+				listener,
+				findEndpoint( call )
+		).send( call );
+	}
+
+	/**
+	 * Let {@code send} wait while the breaker of {@code endpoint} is open. It runs again when the breaker allows a
+	 * trial and when the breaker closes.
+	 */
+	private void block( final Endpoint endpoint, Runnable send ) {
+		Runnable wake;
+		synchronized( endpoint.mBlocked ) {
+			endpoint.mBlocked.add( send );
+			if( endpoint.mWake == null ) {
+				endpoint.mWake = new Runnable() {
+					@Override
+					public void run() {
+						unblock( endpoint );
+					}
+				};
+			}
+			wake = endpoint.mWake;
+		}
+		removeCallbacks( wake );
+		postDelayed(
+				wake,
+				endpoint.mBreaker.getWaitMs()
+		);
+	}
+
+	/**
+	 * Run all sends that wait for the breaker of {@code endpoint}, those that are still blocked wait again.
+	 */
+	private void unblock( Endpoint endpoint ) {
+		List<Runnable> blocked;
+		Runnable       wake;
+		synchronized( endpoint.mBlocked ) {
+			blocked = new ArrayList<>( endpoint.mBlocked );
+			endpoint.mBlocked.clear();
+			wake = endpoint.mWake;
+		}
+		if( wake != null ) {
+			removeCallbacks( wake );
+		}
+		for( Runnable send : blocked ) {
+			send.run();
+		}
+	}
+
+	/**
+	 * Close the breaker of {@code endpoint} after a response, the sends that have waited for it are run.
+	 */
+	private void closeBreaker( Endpoint endpoint ) {
+		if( endpoint.mBreaker == null ) {
+			return;
+		}
+		boolean wasOpen = endpoint.mBreaker.isOpen();
+		endpoint.mBreaker.onSuccess();
+		if( wasOpen ) {
+			//REDISPATCH ITEMS THAT HAVE WAITED FOR THE ENDPOINT.
+			unblock( endpoint );
+		}
+	}
+
+	/**
+	 * Cancel an async request that has been submitted with {@code listener}. When duplicated requests wait for it, it
+	 * goes on for them and only {@code listener} leaves. Otherwise the running call or a scheduled retry is cancelled,
+	 * the item stays pending.
+	 *
+	 * @param requestObject
+	 * 		The request data.
+	 * @param statusBefore
+	 * 		The status of begin request.
+	 * @param listener
+	 * 		The {@link OnResponseListener} that the request has been submitted with, it is not called anymore.
+	 */
+	public void cancel( RestObject requestObject, int statusBefore, @Nullable OnResponseListener listener ) {
+		Call<?>  call;
+		Runnable retry;
+		synchronized( mInFlight ) {
+			Running running = mInFlight.get( keyOf(
+					requestObject,
+					statusBefore
+			) );
+			if( running == null || running.mCancelled ) {
+				return;
+			}
+			if( running.mListener != listener || running.mDetached ) {
+				//A DUPLICATE LEAVES.
+				if( running.mDuplicates.remove( listener ) && listener == null ) {
+					mProgress.onDropped();
 				}
-				EventBus.getDefault().post( new RestApiResponseEvent( true ) );
+				return;
+			}
+			running.mDetached = true;
+			if( listener == null ) {
+				mProgress.onDropped();
 			}
+			if( !running.mDuplicates.isEmpty() || running.mCall == null ) {
+				//-------------------------
+				//OTHERS WAIT FOR IT, OR IT IS SENT IN A BATCH.
+				//-------------------------
+				return;
+			}
+			running.mCancelled = true;
+			call = running.mCall;
+			retry = running.mRetry;
+		}
+		if( retry != null ) {
+			//Release at once instead of at the end of delay or of the open breaker.
+			removeCallbacks( retry );
+			Endpoint endpoint = findEndpoint( call );
+			synchronized( endpoint.mBlocked ) {
+				endpoint.mBlocked.remove( retry );
+			}
+			post( retry );
+		} else {
+			call.cancel();
+		}
+	}
 
-			@Override
-			public void onFailure( Call<SD> call, Throwable t ) {
-				Log.d(
-						getClass().getSimpleName(),
-						"onFailure: " + t.toString()
+	/**
+	 * Callback of an async request, it retries failed requests by {@link RetryPolicy} of the endpoint.
+	 */
+	private final class ResponseCallback<SD extends RestObject> implements Callback<SD> {
+		private final String             mKey;
+		private final RestObject         mRequestObject;
+		private final int                mStatusBefore;
+		private final int                mStatusAfter;
+		private final OnResponseListener mListener;
+		private final Endpoint           mEndpoint;
+		private       int                mRetries;
+
+		private ResponseCallback( String key, RestObject requestObject, int statusBefore, int statusAfter, @Nullable OnResponseListener listener,
+				Endpoint endpoint ) {
+			mKey = key;
+			mRequestObject = requestObject;
+			mStatusBefore = statusBefore;
+			mStatusAfter = statusAfter;
+			mListener = listener;
+			mEndpoint = endpoint;
+		}
 
+		@Override
+		public void onResponse( Call<SD> call, Response<SD> response ) {
+			if( response.isSuccessful() ) {
+				//-------------------------
+				//THE REQUEST IS SUCCESS.
+				//-------------------------
+				onEndpointSuccess();
+				acknowledge(
+						mRequestObject,
+						mStatusBefore
 				);
-				EventBus.getDefault().post( new RestApiResponseEvent( false ) );
+				RestObject serverData = response.body();
+				//UPDATE LOCAL STATUS.
+				serverData.updateDBAsync(
+						mStatusAfter,
+						new PostResponse(
+								mKey,
+								mRequestObject,
+								true,
+								true,
+								mListener
+						)
+				);
+				return;
 			}
-		} );
-	}
+			if( response.code() < 500 ) {
+				//The server works, the request was wrong, do not retry or replay it.
+				onEndpointSuccess();
+				acknowledge(
+						mRequestObject,
+						mStatusBefore
+				);
+				refuse(
+						mRequestObject,
+						new PostResponse(
+								mKey,
+								mRequestObject,
+								false,
+								true,
+								mListener
+						)
+				);
+				return;
+			}
+			onEndpointFailure();
+			if( retry( call ) ) {
+				return;
+			}
+			new PostResponse(
+					mKey,
+					mRequestObject,
+					false,
+					true,
+					mListener
+			).onWritten();
+		}
+
+		@Override
+		public void onFailure( Call<SD> call, Throwable t ) {
+			Log.d(
+					getClass().getSimpleName(),
+					"onFailure: " + t.toString()
 
+			);
+			if( call.isCanceled() ) {
+				onEndpointCancelled( call );
+				onCancelled();
+				return;
+			}
+			onEndpointFailure();
+			if( retry( call ) ) {
+				return;
+			}
+			new PostResponse(
+					mKey,
+					mRequestObject,
+					false,
+					false,
+					mListener
+			).onWritten();
+		}
+
+		private void onEndpointSuccess() {
+			closeBreaker( mEndpoint );
+		}
+
+		private void onEndpointFailure() {
+			if( mEndpoint.mBreaker != null ) {
+				mEndpoint.mBreaker.onFailure();
+			}
+		}
+
+		private void onEndpointCancelled( Call<SD> call ) {
+			if( mEndpoint.mBreaker != null ) {
+				mEndpoint.mBreaker.onCancelled( call );
+			}
+		}
+
+		/**
+		 * Send {@code call} unless the request has been cancelled. While the breaker of the endpoint is open the request
+		 * waits for it, see {@link #block(Endpoint, Runnable)}.
+		 */
+		private void send( final Call<SD> call ) {
+			boolean cancelled;
+			synchronized( mInFlight ) {
+				Running running = mInFlight.get( mKey );
+				cancelled = running == null || running.mCancelled;
+				if( !cancelled ) {
+					running.mCall = call;
+					running.mRetry = null;
+				}
+			}
+			if( cancelled ) {
+				onCancelled();
+				return;
+			}
+			if( mEndpoint.mBreaker != null && !mEndpoint.mBreaker.allowRequest( call ) ) {
+				//-------------------------
+				//ENDPOINT KEEPS FAILING, THE ITEM STAYS PENDING AND WAITS FOR IT.
+				//-------------------------
+				Runnable resend = new Runnable() {
+					@Override
+					public void run() {
+						send( call );
+					}
+				};
+				synchronized( mInFlight ) {
+					Running running = mInFlight.get( mKey );
+					if( running != null ) {
+						running.mRetry = resend;
+					}
+				}
+				block(
+						mEndpoint,
+						resend
+				);
+				return;
+			}
+			call.enqueue( this );
+		}
+
+		/**
+		 * The request has been cancelled, the item stays pending, all that wait for the request are released.
+		 */
+		private void onCancelled() {
+			settleOutbox(
+					mRequestObject,
+					false
+			);
+			Running running = removeInFlight( mKey );
+			if( running == null ) {
+				return;
+			}
+			if( !running.mDetached ) {
+				drop( mListener );
+			}
+			for( OnResponseListener duplicate : running.mDuplicates ) {
+				drop( duplicate );
+			}
+		}
+
+		private void drop( @Nullable final OnResponseListener listener ) {
+			if( listener == null ) {
+				mProgress.onDropped();
+				return;
+			}
+			post( new Runnable() {
+				@Override
+				public void run() {
+					listener.onResponse(
+							mRequestObject,
+							false
+					);
+				}
+			} );
+		}
+
+		/**
+		 * Schedule a retry of {@code call}.
+		 *
+		 * @return {@code false} if no retry is allowed.
+		 */
+		private boolean retry( Call<SD> call ) {
+			if( !mEndpoint.mRetryPolicy.shouldRetry( mRetries ) ) {
+				return false;
+			}
+			final Call<SD> retryCall = call.clone();
+			//SAME KEY, THE SERVER MAY HAVE DONE THE FIRST DELIVERY.
+			IdempotencyInterceptor.getInstance()
+								  .register(
+										  retryCall,
+										  IdempotencyInterceptor.keyOf(
+												  mRequestObject,
+												  mStatusBefore
+										  )
+								  );
+			long           delay     = mEndpoint.mRetryPolicy.getDelay( mRetries );
+			mRetries++;
+			Runnable retry = new Runnable() {
+				@Override
+				public void run() {
+					send( retryCall );
+				}
+			};
+			synchronized( mInFlight ) {
+				Running running = mInFlight.get( mKey );
+				if( running != null ) {
+					running.mCall = retryCall;
+					running.mRetry = retry;
+				}
+			}
+			postDelayed(
+					retry,
+					delay
+			);
+			return true;
+		}
+	}
 
 	/**
 	 * Run a rest request for non-delete or update sync.
@@ -200,10 +934,27 @@ public class RestApiManager {
 	 * 		The status of after request.
 	 */
 	public <LD extends RestObject, SD extends RestObject> void execSync( Call<SD> call, LD requestObject, int statusBefore, int statusAfter ) {
-		//MAKE A LOCAL STATUS.
-		requestObject.updateDB( statusBefore );
+		boolean create = statusBefore == RestObject.NOT_SYNCED;
+		if( create ) {
+			PendingCoalescer.onDispatched( requestObject );
+		}
 		try {
+			//MAKE A LOCAL STATUS.
+			requestObject.updateDB( statusBefore );
+			if( requestObject.isFolded() ) {
+				//FOLDED INTO A CREATE THAT HAS NOT BEEN SENT, NO REQUEST.
+				RestStats.addCoalescedRequests( 1 );
+				return;
+			}
 			//CALL API.
+			IdempotencyInterceptor.getInstance()
+								  .register(
+										  call,
+										  IdempotencyInterceptor.keyOf(
+												  requestObject,
+												  statusBefore
+										  )
+								  );
 			Response<SD> response = call.execute();
 			if( response.isSuccessful() ) {
 				//-------------------------
@@ -212,12 +963,121 @@ public class RestApiManager {
 				RestObject serverData = response.body();
 				//UPDATE LOCAL STATUS.
 				serverData.updateDB( statusAfter );
+			} else if( response.code() < 500 ) {
+				//The request was wrong, out of pending items.
+				requestObject.updateDB( RestObject.REFUSED );
 			}
 		} catch( IOException e ) {
 			Log.e(
 					"RestApiManager",
 					"execSync: " + e.getMessage()
 
+			);
+		} finally {
+			if( create ) {
+				PendingCoalescer.onSettled( requestObject );
+			}
+		}
+	}
+
+	/**
+	 * Run a rest request async whose response is a list of server data, i.e. load a list of data. All data will be
+	 * saved in one database transaction.
+	 *
+	 * @param call
+	 * 		The {@link Call} to the request.
+	 * @param statusAfter
+	 * 		The status of after request.
+	 */
+	public <SD extends RestObject> void execListAsync( Call<List<SD>> call, final int statusAfter ) {
+		final long startedAt = SystemClock.elapsedRealtime();
+		mProgress.onStarted();
+		//CALL API.
+		call.enqueue( new Callback<List<SD>>() {
+			@Override
+			public void onResponse( Call<List<SD>> call, Response<List<SD>> response ) {
+				if( response.isSuccessful() ) {
+					//-------------------------
+					//THE REQUEST IS SUCCESS.
+					//-------------------------
+					List<SD> serverData = response.body();
+					//UPDATE LOCAL STATUS.
+					RestObject.updateDBAsync(
+							serverData,
+							statusAfter,
+							SyncCursor.afterWritten(
+									serverData,
+									new PostResponse(
+											null,
+											null,
+											true,
+											true,
+											null,
+											startedAt
+									)
+							)
+					);
+					return;
+				}
+				new PostResponse(
+						null,
+						null,
+						false,
+						true,
+						null,
+						startedAt
+				).onWritten();
+			}
+
+			@Override
+			public void onFailure( Call<List<SD>> call, Throwable t ) {
+				Log.d(
+						getClass().getSimpleName(),
+						"onFailure: " + t.toString()
+
+				);
+				new PostResponse(
+						null,
+						null,
+						false,
+						false,
+						null,
+						startedAt
+				).onWritten();
+			}
+		} );
+	}
+
+	/**
+	 * Run a rest request sync whose response is a list of server data, i.e. load a list of data. All data will be
+	 * saved in one database transaction.
+	 *
+	 * @param call
+	 * 		The {@link Call} to the request.
+	 * @param statusAfter
+	 * 		The status of after request.
+	 */
+	public <SD extends RestObject> void execListSync( Call<List<SD>> call, int statusAfter ) {
+		try {
+			//CALL API.
+			Response<List<SD>> response = call.execute();
+			if( response.isSuccessful() ) {
+				//-------------------------
+				//THE REQUEST IS SUCCESS.
+				//-------------------------
+				List<SD> serverData = response.body();
+				//UPDATE LOCAL STATUS.
+				RestObject.updateDB(
+						serverData,
+						statusAfter
+				);
+				SyncCursor.advance( serverData );
+			}
+		} catch( IOException e ) {
+			Log.e(
+					"RestApiManager",
+					"execListSync: " + e.getMessage()
+
 			);
 		}
 	}
@@ -225,4 +1085,681 @@ public class RestApiManager {
 	public void executePending( ExecutePending exp, int statusBefore ) {
 		RestUtils.executePending( exp, statusBefore );
 	}
+
+	/**
+	 * Do pending request page by page on a background thread.
+	 *
+	 * @param exp
+	 * 		{@link ExecutePendingPaged} to execute pending.
+	 * @param statusBefore
+	 * 		Status of sync.
+	 */
+	public void executePending( ExecutePendingPaged exp, int statusBefore ) {
+		RestUtils.executePendingPaged(
+				exp,
+				statusBefore
+		);
+	}
+
+	/**
+	 * Do pending requests of all pending status, chains of operations of same request-id are coalesced before, see
+	 * {@link PendingCoalescer}.
+	 *
+	 * @param exp
+	 * 		{@link ExecutePendingRequests} to execute pending.
+	 */
+	public void executePending( ExecutePendingRequests exp ) {
+		RestUtils.executePendingCoalesced( exp );
+	}
+
+	/**
+	 * Run a pending request async.
+	 *
+	 * @param call
+	 * 		The {@link Call} to the request.
+	 * @param request
+	 * 		The {@link PendingRequest} to send.
+	 */
+	public <SD extends RestObject> void execAsync( Call<SD> call, PendingRequest request ) {
+		execAsync(
+				call,
+				request.getObject(),
+				request.getStatusBefore(),
+				request.getStatusAfter()
+		);
+	}
+
+	/**
+	 * Enable batch mode of a type, see {@link #batchAsync(RestObject, int, int, OnResponseListener)}.
+	 *
+	 * @param dbType
+	 * 		The {@link RestObject#DBType()} to send in batch.
+	 * @param factory
+	 * 		The {@link BatchCallFactory} to the batch endpoint.
+	 * @param maxSize
+	 * 		Max count of items of one request.
+	 * @param maxWaitMs
+	 * 		Max time that the first item of a batch waits for others.
+	 */
+	public void setBatchMode( Class<? extends RealmObject> dbType, BatchCallFactory<?> factory, int maxSize, long maxWaitMs ) {
+		synchronized( mBatchers ) {
+			mBatchers.put(
+					dbType,
+					new RestBatcher(
+							this,
+							factory,
+							maxSize,
+							maxWaitMs
+					)
+			);
+		}
+	}
+
+	/**
+	 * @return {@code true} if batch mode of {@code dbType} has been enabled.
+	 */
+	public boolean isBatchMode( Class<? extends RealmObject> dbType ) {
+		synchronized( mBatchers ) {
+			return mBatchers.containsKey( dbType );
+		}
+	}
+
+	/**
+	 * Gather async requests that are submitted in a burst, i.e. a loop of {@link #execAsync(Call, RestObject)}:
+	 * <p/>
+	 * Their local status is written in one transaction, see {@link RestWriter#setWindow(long, int)}.
+	 * <p/>
+	 * Requests of types in batch mode, see {@link #setBatchMode(Class, BatchCallFactory, int, long)}, are sent in one
+	 * request instead of their own {@link Call}s, the size and wait of a network batch are those of the batch mode.
+	 *
+	 * @param windowMs
+	 * 		Max time that the first request of a burst waits for others, 0 to stop gathering.
+	 * @param maxItems
+	 * 		Count of requests that are written without waiting for the end of window.
+	 */
+	public void setMicroBatching( long windowMs, int maxItems ) {
+		RestWriter.getInstance()
+				  .setWindow(
+						  windowMs,
+						  maxItems
+				  );
+		mMicroBatching = windowMs > 0;
+	}
+
+	/**
+	 * Run a rest request async in batch mode, it is sent together with other items of same type and status in one
+	 * request by the {@link BatchCallFactory} of {@link #setBatchMode(Class, BatchCallFactory, int, long)}.
+	 *
+	 * @param requestObject
+	 * 		The request data to post on server.
+	 * @param statusBefore
+	 * 		The status of begin request.
+	 * @param statusAfter
+	 * 		The status of after request.
+	 * @param listener
+	 * 		The {@link OnResponseListener} for result, the request is not counted by {@link RestApiProgressEvent} when it is not
+	 * 		{@code null}.
+	 */
+	public <LD extends RestObject> void batchAsync( final LD requestObject, final int statusBefore, final int statusAfter,
+			@Nullable final OnResponseListener listener ) {
+		final RestBatcher batcher;
+		synchronized( mBatchers ) {
+			batcher = mBatchers.get( requestObject.DBType() );
+		}
+		if( batcher == null ) {
+			throw new IllegalStateException( "No batch mode of " + requestObject.DBType()
+																			 .getName() );
+		}
+		final String key = keyOf(
+				requestObject,
+				statusBefore
+		);
+		if( waitForRunning(
+				key,
+				requestObject,
+				statusBefore,
+				listener
+		) ) {
+			return;
+		}
+		if( !admit(
+				key,
+				requestObject,
+				statusBefore,
+				listener
+		) ) {
+			return;
+		}
+		journal(
+				requestObject,
+				statusBefore
+		);
+		writeThenDispatch(
+				key,
+				requestObject,
+				statusBefore,
+				listener,
+				new Runnable() {
+					@Override
+					public void run() {
+						batcher.add(
+								new RestBatcher.Item(
+										key,
+										requestObject,
+										statusAfter,
+										listener
+								),
+								statusBefore
+						);
+					}
+				}
+		);
+	}
+
+	/**
+	 * Send a batch of items, called by {@link RestBatcher}.
+	 */
+	void sendBatch( RestBatcher batcher, List<RestBatcher.Item> items, int statusBefore ) {
+		sendBatch(
+				batcher.getFactory(),
+				items,
+				statusBefore
+		);
+	}
+
+	private <SD extends RestObject> void sendBatch( final BatchCallFactory<SD> factory, final List<RestBatcher.Item> items,
+			final int statusBefore ) {
+		List<RestObject> requestObjects = new ArrayList<>( items.size() );
+		for( RestBatcher.Item item : items ) {
+			requestObjects.add( item.mRequestObject );
+		}
+		Call<List<SD>> call     = factory.create(
+				requestObjects,
+				statusBefore
+		);
+		final Endpoint endpoint = findEndpoint( call );
+		if( endpoint.mBreaker != null && !endpoint.mBreaker.allowRequest( call ) ) {
+			//ENDPOINT KEEPS FAILING, THE ITEMS STAY PENDING AND WAIT FOR IT.
+			block(
+					endpoint,
+					new Runnable() {
+						@Override
+						public void run() {
+							sendBatch(
+									factory,
+									items,
+									statusBefore
+							);
+						}
+					}
+			);
+			return;
+		}
+		//CALL API.
+		IdempotencyInterceptor.getInstance()
+							  .register(
+									  call,
+									  IdempotencyInterceptor.keyOf(
+											  requestObjects,
+											  statusBefore
+									  )
+							  );
+		call.enqueue( new Callback<List<SD>>() {
+			@Override
+			public void onResponse( Call<List<SD>> call, Response<List<SD>> response ) {
+				if( !response.isSuccessful() ) {
+					if( response.code() >= 500 ) {
+						if( endpoint.mBreaker != null ) {
+							endpoint.mBreaker.onFailure();
+						}
+					} else {
+						closeBreaker( endpoint );
+					}
+					for( RestBatcher.Item item : items ) {
+						PostResponse postResponse = new PostResponse(
+								item.mKey,
+								item.mRequestObject,
+								false,
+								true,
+								item.mListener
+						);
+						if( response.code() < 500 ) {
+							//The request was wrong, do not replay it, out of pending items.
+							acknowledge(
+									item.mRequestObject,
+									statusBefore
+							);
+							refuse(
+									item.mRequestObject,
+									postResponse
+							);
+						} else {
+							postResponse.onWritten();
+						}
+					}
+					return;
+				}
+				//-------------------------
+				//THE REQUEST IS SUCCESS.
+				//-------------------------
+				closeBreaker( endpoint );
+				Map<String, RestObject> serverData = new HashMap<>( items.size() );
+				List<SD>                body       = response.body();
+				if( body != null ) {
+					for( RestObject data : body ) {
+						serverData.put(
+								data.getReqId(),
+								data
+						);
+					}
+				}
+				for( RestBatcher.Item item : items ) {
+					RestObject data = serverData.get( item.mRequestObject.getReqId() );
+					if( data == null ) {
+						//NOT DONE BY SERVER, STAYS PENDING.
+						new PostResponse(
+								item.mKey,
+								item.mRequestObject,
+								false,
+								true,
+								item.mListener
+						).onWritten();
+						continue;
+					}
+					acknowledge(
+							item.mRequestObject,
+							statusBefore
+					);
+					//UPDATE LOCAL STATUS.
+					data.updateDBAsync(
+							item.mStatusAfter,
+							new PostResponse(
+									item.mKey,
+									item.mRequestObject,
+									true,
+									true,
+									item.mListener
+							)
+					);
+				}
+			}
+
+			@Override
+			public void onFailure( Call<List<SD>> call, Throwable t ) {
+				Log.d(
+						getClass().getSimpleName(),
+						"onFailure: " + t.toString()
+
+				);
+				if( endpoint.mBreaker != null ) {
+					if( call.isCanceled() ) {
+						endpoint.mBreaker.onCancelled( call );
+					} else {
+						endpoint.mBreaker.onFailure();
+					}
+				}
+				for( RestBatcher.Item item : items ) {
+					new PostResponse(
+							item.mKey,
+							item.mRequestObject,
+							false,
+							false,
+							item.mListener
+					).onWritten();
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Limit pending items of a type. Without a limit pending items grow without bound while offline. Pending items in
+	 * database are read once on the calling thread, call it off main thread, i.e. at start of app. A {@link
+	 * com.chopping.bus.OutboxBackpressureEvent} is posted when the outbox becomes full and when it has room again.
+	 *
+	 * @param prototype
+	 * 		A {@link RestObject} of the type, it converts database items.
+	 * @param maxPending
+	 * 		Max count of pending items of the type.
+	 * @param policy
+	 * 		The {@link OutboxPolicy} for operations on new items while the outbox is full.
+	 */
+	public void setOutboxLimit( RestObject prototype, int maxPending, OutboxPolicy policy ) {
+		Outbox outbox = new Outbox(
+				prototype.DBType(),
+				maxPending,
+				policy,
+				RestUtils.selectPendingRequests( prototype )
+		);
+		synchronized( mOutboxes ) {
+			mOutboxes.put(
+					prototype.DBType(),
+					outbox
+			);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the outbox of {@code dbType} has a limit and is full.
+	 */
+	public boolean isOutboxFull( Class<? extends RealmObject> dbType ) {
+		Outbox outbox = findOutbox( dbType );
+		return outbox != null && outbox.isFull();
+	}
+
+	private
+	@Nullable
+	Outbox findOutbox( Class<? extends RealmObject> dbType ) {
+		synchronized( mOutboxes ) {
+			return mOutboxes.get( dbType );
+		}
+	}
+
+	/**
+	 * Write {@link RestObject#REFUSED} of a request that server has refused, so that it is not pending anymore. After
+	 * the write it leaves the outbox and is reported, it stays counted when the write fails.
+	 */
+	private void refuse( final RestObject requestObject, final PostResponse response ) {
+		requestObject.updateDBAsync(
+				RestObject.REFUSED,
+				new RestWriter.OnWrittenListener() {
+					@Override
+					public void onWritten() {
+						settleOutbox(
+								requestObject,
+								true
+						);
+						response.onWritten();
+					}
+
+					@Override
+					public void onWriteFailed( List<RestObject> lost ) {
+						response.onWriteFailed( lost );
+					}
+				}
+		);
+	}
+
+	/**
+	 * A request has ended, tell the outbox of its type.
+	 *
+	 * @param done
+	 * 		{@code true} if server has done or refused the request, the item is not pending anymore.
+	 */
+	private void settleOutbox( RestObject requestObject, boolean done ) {
+		Outbox outbox = findOutbox( requestObject.DBType() );
+		if( outbox == null ) {
+			return;
+		}
+		if( done ) {
+			outbox.done( requestObject );
+		} else {
+			outbox.failed( requestObject );
+		}
+	}
+
+	/**
+	 * Apply the limit of outbox to a request that has become running.
+	 *
+	 * @return {@code true} if the request should be sent, otherwise it has been reported.
+	 */
+	private boolean admit( String key, RestObject requestObject, int statusBefore, @Nullable OnResponseListener listener ) {
+		Outbox outbox = findOutbox( requestObject.DBType() );
+		if( outbox == null ) {
+			return true;
+		}
+		Outbox.Admission admission = outbox.admit(
+				requestObject,
+				statusBefore
+		);
+		if( admission.mDropped != null ) {
+			//-------------------------
+			//OUTBOX IS FULL, THE OLDEST CREATE THAT HAS NEVER BEEN SENT IS REMOVED.
+			//-------------------------
+			acknowledge(
+					admission.mDropped.getObject(),
+					admission.mDropped.getStatusBefore()
+			);
+			admission.mDropped.getObject()
+							  .updateDBAsync( RestObject.DELETE_SYNCED );
+		}
+		if( admission.mSend ) {
+			return true;
+		}
+		PostResponse response = new PostResponse(
+				key,
+				requestObject,
+				false,
+				false,
+				listener
+		);
+		if( admission.mSave ) {
+			//-------------------------
+			//OUTBOX IS FULL, THE ITEM WAITS FOR NEXT SYNC.
+			//-------------------------
+			journal(
+					requestObject,
+					statusBefore
+			);
+			requestObject.updateDBAsync(
+					statusBefore,
+					response
+			);
+		} else {
+			//-------------------------
+			//OUTBOX IS FULL, THE ITEM IS REFUSED.
+			//-------------------------
+			post( response );
+		}
+		return false;
+	}
+
+	/**
+	 * Set an {@link OutboxJournal} that records all async requests until server has done them, {@code null} to stop
+	 * recording. The journal must have been opened.
+	 */
+	public void setJournal( @Nullable OutboxJournal journal ) {
+		mJournal = journal;
+	}
+
+	/**
+	 * @return The {@link OutboxJournal}, {@code null} if there's no one.
+	 */
+	public
+	@Nullable
+	OutboxJournal getJournal() {
+		return mJournal;
+	}
+
+	private void journal( RestObject requestObject, int statusBefore ) {
+		OutboxJournal journal = mJournal;
+		if( journal != null ) {
+			journal.append(
+					requestObject,
+					statusBefore
+			);
+		}
+	}
+
+	private void acknowledge( RestObject requestObject, int statusBefore ) {
+		OutboxJournal journal = mJournal;
+		if( journal != null ) {
+			journal.acknowledge(
+					requestObject,
+					statusBefore
+			);
+		}
+	}
+
+	/**
+	 * @return Key of a request, same request-data(same request-time) with same status is same request.
+	 */
+	private static String keyOf( RestObject requestObject, int statusBefore ) {
+		return requestObject.DBType()
+							.getName() + "#" + requestObject.getReqId() + "#" + requestObject.getReqTime() + "#" + statusBefore;
+	}
+
+	/**
+	 * Let a request wait for same running request, otherwise it becomes running.
+	 *
+	 * @return {@code true} if same request is running, {@code listener} will get its result.
+	 */
+	private boolean waitForRunning( String key, RestObject requestObject, int statusBefore, @Nullable OnResponseListener listener ) {
+		if( listener == null ) {
+			mProgress.onStarted();
+		}
+		synchronized( mInFlight ) {
+			Running running = mInFlight.get( key );
+			if( running != null ) {
+				//-------------------------
+				//SAME REQUEST IS RUNNING, WAIT FOR IT.
+				//-------------------------
+				running.mDuplicates.add( listener );
+				RestStats.addSuppressedDuplicates( 1 );
+				return true;
+			}
+			running = new Running( listener );
+			if( statusBefore == RestObject.NOT_SYNCED ) {
+				//Later updates and deletes are not folded into the create until it ends.
+				running.mCreate = requestObject;
+				PendingCoalescer.onDispatched( requestObject );
+			}
+			mInFlight.put(
+					key,
+					running
+			);
+			return false;
+		}
+	}
+
+	/**
+	 * Remove a request from running requests.
+	 *
+	 * @return The {@link Running} request, {@code null} if it is not running.
+	 */
+	private
+	@Nullable
+	Running removeInFlight( @Nullable String key ) {
+		if( key == null ) {
+			return null;
+		}
+		Running running;
+		synchronized( mInFlight ) {
+			running = mInFlight.remove( key );
+		}
+		if( running != null && running.mCreate != null ) {
+			PendingCoalescer.onSettled( running.mCreate );
+		}
+		return running;
+	}
+
+	/**
+	 * Report result of a request after local status has been written, so that subscribers see the new data. Without
+	 * {@link OnResponseListener} the result goes to {@link RestProgress}. Duplicated requests that have waited for the
+	 * request get same result.
+	 */
+	private final class PostResponse implements RestWriter.OnWrittenListener, Runnable {
+		private final String             mKey;
+		private final RestObject         mRequestObject;
+		private final boolean            mSuccess;
+		private final boolean            mAnswered;
+		private final OnResponseListener mListener;
+		/**
+		 * Time when a request without key has been submitted.
+		 */
+		private final long               mStartedAt;
+
+		private PostResponse( @Nullable String key, @Nullable RestObject requestObject, boolean success, boolean answered,
+				@Nullable OnResponseListener listener ) {
+			this(
+					key,
+					requestObject,
+					success,
+					answered,
+					listener,
+					SystemClock.elapsedRealtime()
+			);
+		}
+
+		private PostResponse( @Nullable String key, @Nullable RestObject requestObject, boolean success, boolean answered,
+				@Nullable OnResponseListener listener, long startedAt ) {
+			mKey = key;
+			mRequestObject = requestObject;
+			mSuccess = success;
+			mAnswered = answered;
+			mListener = listener;
+			mStartedAt = startedAt;
+		}
+
+		@Override
+		public void run() {
+			onWritten();
+		}
+
+		@Override
+		public void onWritten() {
+			deliver(
+					mSuccess,
+					mAnswered
+			);
+		}
+
+		/**
+		 * Server has done the request but its data could not be stored, it is reported as failed.
+		 */
+		@Override
+		public void onWriteFailed( List<RestObject> lost ) {
+			deliver(
+					false,
+					false
+			);
+		}
+
+		private void deliver( boolean success, boolean answered ) {
+			if( mRequestObject != null ) {
+				settleOutbox(
+						mRequestObject,
+						success
+				);
+			}
+			Running running   = removeInFlight( mKey );
+			long    latencyMs = SystemClock.elapsedRealtime() - ( running == null ? mStartedAt : running.mStartedAt );
+			if( running == null || !running.mDetached ) {
+				report(
+						mListener,
+						success,
+						answered,
+						latencyMs
+				);
+			}
+			if( running != null ) {
+				for( OnResponseListener duplicate : running.mDuplicates ) {
+					report(
+							duplicate,
+							success,
+							answered,
+							latencyMs
+					);
+				}
+			}
+		}
+
+		private void report( @Nullable OnResponseListener listener, boolean success, boolean answered, long latencyMs ) {
+			if( listener != null ) {
+				listener.onResponse(
+						mRequestObject,
+						success
+				);
+				return;
+			}
+			mProgress.onDone(
+					success,
+					latencyMs
+			);
+			if( mPerItemEvents ) {
+				//The event has always reported an answered request as success, the listener gets the real result.
+				EventBus.getDefault()
+						.post( new RestApiResponseEvent( success || answered ) );
+			}
+		}
+	}
 }
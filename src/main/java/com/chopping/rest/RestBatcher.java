@@ -0,0 +1,139 @@
+package com.chopping.rest;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.v4.util.SimpleArrayMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects batch requests of one {@link RestObject#DBType()} until {@code maxSize} items or {@code maxWaitMs} have been
+ * reached, then they are sent by {@link RestApiManager} in one request.
+ *
+ * @author Xinyue Zhao
+ */
+final class RestBatcher {
+	/**
+	 * An item of batch.
+	 */
+	static final class Item {
+		final String                            mKey;
+		final RestObject                        mRequestObject;
+		final int                               mStatusAfter;
+		final RestApiManager.OnResponseListener mListener;
+
+		Item( String key, RestObject requestObject, int statusAfter, @Nullable RestApiManager.OnResponseListener listener ) {
+			mKey = key;
+			mRequestObject = requestObject;
+			mStatusAfter = statusAfter;
+			mListener = listener;
+		}
+	}
+
+	private final RestApiManager                     mManager;
+	private final BatchCallFactory<?>                mFactory;
+	private final int                                mMaxSize;
+	private final long                               mMaxWaitMs;
+	private final Handler                            mHandler = new Handler( Looper.getMainLooper() );
+	/**
+	 * Collected items associated with their status before sync, guarded by itself.
+	 */
+	private final SimpleArrayMap<Integer, List<Item>> mBuffers = new SimpleArrayMap<>();
+	/**
+	 * Delayed flushes associated with status before sync, one per status so that a stale one can be removed, guarded by
+	 * {@link #mBuffers}.
+	 */
+	private final SimpleArrayMap<Integer, Runnable>   mFlushes = new SimpleArrayMap<>();
+
+	RestBatcher( RestApiManager manager, BatchCallFactory<?> factory, int maxSize, long maxWaitMs ) {
+		if( maxSize <= 0 ) {
+			throw new IllegalArgumentException( "maxSize must be positive: " + maxSize );
+		}
+		mManager = manager;
+		mFactory = factory;
+		mMaxSize = maxSize;
+		mMaxWaitMs = maxWaitMs;
+	}
+
+	BatchCallFactory<?> getFactory() {
+		return mFactory;
+	}
+
+	/**
+	 * Collect an item, the batch is sent when it is full or {@code maxWaitMs} later.
+	 */
+	void add( Item item, final int statusBefore ) {
+		List<Item> full = null;
+		synchronized( mBuffers ) {
+			List<Item> buffer = mBuffers.get( statusBefore );
+			if( buffer == null ) {
+				buffer = new ArrayList<>( mMaxSize );
+				mBuffers.put(
+						statusBefore,
+						buffer
+				);
+			}
+			buffer.add( item );
+			if( buffer.size() >= mMaxSize ) {
+				full = buffer;
+				mBuffers.remove( statusBefore );
+				//The delayed flush of the sent batch must not cut the next one short.
+				mHandler.removeCallbacks( flushOf( statusBefore ) );
+			} else if( buffer.size() == 1 ) {
+				Runnable flush = flushOf( statusBefore );
+				mHandler.removeCallbacks( flush );
+				mHandler.postDelayed(
+						flush,
+						mMaxWaitMs
+				);
+			}
+		}
+		if( full != null ) {
+			mManager.sendBatch(
+					this,
+					full,
+					statusBefore
+			);
+		}
+	}
+
+	/**
+	 * @return The delayed flush of {@code statusBefore}, call it under lock of {@link #mBuffers}.
+	 */
+	private Runnable flushOf( final int statusBefore ) {
+		Runnable flush = mFlushes.get( statusBefore );
+		if( flush == null ) {
+			flush = new Runnable() {
+				@Override
+				public void run() {
+					flush( statusBefore );
+				}
+			};
+			mFlushes.put(
+					statusBefore,
+					flush
+			);
+		}
+		return flush;
+	}
+
+	/**
+	 * Send collected items of {@code statusBefore} now.
+	 */
+	void flush( int statusBefore ) {
+		List<Item> buffer;
+		synchronized( mBuffers ) {
+			buffer = mBuffers.remove( statusBefore );
+			mHandler.removeCallbacks( flushOf( statusBefore ) );
+		}
+		if( buffer != null && !buffer.isEmpty() ) {
+			mManager.sendBatch(
+					this,
+					buffer,
+					statusBefore
+			);
+		}
+	}
+}
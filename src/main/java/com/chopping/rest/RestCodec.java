@@ -0,0 +1,16 @@
+package com.chopping.rest;
+
+import java.io.IOException;
+
+/**
+ * Compact binary codec of a {@link RestObject}, it replaces {@link java.io.Serializable} when the object is
+ * persisted, see {@link RestObject#codec()} and {@link RestCodecs}.
+ *
+ * @param <T>
+ * 		Type of {@link RestObject}.
+ */
+public interface RestCodec<T extends RestObject> {
+	void encode( T object, CompactWriter out ) throws IOException;
+
+	T decode( CompactReader in ) throws IOException;
+}
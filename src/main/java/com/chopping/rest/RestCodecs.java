@@ -0,0 +1,115 @@
+package com.chopping.rest;
+
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encodes {@link RestObject}s with their {@link RestCodec}, objects without codec fall back to {@link
+ * java.io.Serializable}.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RestCodecs {
+	private static final byte SERIALIZABLE = 0;
+	private static final byte CODEC        = 1;
+
+	/**
+	 * Codecs associated with class names, {@code null} for classes without codec, guarded by itself.
+	 */
+	private static final Map<String, RestCodec<?>> sCodecs = new HashMap<>();
+
+	private RestCodecs() {
+	}
+
+	/**
+	 * Encode an object.
+	 *
+	 * @param object
+	 * 		The {@link RestObject}.
+	 *
+	 * @return Bytes that can be decoded by {@link #decode(String, byte[])} with class name of {@code object}.
+	 */
+	public static byte[] encode( RestObject object ) throws IOException {
+		RestCodec<RestObject> codec = object.getCodec();
+		if( codec != null ) {
+			CompactWriter out = new CompactWriter();
+			out.writeVarLong( CODEC );
+			codec.encode(
+					object,
+					out
+			);
+			return out.toByteArray();
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write( SERIALIZABLE );
+		ObjectOutputStream out = new ObjectOutputStream( bytes );
+		out.writeObject( object );
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode an object.
+	 *
+	 * @param className
+	 * 		Class name of the {@link RestObject}, its codec is found by an instance of its public no-arg constructor.
+	 * @param bytes
+	 * 		Bytes of {@link #encode(RestObject)}.
+	 *
+	 * @return The decoded {@link RestObject}.
+	 */
+	public static RestObject decode( String className, byte[] bytes ) throws IOException, ClassNotFoundException {
+		if( bytes.length == 0 ) {
+			throw new IOException( "No data." );
+		}
+		if( bytes[ 0 ] == CODEC ) {
+			RestCodec<?> codec = findCodec( className );
+			if( codec == null ) {
+				throw new IOException( "No codec of " + className );
+			}
+			return codec.decode( new CompactReader(
+					bytes,
+					1
+			) );
+		}
+		ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream(
+				bytes,
+				1,
+				bytes.length - 1
+		) );
+		try {
+			return (RestObject) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static
+	@Nullable
+	RestCodec<?> findCodec( String className ) throws ClassNotFoundException {
+		synchronized( sCodecs ) {
+			if( sCodecs.containsKey( className ) ) {
+				return sCodecs.get( className );
+			}
+			RestCodec<?> codec;
+			try {
+				codec = ( (RestObject) Class.forName( className )
+											.newInstance() ).getCodec();
+			} catch( InstantiationException | IllegalAccessException e ) {
+				codec = null;
+			}
+			sCodecs.put(
+					className,
+					codec
+			);
+			return codec;
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package com.chopping.rest;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.util.ArrayMap;
 import android.support.v4.util.SimpleArrayMap;
 import android.text.TextUtils;
@@ -17,6 +19,10 @@ import com.firebase.client.Firebase.AuthResultHandler;
 import com.firebase.client.FirebaseError;
 import com.firebase.client.Query;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import de.greenrobot.event.EventBus;
 
 /**
@@ -45,6 +51,29 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 	 * Collection of Firebase keys associated with request-id.
 	 */
 	private SimpleArrayMap<String, String> mKeyList = new ArrayMap<>();
+	/**
+	 * Server data from {@link #onChildAdded(DataSnapshot, String)} that waits to be saved in one transaction.
+	 * Firebase delivers a whole initial page of children in one burst, saving them one by one costs a commit per
+	 * child.
+	 */
+	private final List<RestObject> mAddedData = new ArrayList<>();
+	/**
+	 * Data of {@link #mAddedData} that have been loaded from server, only they advance the {@link SyncCursor}.
+	 */
+	private final List<RestObject> mAddedLoaded = new ArrayList<>();
+	/**
+	 * "reqTime" of data saved by this client associated with request-id, guarded by itself. Firebase reports own
+	 * saves by {@link #onChildAdded(DataSnapshot, String)} at once, they are stamped with the clock of this client and
+	 * must not move the {@link SyncCursor}.
+	 */
+	private final SimpleArrayMap<String, Long> mOwnData = new SimpleArrayMap<>();
+	private final Handler          mHandler   = new Handler( Looper.getMainLooper() );
+	private final Runnable         mFlushAdded = new Runnable() {
+		@Override
+		public void run() {
+			flushAdded();
+		}
+	};
 
 
 	/**
@@ -120,6 +149,29 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 	public void onDestroy() {
 		mQuery.removeEventListener( this );
 		mAddedListener = false;
+		flushAdded();
+	}
+
+	/**
+	 * Save all buffered data of {@link #onChildAdded(DataSnapshot, String)} in one transaction.
+	 */
+	private void flushAdded() {
+		mHandler.removeCallbacks( mFlushAdded );
+		if( mAddedData.isEmpty() ) {
+			return;
+		}
+		List<RestObject> added  = new ArrayList<>( mAddedData );
+		List<RestObject> loaded = new ArrayList<>( mAddedLoaded );
+		mAddedData.clear();
+		mAddedLoaded.clear();
+		RestObject.updateDBAsync(
+				added,
+				RestObject.SYNCED,
+				SyncCursor.afterWritten(
+						loaded,
+						null
+				)
+		);
 	}
 
 
@@ -165,7 +217,13 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 	 */
 	public void saveInBackground( RestObject newData ) {
 		mRespType = newData.getClass();
-		newData.updateDB( RestObject.NOT_SYNCED );
+		newData.updateDBAsync( RestObject.NOT_SYNCED );
+		synchronized( mOwnData ) {
+			mOwnData.put(
+					newData.getReqId(),
+					newData.getReqTime()
+			);
+		}
 		mFirebase.child( newData.getReqId() )
 				 .setValue( newData );
 		mFirebase.push();
@@ -194,7 +252,7 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 	 */
 	public void deleteInBackground( RestObject data ) {
 		mRespType = data.getClass();
-		data.updateDB( RestObject.DELETE );
+		data.updateDBAsync( RestObject.DELETE );
 		mFirebase.child( data.getReqId() )
 				 .removeValue();
 	}
@@ -215,16 +273,23 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 	}
 
 	/**
-	 * Change data on Firebase in background, call this in thread.
+	 * Change data on Firebase in background, call this in thread. Only the fields that have been marked by {@link
+	 * RestObject#markDirty(String)} are sent when any has been marked, see {@link RestPatch}.
 	 *
 	 * @param data
 	 * 		{@link RestObject} to change on Firebase.
 	 */
 	public void updateInBackground( RestObject data ) {
 		mRespType = data.getClass();
-		data.updateDB( RestObject.UPDATE );
-		mFirebase.child( data.getReqId() )
-				 .setValue( data );
+		data.updateDBAsync( RestObject.UPDATE );
+		Map<String, Object> children = RestPatch.childrenPatch( data );
+		if( children == null ) {
+			mFirebase.child( data.getReqId() )
+					 .setValue( data );
+		} else {
+			mFirebase.child( data.getReqId() )
+					 .updateChildren( children );
+		}
 	}
 
 
@@ -245,6 +310,26 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 	}
 
 
+	/**
+	 * Get data from Firebase of type of {@code prototype} that are newer than the local {@link SyncCursor}, data that
+	 * have been synced before are not downloaded again. Without synced data it gets all data.
+	 *
+	 * @param prototype
+	 * 		A {@link RestObject} of server data type.
+	 */
+	public void selectChanged( RestObject prototype ) {
+		mRespType = prototype.getClass();
+		if( mAddedListener ) {
+			mQuery.removeEventListener( this );
+			mAddedListener = false;
+		}
+		long watermark = SyncCursor.getWatermark( prototype.DBType() );
+		mQuery = mFirebase.orderByChild( "reqTime" )
+						  .startAt( watermark );
+		mQuery.addChildEventListener( this );
+		mAddedListener = true;
+	}
+
 	/**
 	 * Get all data from {@code fromObject}.
 	 *
@@ -280,11 +365,45 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 		);
 	}
 
+	/**
+	 * Do pending request page by page on a background thread.
+	 *
+	 * @param exp
+	 * 		{@link ExecutePendingPaged} to execute pending.
+	 * @param statusBefore
+	 * 		Status of sync.
+	 */
+	public void executePending( ExecutePendingPaged exp, int statusBefore ) {
+		RestUtils.executePendingPaged(
+				exp,
+				statusBefore
+		);
+	}
+
+	/**
+	 * Forget a save of this client that Firebase has reported.
+	 *
+	 * @return {@code true} if {@code serverData} is the data that this client has saved, not loaded from server.
+	 */
+	private boolean removeOwnData( RestObject serverData ) {
+		Long reqTime;
+		synchronized( mOwnData ) {
+			reqTime = mOwnData.remove( serverData.getReqId() );
+		}
+		return reqTime != null && reqTime == serverData.getReqTime();
+	}
+
 	//[ChildEventListener]
 	@Override
 	public void onChildAdded( DataSnapshot dataSnapshot, String s ) {
 		RestObject serverData = dataSnapshot.getValue( mRespType );
-		serverData.updateDB( RestObject.SYNCED );
+		mAddedData.add( serverData );
+		if( !removeOwnData( serverData ) ) {
+			mAddedLoaded.add( serverData );
+		}
+		if( mAddedData.size() == 1 ) {
+			mHandler.post( mFlushAdded );
+		}
 		if( !TextUtils.isEmpty( dataSnapshot.getKey() ) ) {
 			mKeyList.put(
 					serverData.getReqId(),
@@ -306,7 +425,9 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 		RestObject serverData = dataSnapshot.getValue( mRespType );
 		String     reqId      = serverData.getReqId();
 		String      key = dataSnapshot.getKey();
-		serverData.updateDB( RestObject.DELETE_SYNCED );
+		flushAdded();
+		removeOwnData( serverData );
+		serverData.updateDBAsync( RestObject.DELETE_SYNCED );
 		if( !TextUtils.isEmpty( dataSnapshot.getKey() ) ) {
 			mKeyList.remove( reqId );
 			Log.i(
@@ -323,7 +444,9 @@ public class RestFireManager implements AuthResultHandler, ChildEventListener {
 	@Override
 	public void onChildChanged( DataSnapshot dataSnapshot, String s ) {
 		RestObject serverData = dataSnapshot.getValue( mRespType );
-		serverData.updateDB( RestObject.UPDATE_SYNCED );
+		flushAdded();
+		removeOwnData( serverData );
+		serverData.updateDBAsync( RestObject.UPDATE_SYNCED );
 		if( !TextUtils.isEmpty( dataSnapshot.getKey() ) ) {
 			mKeyList.put(
 					serverData.getReqId(),
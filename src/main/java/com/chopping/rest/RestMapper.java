@@ -0,0 +1,33 @@
+package com.chopping.rest;
+
+import io.realm.RealmObject;
+
+/**
+ * Maps between a {@link RestObject} and its {@link RestObject#DBType()} without reflection.
+ * <p/>
+ * Mappers are generated by the processor of module "compiler" for classes annotated with {@link RestMapping}, see
+ * {@link RestObject#mapper()}.
+ *
+ * @param <R>
+ * 		Type of {@link RestObject}.
+ * @param <D>
+ * 		Type of database item.
+ */
+public interface RestMapper<R extends RestObject, D extends RealmObject> {
+	/**
+	 * @return A new unmanaged database item.
+	 */
+	D newDBItem();
+
+	/**
+	 * Copy all fields of {@code restObject} into {@code dbItem}, including "reqId", "reqTime" and the {@code status}.
+	 *
+	 * @return {@code dbItem}.
+	 */
+	D toDB( R restObject, D dbItem, int status );
+
+	/**
+	 * @return A new {@link RestObject} with fields of {@code dbItem}.
+	 */
+	R fromDB( D dbItem );
+}
@@ -0,0 +1,24 @@
+package com.chopping.rest;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import io.realm.RealmObject;
+
+/**
+ * Generate a {@link RestMapper} for the annotated {@link RestObject}, named as the class with suffix "_RestMapper" in
+ * same package.
+ * <p/>
+ * Properties are mapped by getters and setters of same name and type, the database item must have {@code
+ * setStatus(int)}.
+ */
+@Retention( RetentionPolicy.CLASS )
+@Target( ElementType.TYPE )
+public @interface RestMapping {
+	/**
+	 * @return The {@link RestObject#DBType()}.
+	 */
+	Class<? extends RealmObject> dbType();
+}
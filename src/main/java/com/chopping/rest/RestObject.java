@@ -4,6 +4,10 @@ package com.chopping.rest;
 import android.support.annotation.Nullable;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 import io.realm.Realm;
 import io.realm.RealmObject;
@@ -15,6 +19,14 @@ public abstract class RestObject implements Serializable {
 	public static final int DELETE_SYNCED  = 3;
 	public static final int UPDATE         = 4;
 	public static final int UPDATE_SYNCED = 5;
+	//Refused by server(4xx), it is never sent again.
+	public static final int REFUSED        = 6;
+
+
+	//Json keys of fields that have been changed since last update, it is not persisted, see RestPatch.
+	private transient Set<String> mDirtyFields;
+	//True if the last write of this object has been folded into a created item, see PendingCoalescer.
+	private transient volatile boolean mFolded;
 
 
 	//Request ID --> must be "reqId" for json/gson/jackson.
@@ -24,17 +36,169 @@ public abstract class RestObject implements Serializable {
 	public abstract long getReqTime();
 
 
+	//Mark a field(its json key) changed, an update sends only changed fields when any field has been marked.
+	public synchronized void markDirty( String field ) {
+		if( mDirtyFields == null ) {
+			mDirtyFields = new HashSet<>();
+		}
+		mDirtyFields.add( field );
+	}
+
+	//Json keys of fields that have been changed since last update, empty when the object is not tracked.
+	public synchronized Set<String> dirtyFields() {
+		return mDirtyFields == null ? Collections.<String>emptySet() : new HashSet<>( mDirtyFields );
+	}
+
+	//Forget changed fields, the next update sends the whole object unless fields are marked again.
+	public synchronized void clearDirty() {
+		mDirtyFields = null;
+	}
+
+	//Json keys of fields that have been changed since last update and forget them at once, a field that is marked meanwhile is not lost.
+	public synchronized Set<String> takeDirtyFields() {
+		Set<String> fields = mDirtyFields;
+		mDirtyFields = null;
+		return fields == null ? new HashSet<String>() : fields;
+	}
+
+
 	//Update database when this object changed.
 	public void updateDB( int status ) {
 		Realm db = Realm.getDefaultInstance();
 		db.beginTransaction();
+		try {
+			if( writeToDB(
+					db,
+					status
+			) ) {
+				db.commitTransaction();
+			} else {
+				db.cancelTransaction();
+			}
+		} catch( RuntimeException e ) {
+			if( db.isInTransaction() ) {
+				db.cancelTransaction();
+			}
+			throw e;
+		} finally {
+			if( !db.isClosed() ) {
+				db.close();
+			}
+		}
+	}
+
+	//Update database for a bulk of objects, all of them are written in one transaction.
+	public static void updateDB( Collection<? extends RestObject> objects, int status ) {
+		if( objects == null || objects.isEmpty() ) {
+			return;
+		}
+		Realm db = Realm.getDefaultInstance();
+		db.beginTransaction();
+		try {
+			boolean written = false;
+			for( RestObject object : objects ) {
+				written |= object.writeToDB(
+						db,
+						status
+				);
+			}
+			if( written ) {
+				db.commitTransaction();
+			} else {
+				db.cancelTransaction();
+			}
+		} catch( RuntimeException e ) {
+			if( db.isInTransaction() ) {
+				db.cancelTransaction();
+			}
+			throw e;
+		} finally {
+			if( !db.isClosed() ) {
+				db.close();
+			}
+		}
+	}
+
+	//Update database when this object changed, the write is queued on the single writer thread, see RestWriter.
+	public void updateDBAsync( int status ) {
+		updateDBAsync(
+				status,
+				null
+		);
+	}
+
+	//Update database when this object changed, the listener is called on main thread after write.
+	public void updateDBAsync( int status, @Nullable RestWriter.OnWrittenListener listener ) {
+		RestWriter.getInstance()
+				  .write(
+						  this,
+						  status,
+						  listener
+				  );
+	}
+
+	//Update database for a bulk of objects on the single writer thread, all of them are written in one transaction.
+	public static void updateDBAsync( Collection<? extends RestObject> objects, int status, @Nullable RestWriter.OnWrittenListener listener ) {
+		RestWriter.getInstance()
+				  .write(
+						  objects,
+						  status,
+						  listener
+				  );
+	}
+
+	//Write this object into an opened transaction of database, return false when nothing has been written.
+	//An update or delete of an item that has never been synced and is not being sent is folded into it, see PendingCoalescer.
+	public boolean writeToDB( Realm db, int status ) {
+		int folded = status;
+		if( ( status == UPDATE || status == DELETE ) && !PendingCoalescer.isDispatched( this ) ) {
+			folded = PendingCoalescer.fold(
+					db.where( DBType() )
+					  .equalTo(
+							  "reqId",
+							  getReqId()
+					  )
+					  .equalTo(
+							  "status",
+							  NOT_SYNCED
+					  )
+					  .count() > 0,
+					status
+			);
+		}
+		mFolded = folded != status;
+		status = folded;
+		RestMapper<RestObject, RealmObject> mapper = getMapper();
+		if( mapper != null ) {
+			switch( status ) {
+				case DELETE_SYNCED:
+					RealmObject stored = db.where( DBType() )
+										   .equalTo(
+												   "reqId",
+												   getReqId()
+										   )
+										   .findFirst();
+					if( stored == null ) {
+						return false;
+					}
+					stored.removeFromRealm();
+					break;
+				default:
+					db.copyToRealmOrUpdate( mapper.toDB(
+							this,
+							mapper.newDBItem(),
+							status
+					) );
+					break;
+			}
+			return true;
+		}
 		RealmObject[] instances = newInstances(
 				db,
 				status
 		);
-		if(instances == null) {
-			db.cancelTransaction();
-			return;
+		if( instances == null ) {
+			return false;
 		}
 		for( RealmObject instance : instances ) {
 			switch( status ) {
@@ -46,22 +210,60 @@ public abstract class RestObject implements Serializable {
 					break;
 			}
 		}
-		db.commitTransaction();
-		if( !db.isClosed() ) {
-			db.close();
-		}
+		return true;
+	}
+
+	//True if the last write of this object has been folded into a created item, its request needn't be sent.
+	boolean isFolded() {
+		return mFolded;
+	}
+
+	//Generated mapper of a class annotated with RestMapping, when it is provided newInstances() and newFromDB() need no override.
+	protected
+	@Nullable
+	RestMapper<? extends RestObject, ? extends RealmObject> mapper() {
+		return null;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	final
+	@Nullable
+	RestMapper<RestObject, RealmObject> getMapper() {
+		return (RestMapper<RestObject, RealmObject>) mapper();
+	}
+
+	//Compact binary codec that replaces java serialization when this object is persisted, see RestCodecs.
+	protected
+	@Nullable
+	RestCodec<? extends RestObject> codec() {
+		return null;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	final
+	@Nullable
+	RestCodec<RestObject> getCodec() {
+		return (RestCodec<RestObject>) codec();
 	}
 
-	//Create database items that will be updated into database.
-	protected abstract
+	//Create database items that will be updated into database, by default the item of generated mapper.
+	protected
 	@Nullable
-	RealmObject[] newInstances( Realm db, int status );
+	RealmObject[] newInstances( Realm db, int status ) {
+		RestMapper<RestObject, RealmObject> mapper = getMapper();
+		return mapper == null ? null : new RealmObject[] { mapper.toDB(
+				this,
+				mapper.newDBItem(),
+				status
+		) };
+	}
 
 	public abstract Class<? extends RealmObject> DBType();
 
 	public
 	@Nullable
 	RestObject newFromDB( RealmObject dbItem ) {
-		return null;
+		RestMapper<RestObject, RealmObject> mapper = getMapper();
+		return mapper == null ? null : mapper.fromDB( dbItem );
 	}
 }
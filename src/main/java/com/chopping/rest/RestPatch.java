@@ -0,0 +1,232 @@
+package com.chopping.rest;
+
+import android.support.annotation.Nullable;
+
+import com.chopping.application.LL;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.annotations.SerializedName;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Partial updates of {@link RestObject}s whose fields have been marked by {@link RestObject#markDirty(String)}.
+ * <p/>
+ * A patch contains the changed fields and always "reqId" and "reqTime". Building a patch consumes the changed fields
+ * of the object. An object without changed fields, i.e. one that has been loaded from database for a pending update,
+ * is sent as a whole.
+ * <p/>
+ * Fields are marked by their keys of {@link Gson}. Firebase names values by getters instead, a patch of {@link
+ * #childrenPatch(RestObject)} maps the keys to names of getters.
+ * <p/>
+ * Bytes that patches save are counted by {@link RestStats#getPatchBytesSaved()}, measured as json of {@link Gson} for
+ * Retrofit and Firebase alike.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RestPatch {
+	private static final String  REQ_ID   = "reqId";
+	private static final String  REQ_TIME = "reqTime";
+	private static final Charset UTF_8    = Charset.forName( "UTF-8" );
+
+	private static Gson sGson = new Gson();
+	/**
+	 * Getters of classes associated with names of property, guarded by itself.
+	 */
+	private static final Map<Class<?>, Map<String, Method>> sGetters = new HashMap<>();
+
+	private RestPatch() {
+	}
+
+	/**
+	 * Set the {@link Gson} that is used by the converter of Retrofit, so that patches have the same keys as whole
+	 * objects.
+	 */
+	public static void setGson( Gson gson ) {
+		sGson = gson;
+	}
+
+	/**
+	 * Body of an update for Retrofit, i.e. {@code @PATCH Call<SD> update(@Body JsonElement body)}.
+	 *
+	 * @param object
+	 * 		The {@link RestObject} to update.
+	 *
+	 * @return A json merge patch(RFC 7396) with changed fields, changed fields that are {@code null} are json-null, they
+	 * are only sent by a converter whose {@link Gson} serializes nulls. The whole object when no field has been marked.
+	 */
+	public static JsonElement mergePatch( RestObject object ) {
+		JsonObject patch = patchOf( object );
+		return patch == null ? sGson.toJsonTree( object ) : patch;
+	}
+
+	/**
+	 * Values of an update for {@link com.firebase.client.Firebase#updateChildren(Map)}.
+	 *
+	 * @param object
+	 * 		The {@link RestObject} to update.
+	 *
+	 * @return Values of changed fields associated with names of their getters, {@code null} when no field has been
+	 * marked.
+	 */
+	public static
+	@Nullable
+	Map<String, Object> childrenPatch( RestObject object ) {
+		Set<String> fields = object.takeDirtyFields();
+		if( fields.isEmpty() ) {
+			return null;
+		}
+		fields.add( REQ_ID );
+		fields.add( REQ_TIME );
+		long                wholeBytes = sizeOf( sGson.toJson( object ) );
+		Map<String, Method> getters    = gettersOf( object.getClass() );
+		Map<String, Object> children   = new HashMap<>();
+		for( String field : fields ) {
+			String name   = propertyOf(
+					object.getClass(),
+					field,
+					getters
+			);
+			Method getter = getters.get( name );
+			if( getter == null ) {
+				LL.w( "RestPatch: no getter of " + field + " in " + object.getClass()
+																		 .getName() );
+				continue;
+			}
+			try {
+				//Firebase serializes the value, null removes the child.
+				children.put(
+						name,
+						getter.invoke( object )
+				);
+			} catch( IllegalAccessException | InvocationTargetException e ) {
+				LL.w( "RestPatch: " + e.toString() );
+			}
+		}
+		RestStats.addPatchBytesSaved( wholeBytes - sizeOf( sGson.toJson( children ) ) );
+		return children;
+	}
+
+	private static
+	@Nullable
+	JsonObject patchOf( RestObject object ) {
+		Set<String> fields = object.takeDirtyFields();
+		if( fields.isEmpty() ) {
+			return null;
+		}
+		//SERIALIZED ONCE, THE SAME JSON GIVES THE VALUES AND THE SIZE OF THE WHOLE OBJECT.
+		String      json  = sGson.toJson( object );
+		JsonElement whole = new JsonParser().parse( json );
+		if( !whole.isJsonObject() ) {
+			return null;
+		}
+		JsonObject full  = whole.getAsJsonObject();
+		JsonObject patch = new JsonObject();
+		fields.add( REQ_ID );
+		fields.add( REQ_TIME );
+		for( String field : fields ) {
+			JsonElement value = full.get( field );
+			if( value != null ) {
+				patch.add(
+						field,
+						value
+				);
+			} else if( !REQ_ID.equals( field ) && !REQ_TIME.equals( field ) ) {
+				//REMOVED OR NULL VALUE.
+				patch.add(
+						field,
+						JsonNull.INSTANCE
+				);
+			}
+		}
+		RestStats.addPatchBytesSaved( sizeOf( json ) - sizeOf( sGson.toJson( patch ) ) );
+		return patch;
+	}
+
+	/**
+	 * @return Name of the property of Firebase for a key of {@link Gson}, the key itself if there's no other.
+	 */
+	private static String propertyOf( Class<?> type, String key, Map<String, Method> getters ) {
+		if( getters.containsKey( key ) ) {
+			return key;
+		}
+		for( Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass() ) {
+			for( Field field : c.getDeclaredFields() ) {
+				SerializedName serializedName = field.getAnnotation( SerializedName.class );
+				String         gsonName       = serializedName != null ? serializedName.value() : sGson.fieldNamingStrategy()
+																								   .translateName( field );
+				if( !key.equals( gsonName ) ) {
+					continue;
+				}
+				String name = field.getName();
+				if( name.length() > 1 && name.charAt( 0 ) == 'm' && Character.isUpperCase( name.charAt( 1 ) ) ) {
+					//mName of the code style.
+					name = name.substring( 1 );
+				}
+				name = decapitalize( name );
+				return getters.containsKey( name ) ? name : key;
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * @return Getters of {@code type} associated with their names of property, i.e. "name" of getName() and isName().
+	 */
+	private static Map<String, Method> gettersOf( Class<?> type ) {
+		synchronized( sGetters ) {
+			Map<String, Method> getters = sGetters.get( type );
+			if( getters != null ) {
+				return getters;
+			}
+			getters = new HashMap<>();
+			for( Method method : type.getMethods() ) {
+				if( Modifier.isStatic( method.getModifiers() ) || method.getParameterTypes().length != 0 || method.getDeclaringClass() == Object.class ) {
+					continue;
+				}
+				String name = method.getName();
+				if( name.startsWith( "get" ) && name.length() > 3 && method.getReturnType() != void.class ) {
+					name = name.substring( 3 );
+				} else if( name.startsWith( "is" ) && name.length() > 2 && method.getReturnType() == boolean.class ) {
+					name = name.substring( 2 );
+				} else {
+					continue;
+				}
+				getters.put(
+						decapitalize( name ),
+						method
+				);
+			}
+			sGetters.put(
+					type,
+					getters
+			);
+			return getters;
+		}
+	}
+
+	/**
+	 * Lower leading upper-case letters like Jackson does for Firebase, i.e. "URLPath" to "urlpath".
+	 */
+	private static String decapitalize( String name ) {
+		char[] chars = name.toCharArray();
+		for( int i = 0; i < chars.length && Character.isUpperCase( chars[ i ] ); i++ ) {
+			chars[ i ] = Character.toLowerCase( chars[ i ] );
+		}
+		return new String( chars );
+	}
+
+	private static long sizeOf( String json ) {
+		return json.getBytes( UTF_8 ).length;
+	}
+}
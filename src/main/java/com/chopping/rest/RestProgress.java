@@ -0,0 +1,125 @@
+package com.chopping.rest;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.chopping.bus.RestApiProgressEvent;
+
+import de.greenrobot.event.EventBus;
+
+/**
+ * Aggregates results of async requests that have no {@link RestApiManager.OnResponseListener}, a {@link
+ * RestApiProgressEvent} is posted at most once per interval and once when no request is running anymore.
+ *
+ * @author Xinyue Zhao
+ */
+final class RestProgress {
+	private final Handler  mHandler = new Handler( Looper.getMainLooper() );
+	private final Runnable mPost    = new Runnable() {
+		@Override
+		public void run() {
+			post();
+		}
+	};
+	private long    mIntervalMs;
+	private int     mRunning;
+	private int     mCompleted;
+	private int     mFailed;
+	private long    mTotalLatencyMs;
+	private long    mMaxLatencyMs;
+	private boolean mScheduled;
+	private boolean mPerItemReported = true;
+
+	RestProgress( long intervalMs ) {
+		mIntervalMs = intervalMs;
+	}
+
+	synchronized void setInterval( long intervalMs ) {
+		mIntervalMs = intervalMs;
+	}
+
+	/**
+	 * @param perItemReported
+	 * 		{@code true} if every result is also reported by a {@link com.chopping.bus.RestApiResponseEvent}.
+	 */
+	synchronized void setPerItemReported( boolean perItemReported ) {
+		mPerItemReported = perItemReported;
+	}
+
+	/**
+	 * A request has been submitted.
+	 */
+	synchronized void onStarted() {
+		mRunning++;
+	}
+
+	/**
+	 * A submitted request has been dropped without result, i.e. it has been cancelled.
+	 */
+	synchronized void onDropped() {
+		if( mRunning > 0 ) {
+			mRunning--;
+		}
+		schedule();
+	}
+
+	/**
+	 * A submitted request has got its result.
+	 */
+	synchronized void onDone( boolean success, long latencyMs ) {
+		if( mRunning > 0 ) {
+			mRunning--;
+		}
+		if( success ) {
+			mCompleted++;
+		} else {
+			mFailed++;
+		}
+		mTotalLatencyMs += latencyMs;
+		mMaxLatencyMs = Math.max(
+				mMaxLatencyMs,
+				latencyMs
+		);
+		schedule();
+	}
+
+	private void schedule() {
+		if( mRunning == 0 ) {
+			//ALL DONE, DON'T WAIT.
+			mHandler.removeCallbacks( mPost );
+			mScheduled = true;
+			mHandler.post( mPost );
+		} else if( !mScheduled ) {
+			mScheduled = true;
+			mHandler.postDelayed(
+					mPost,
+					mIntervalMs
+			);
+		}
+	}
+
+	private void post() {
+		RestApiProgressEvent event;
+		synchronized( this ) {
+			mScheduled = false;
+			int done = mCompleted + mFailed;
+			if( done == 0 && mRunning > 0 ) {
+				return;
+			}
+			event = new RestApiProgressEvent(
+					mCompleted,
+					mFailed,
+					mRunning,
+					done == 0 ? 0 : mTotalLatencyMs / done,
+					mMaxLatencyMs,
+					mPerItemReported
+			);
+			mCompleted = 0;
+			mFailed = 0;
+			mTotalLatencyMs = 0;
+			mMaxLatencyMs = 0;
+		}
+		EventBus.getDefault()
+				.post( event );
+	}
+}
@@ -0,0 +1,59 @@
+package com.chopping.rest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the Rest-package for tuning.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RestStats {
+	/**
+	 * Count of requests that coalescing of pending operations has saved.
+	 */
+	private static final AtomicLong sCoalescedRequests   = new AtomicLong();
+	/**
+	 * Count of submitted requests that have not been sent because same request was running.
+	 */
+	private static final AtomicLong sSuppressedDuplicates = new AtomicLong();
+	/**
+	 * Count of bytes that partial updates have saved against sending whole objects.
+	 */
+	private static final AtomicLong sPatchBytesSaved      = new AtomicLong();
+
+	private RestStats() {
+	}
+
+	public static long getCoalescedRequests() {
+		return sCoalescedRequests.get();
+	}
+
+	static void addCoalescedRequests( long count ) {
+		sCoalescedRequests.addAndGet( count );
+	}
+
+	public static long getSuppressedDuplicates() {
+		return sSuppressedDuplicates.get();
+	}
+
+	static void addSuppressedDuplicates( long count ) {
+		sSuppressedDuplicates.addAndGet( count );
+	}
+
+	public static long getPatchBytesSaved() {
+		return sPatchBytesSaved.get();
+	}
+
+	static void addPatchBytesSaved( long count ) {
+		sPatchBytesSaved.addAndGet( count );
+	}
+
+	/**
+	 * Reset all counters.
+	 */
+	public static void reset() {
+		sCoalescedRequests.set( 0 );
+		sSuppressedDuplicates.set( 0 );
+		sPatchBytesSaved.set( 0 );
+	}
+}
@@ -0,0 +1,449 @@
+package com.chopping.rest;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.Nullable;
+
+import com.chopping.application.LL;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import io.realm.Realm;
+
+/**
+ * The single writer of all {@link RestObject} database writes. It owns a long-lived {@link Realm} on its own thread so
+ * that no database I/O of the Rest-package runs on UI thread.
+ * <p/>
+ * Writes of a same object(same {@link RestObject#DBType()} and {@link RestObject#getReqId()}) that are still queued
+ * are coalesced, only the latest status will be written. An update or delete is not coalesced with a queued create, it
+ * is written after the create, so that it is folded by {@link RestObject#writeToDB(Realm, int)}. All queued writes are written in one transaction, when it
+ * fails they are written again one by one, so that only the bad write is lost and reported by {@link
+ * OnWrittenListener#onWriteFailed(List)}.
+ * <p/>
+ * With a window, see {@link #setWindow(long, int)}, a write waits for others that follow in a burst, so that they are
+ * written in one transaction too.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RestWriter {
+	/**
+	 * Callback when a write has been committed or has failed, it is called once per drain on main thread.
+	 */
+	public interface OnWrittenListener {
+		void onWritten();
+
+		/**
+		 * Some objects could not be written, others of the same call have been written.
+		 *
+		 * @param lost
+		 * 		The objects that have not been written.
+		 */
+		void onWriteFailed( List<RestObject> lost );
+	}
+
+	/**
+	 * A queued write.
+	 */
+	private static final class PendingWrite {
+		private RestObject              mObject;
+		private int                     mStatus;
+		private List<OnWrittenListener> mListeners;
+
+		private PendingWrite( RestObject object, int status ) {
+			mObject = object;
+			mStatus = status;
+		}
+
+		private void addListener( @Nullable OnWrittenListener listener ) {
+			if( listener == null ) {
+				return;
+			}
+			if( mListeners == null ) {
+				mListeners = new ArrayList<>( 1 );
+			}
+			mListeners.add( listener );
+		}
+	}
+
+	private static RestWriter sInstance;
+
+	private final ScheduledExecutorService            mExecutor;
+	private final Handler                             mMainHandler = new Handler( Looper.getMainLooper() );
+	/**
+	 * Queued writes in order, guarded by itself.
+	 */
+	private final List<PendingWrite>        mQueue       = new ArrayList<>();
+	/**
+	 * Latest queued write associated with key of object, guarded by {@link #mQueue}.
+	 */
+	private final Map<String, PendingWrite> mLatest      = new HashMap<>();
+	/**
+	 * {@code true} if a drain of {@link #mQueue} has been scheduled, guarded by {@link #mQueue}.
+	 */
+	private boolean mScheduled;
+	/**
+	 * Time that the first queued write waits for others, 0 if it is written at once, guarded by {@link #mQueue}.
+	 */
+	private long    mWindowMs;
+	/**
+	 * Count of queued writes that are written at once without waiting for the end of window, guarded by {@link
+	 * #mQueue}.
+	 */
+	private int     mMaxItems = Integer.MAX_VALUE;
+	/**
+	 * Drain that waits for the end of window, {@code null} if there's no one, guarded by {@link #mQueue}.
+	 */
+	private ScheduledFuture<?> mDelayedDrain;
+	/**
+	 * The long-lived database, only touched on writer thread.
+	 */
+	private Realm   mRealm;
+	private final Runnable mDrain = new Runnable() {
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+
+	/**
+	 * @return The single instance of {@link RestWriter}.
+	 */
+	public static synchronized RestWriter getInstance() {
+		if( sInstance == null ) {
+			sInstance = new RestWriter();
+		}
+		return sInstance;
+	}
+
+	private RestWriter() {
+		mExecutor = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+			@Override
+			public Thread newThread( final Runnable r ) {
+				Thread thread = new Thread(
+						new Runnable() {
+							@Override
+							public void run() {
+								Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+								r.run();
+							}
+						},
+						"RestWriter"
+				);
+				thread.setDaemon( true );
+				return thread;
+			}
+		} );
+	}
+
+	/**
+	 * Queue a write of {@code object}.
+	 *
+	 * @param object
+	 * 		The {@link RestObject} to write.
+	 * @param status
+	 * 		The status to write.
+	 * @param listener
+	 * 		{@link OnWrittenListener} to call after write, can be {@code null}.
+	 */
+	public void write( RestObject object, int status, @Nullable OnWrittenListener listener ) {
+		synchronized( mQueue ) {
+			enqueue(
+					object,
+					status
+			).addListener( listener );
+			schedule();
+		}
+	}
+
+	/**
+	 * Queue writes of a bulk of objects, they will be written in one transaction.
+	 *
+	 * @param objects
+	 * 		The {@link RestObject}s to write.
+	 * @param status
+	 * 		The status to write.
+	 * @param listener
+	 * 		{@link OnWrittenListener} to call once after all objects have been written, can be {@code null}.
+	 */
+	public void write( Collection<? extends RestObject> objects, int status, @Nullable OnWrittenListener listener ) {
+		synchronized( mQueue ) {
+			boolean queued = false;
+			for( RestObject object : objects ) {
+				//All objects are queued under one lock, so they are drained together and the listener is called once.
+				enqueue(
+						object,
+						status
+				).addListener( listener );
+				queued = true;
+			}
+			if( !queued ) {
+				//Nothing to write, but the caller wants to know.
+				notifyWritten(
+						listener,
+						Collections.<RestObject>emptyList()
+				);
+				return;
+			}
+			schedule();
+		}
+	}
+
+	/**
+	 * Set a window of writes, writes of a burst are written in one transaction.
+	 *
+	 * @param windowMs
+	 * 		Max time that the first queued write waits for others, 0 to write at once.
+	 * @param maxItems
+	 * 		Count of queued writes that are written without waiting for the end of window.
+	 */
+	public void setWindow( long windowMs, int maxItems ) {
+		if( windowMs < 0 || maxItems <= 0 ) {
+			throw new IllegalArgumentException( "Bad window: " + windowMs + "ms, " + maxItems + " items" );
+		}
+		synchronized( mQueue ) {
+			mWindowMs = windowMs;
+			mMaxItems = maxItems;
+		}
+	}
+
+	private PendingWrite enqueue( RestObject object, int status ) {
+		String       key   = object.DBType()
+								   .getName() + "#" + object.getReqId();
+		PendingWrite write = mLatest.get( key );
+		if( write == null || !canCoalesce(
+				write.mStatus,
+				status
+		) ) {
+			write = new PendingWrite(
+					object,
+					status
+			);
+			mQueue.add( write );
+			mLatest.put(
+					key,
+					write
+			);
+		} else {
+			//COALESCE, THE LATEST WINS.
+			write.mObject = object;
+			write.mStatus = status;
+		}
+		return write;
+	}
+
+	/**
+	 * @return {@code true} if a write of {@code status} can replace a queued write of {@code queuedStatus}. An update or
+	 * delete of a created item depends on the stored item, see {@link PendingCoalescer#fold(boolean, int)}.
+	 */
+	private static boolean canCoalesce( int queuedStatus, int status ) {
+		return queuedStatus != RestObject.NOT_SYNCED || ( status != RestObject.UPDATE && status != RestObject.DELETE );
+	}
+
+	private void schedule() {
+		if( !mScheduled ) {
+			mScheduled = true;
+			cancelDelayedDrain();
+			if( mWindowMs > 0 && mQueue.size() < mMaxItems ) {
+				mDelayedDrain = mExecutor.schedule(
+						mDrain,
+						mWindowMs,
+						TimeUnit.MILLISECONDS
+				);
+			} else {
+				mExecutor.execute( mDrain );
+			}
+		} else if( mWindowMs > 0 && mQueue.size() == mMaxItems ) {
+			//WINDOW IS FULL, DON'T WAIT FOR ITS END.
+			cancelDelayedDrain();
+			mExecutor.execute( mDrain );
+		}
+	}
+
+	/**
+	 * Cancel the drain at the end of window, a stale one would cut the window of next burst short.
+	 */
+	private void cancelDelayedDrain() {
+		if( mDelayedDrain != null ) {
+			mDelayedDrain.cancel( false );
+			mDelayedDrain = null;
+		}
+	}
+
+	/**
+	 * Close the long-lived {@link Realm} after queued writes, i.e. for {@link Realm#compactRealm(io.realm.RealmConfiguration)}
+	 * that needs all instances closed. It is opened again by next write. Don't call it on writer thread.
+	 *
+	 * @param timeoutMs
+	 * 		Max time to wait for writer thread.
+	 *
+	 * @return {@code true} if the {@link Realm} has been closed.
+	 */
+	public boolean closeRealm( long timeoutMs ) {
+		Future<?> closed = mExecutor.submit( new Runnable() {
+			@Override
+			public void run() {
+				drain();
+				if( mRealm != null && !mRealm.isClosed() ) {
+					mRealm.close();
+				}
+				mRealm = null;
+			}
+		} );
+		try {
+			closed.get(
+					timeoutMs,
+					TimeUnit.MILLISECONDS
+			);
+			return true;
+		} catch( InterruptedException e ) {
+			Thread.currentThread()
+				  .interrupt();
+			return false;
+		} catch( ExecutionException | TimeoutException e ) {
+			LL.e( "RestWriter: " + e.toString() );
+			return false;
+		}
+	}
+
+	/**
+	 * Write all queued objects, run on writer thread.
+	 */
+	private void drain() {
+		List<PendingWrite> writes;
+		synchronized( mQueue ) {
+			writes = new ArrayList<>( mQueue );
+			mQueue.clear();
+			mLatest.clear();
+			mScheduled = false;
+			cancelDelayedDrain();
+		}
+		if( writes.isEmpty() ) {
+			return;
+		}
+		Set<PendingWrite> failed;
+		try {
+			if( mRealm == null || mRealm.isClosed() ) {
+				mRealm = Realm.getDefaultInstance();
+			}
+			failed = writeAll( writes );
+		} catch( RuntimeException e ) {
+			//DATABASE CAN'T BE OPENED.
+			LL.e( "RestWriter: " + e.toString() );
+			failed = new HashSet<>( writes );
+		}
+		//Objects that have not been written, associated with listeners, in order of queue.
+		Map<OnWrittenListener, List<RestObject>> results = new LinkedHashMap<>();
+		for( PendingWrite write : writes ) {
+			if( write.mListeners == null ) {
+				continue;
+			}
+			for( OnWrittenListener listener : write.mListeners ) {
+				List<RestObject> lost = results.get( listener );
+				if( lost == null ) {
+					lost = new ArrayList<>( 0 );
+					results.put(
+							listener,
+							lost
+					);
+				}
+				if( failed.contains( write ) ) {
+					lost.add( write.mObject );
+				}
+			}
+		}
+		for( Map.Entry<OnWrittenListener, List<RestObject>> result : results.entrySet() ) {
+			notifyWritten(
+					result.getKey(),
+					result.getValue()
+			);
+		}
+	}
+
+	/**
+	 * Write {@code writes} in one transaction, when it fails write them one by one.
+	 *
+	 * @return Writes that have failed.
+	 */
+	private Set<PendingWrite> writeAll( List<PendingWrite> writes ) {
+		try {
+			write( writes );
+			return Collections.emptySet();
+		} catch( RuntimeException e ) {
+			LL.e( "RestWriter: " + e.toString() + ", write one by one." );
+		}
+		if( writes.size() == 1 ) {
+			return new HashSet<>( writes );
+		}
+		Set<PendingWrite> failed = new HashSet<>();
+		for( PendingWrite write : writes ) {
+			try {
+				write( Collections.singletonList( write ) );
+			} catch( RuntimeException e ) {
+				LL.e( "RestWriter: lost " + write.mObject.DBType()
+														 .getSimpleName() + "#" + write.mObject.getReqId() + ", " + e.toString() );
+				failed.add( write );
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Write {@code writes} in one transaction, it is cancelled when any write fails.
+	 */
+	private void write( List<PendingWrite> writes ) {
+		boolean written = false;
+		mRealm.beginTransaction();
+		try {
+			for( PendingWrite write : writes ) {
+				written |= write.mObject.writeToDB(
+						mRealm,
+						write.mStatus
+				);
+			}
+			if( written ) {
+				mRealm.commitTransaction();
+			} else {
+				mRealm.cancelTransaction();
+			}
+		} catch( RuntimeException e ) {
+			if( mRealm.isInTransaction() ) {
+				mRealm.cancelTransaction();
+			}
+			throw e;
+		}
+	}
+
+	private void notifyWritten( @Nullable final OnWrittenListener listener, final List<RestObject> lost ) {
+		if( listener == null ) {
+			return;
+		}
+		mMainHandler.post( new Runnable() {
+			@Override
+			public void run() {
+				if( lost.isEmpty() ) {
+					listener.onWritten();
+				} else {
+					listener.onWriteFailed( lost );
+				}
+			}
+		} );
+	}
+}
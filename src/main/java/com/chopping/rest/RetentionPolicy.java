@@ -0,0 +1,43 @@
+package com.chopping.rest;
+
+/**
+ * Retention policy of local data of a {@link RestObject#DBType()}, see {@link DataRetention}. A limit of {@link
+ * #UNLIMITED} is not checked.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RetentionPolicy {
+	public static final long UNLIMITED = 0;
+
+	private final long mMaxAgeMs;
+	private final long mMaxRows;
+	private final long mMaxFileBytes;
+
+	/**
+	 * Constructor of {@link RetentionPolicy}
+	 *
+	 * @param maxAgeMs
+	 * 		Max age of synced items, "reqTime" is compared with {@link System#currentTimeMillis()}.
+	 * @param maxRows
+	 * 		Max count of items of the type, pending items are counted but never evicted.
+	 * @param maxFileBytes
+	 * 		Max size of live data of the database file, oldest synced items of the type are evicted while it is exceeded.
+	 */
+	public RetentionPolicy( long maxAgeMs, long maxRows, long maxFileBytes ) {
+		mMaxAgeMs = maxAgeMs;
+		mMaxRows = maxRows;
+		mMaxFileBytes = maxFileBytes;
+	}
+
+	public long getMaxAgeMs() {
+		return mMaxAgeMs;
+	}
+
+	public long getMaxRows() {
+		return mMaxRows;
+	}
+
+	public long getMaxFileBytes() {
+		return mMaxFileBytes;
+	}
+}
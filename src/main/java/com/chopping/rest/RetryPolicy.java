@@ -0,0 +1,82 @@
+package com.chopping.rest;
+
+import java.util.Random;
+
+/**
+ * Retry policy of requests of an endpoint: exponential backoff with full jitter.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RetryPolicy {
+	/**
+	 * No retry at all.
+	 */
+	public static final RetryPolicy NONE = new RetryPolicy(
+			0,
+			0,
+			0
+	);
+
+	private final int    mMaxRetries;
+	private final long   mBaseDelayMs;
+	private final long   mMaxDelayMs;
+	private final Random mRandom = new Random();
+
+	/**
+	 * Constructor of {@link RetryPolicy}
+	 *
+	 * @param maxRetries
+	 * 		Max count of retries after first failure, not negative.
+	 * @param baseDelayMs
+	 * 		Delay before first retry, it doubles for every next retry, not negative.
+	 * @param maxDelayMs
+	 * 		Max delay before a retry, not less than {@code baseDelayMs}.
+	 */
+	public RetryPolicy( int maxRetries, long baseDelayMs, long maxDelayMs ) {
+		if( maxRetries < 0 ) {
+			throw new IllegalArgumentException( "maxRetries must not be negative: " + maxRetries );
+		}
+		if( baseDelayMs < 0 ) {
+			throw new IllegalArgumentException( "baseDelayMs must not be negative: " + baseDelayMs );
+		}
+		if( maxDelayMs < baseDelayMs ) {
+			throw new IllegalArgumentException( "maxDelayMs " + maxDelayMs + " is less than baseDelayMs " + baseDelayMs );
+		}
+		mMaxRetries = maxRetries;
+		mBaseDelayMs = baseDelayMs;
+		mMaxDelayMs = maxDelayMs;
+	}
+
+	/**
+	 * @param retries
+	 * 		Count of retries that have been done.
+	 *
+	 * @return {@code true} if another retry is allowed.
+	 */
+	public boolean shouldRetry( int retries ) {
+		return retries < mMaxRetries;
+	}
+
+	/**
+	 * @param retries
+	 * 		Count of retries that have been done.
+	 *
+	 * @return The delay before next retry, a random value between 0 and the exponential backoff so that clients do not
+	 * retry at the same moment.
+	 */
+	public long getDelay( int retries ) {
+		long backoff = mBaseDelayMs << Math.min(
+				retries,
+				30
+		);
+		if( backoff <= 0 || backoff > mMaxDelayMs ) {
+			backoff = mMaxDelayMs;
+		}
+		if( backoff <= 0 ) {
+			return 0;
+		}
+		synchronized( mRandom ) {
+			return (long) ( mRandom.nextDouble() * backoff );
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package com.chopping.rest;
+
+import com.chopping.exceptions.RestApiFailException;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+
+import retrofit2.Call;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Single;
+import rx.SingleSubscriber;
+import rx.functions.Action0;
+import rx.functions.Action1;
+import rx.functions.Func0;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Reactive variants of {@link RestApiManager}.
+ * <p/>
+ * Unsubscribing cancels running requests, so a drain of pending items can be bound to the lifecycle of an activity,
+ * i.e. add the {@link rx.Subscription} to a {@link rx.subscriptions.CompositeSubscription} that is cleared in {@code
+ * onDestroy()}.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RxRestApi {
+	/**
+	 * Thread of all {@link PendingPager}s, they hold a {@link io.realm.Realm} that can't change thread.
+	 */
+	private static final Scheduler sPagerScheduler = Schedulers.from( Executors.newSingleThreadExecutor() );
+
+	private final RestApiManager mManager;
+
+	/**
+	 * Constructor of {@link RxRestApi}
+	 *
+	 * @param manager
+	 * 		The {@link RestApiManager} that sends requests.
+	 */
+	public RxRestApi( RestApiManager manager ) {
+		mManager = manager;
+	}
+
+	/**
+	 * Reactive variant of {@link RestApiManager#execAsync(Call, RestObject)}.
+	 */
+	public <LD extends RestObject, SD extends RestObject> Single<LD> exec( Call<SD> call, LD requestObject ) {
+		return exec(
+				call,
+				requestObject,
+				RestObject.NOT_SYNCED,
+				RestObject.SYNCED
+		);
+	}
+
+	/**
+	 * Reactive variant of {@link RestApiManager#deleteAsync(Call, RestObject)}.
+	 */
+	public <LD extends RestObject, SD extends RestObject> Single<LD> delete( Call<SD> call, LD requestObject ) {
+		return exec(
+				call,
+				requestObject,
+				RestObject.DELETE,
+				RestObject.DELETE_SYNCED
+		);
+	}
+
+	/**
+	 * Reactive variant of {@link RestApiManager#updateAsync(Call, RestObject)}.
+	 */
+	public <LD extends RestObject, SD extends RestObject> Single<LD> update( Call<SD> call, LD requestObject ) {
+		return exec(
+				call,
+				requestObject,
+				RestObject.UPDATE,
+				RestObject.UPDATE_SYNCED
+		);
+	}
+
+	/**
+	 * Reactive variant of {@link RestApiManager#execAsync(Call, RestObject, int, int)}, the request is sent when
+	 * subscribed.
+	 *
+	 * @return A {@link Single} that emits {@code requestObject} after local status has been written, or fails with
+	 * {@link RestApiFailException}.
+	 */
+	public <LD extends RestObject, SD extends RestObject> Single<LD> exec( final Call<SD> call, final LD requestObject, final int statusBefore,
+			final int statusAfter
+	) {
+		return Single.create( new Single.OnSubscribe<LD>() {
+			@Override
+			public void call( final SingleSubscriber<? super LD> subscriber ) {
+				final RestApiManager.OnResponseListener listener = new RestApiManager.OnResponseListener() {
+					@Override
+					public void onResponse( RestObject response, boolean success ) {
+						if( subscriber.isUnsubscribed() ) {
+							return;
+						}
+						if( success ) {
+							subscriber.onSuccess( requestObject );
+						} else {
+							subscriber.onError( new RestApiFailException( requestObject ) );
+						}
+					}
+				};
+				subscriber.add( Subscriptions.create( new Action0() {
+					@Override
+					public void call() {
+						//The call may be a duplicate that is never sent or be replaced by a retry, the manager knows the running one.
+						mManager.cancel(
+								requestObject,
+								statusBefore,
+								listener
+						);
+					}
+				} ) );
+				if( subscriber.isUnsubscribed() ) {
+					return;
+				}
+				mManager.execAsync(
+						call,
+						requestObject,
+						statusBefore,
+						statusAfter,
+						listener
+				);
+			}
+		} );
+	}
+
+	/**
+	 * Reactive variant of {@link RestApiManager#executePending(ExecutePendingPaged, int)}. Pending items are read
+	 * page by page on demand of subscriber(backpressure), so a slow consumer never loads the whole outbox.
+	 *
+	 * @param prototype
+	 * 		The {@link RestObject} whose {@link RestObject#DBType()} is read, it converts database items.
+	 * @param statusBefore
+	 * 		Status of sync.
+	 * @param pageSize
+	 * 		Count of items that are read at once.
+	 *
+	 * @return An {@link Observable} of pending items in "reqTime" order, read on a background thread.
+	 */
+	public Observable<RestObject> pending( final RestObject prototype, final int statusBefore, final int pageSize ) {
+		return Observable.using(
+				new Func0<PendingPager>() {
+					@Override
+					public PendingPager call() {
+						return new PendingPager(
+								prototype,
+								statusBefore,
+								pageSize
+						);
+					}
+				},
+				new Func1<PendingPager, Observable<RestObject>>() {
+					@Override
+					public Observable<RestObject> call( final PendingPager pager ) {
+						return Observable.from( new Iterable<RestObject>() {
+							@Override
+							public Iterator<RestObject> iterator() {
+								return new PageIterator( pager );
+							}
+						} );
+					}
+				},
+				new Action1<PendingPager>() {
+					@Override
+					public void call( PendingPager pager ) {
+						pager.close();
+					}
+				}
+		)
+						 //The pager is confined to one thread, requests of subscriber and unsubscribing are moved onto it.
+						 .subscribeOn( sPagerScheduler )
+						 .unsubscribeOn( sPagerScheduler );
+	}
+
+	/**
+	 * Send all pending items of {@code statusBefore} with max {@code maxConcurrent} running requests.
+	 *
+	 * @param prototype
+	 * 		The {@link RestObject} whose {@link RestObject#DBType()} is sent, it converts database items.
+	 * @param statusBefore
+	 * 		Status of sync.
+	 * @param pageSize
+	 * 		Count of items that are read at once.
+	 * @param maxConcurrent
+	 * 		Max count of running requests.
+	 * @param factory
+	 * 		The {@link SyncEngine.CallFactory} that creates requests.
+	 *
+	 * @return An {@link Observable} that emits for every item whether it has been sent successfully.
+	 */
+	public Observable<Boolean> sendPending( RestObject prototype, final int statusBefore, int pageSize, int maxConcurrent,
+			final SyncEngine.CallFactory factory
+	) {
+		final int statusAfter = PendingRequest.statusAfter( statusBefore );
+		return pending(
+				prototype,
+				statusBefore,
+				pageSize
+		).flatMap(
+				new Func1<RestObject, Observable<Boolean>>() {
+					@Override
+					public Observable<Boolean> call( RestObject item ) {
+						return exec(
+								factory.create( new PendingRequest(
+										item,
+										statusBefore
+								) ),
+								item,
+								statusBefore,
+								statusAfter
+						).map( new Func1<RestObject, Boolean>() {
+							@Override
+							public Boolean call( RestObject restObject ) {
+								return Boolean.TRUE;
+							}
+						} )
+								.onErrorReturn( new Func1<Throwable, Boolean>() {
+									@Override
+									public Boolean call( Throwable throwable ) {
+										return Boolean.FALSE;
+									}
+								} )
+								.toObservable();
+					}
+				},
+				maxConcurrent
+		);
+	}
+
+	/**
+	 * Iterates items of all pages of a {@link PendingPager}, the next page is read when the current one has been
+	 * consumed.
+	 */
+	private static final class PageIterator implements Iterator<RestObject> {
+		private final PendingPager     mPager;
+		private       List<RestObject> mPage = Collections.emptyList();
+		private       int              mIndex;
+
+		private PageIterator( PendingPager pager ) {
+			mPager = pager;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while( mIndex >= mPage.size() ) {
+				if( !mPager.hasNext() ) {
+					return false;
+				}
+				mPage = mPager.next();
+				mIndex = 0;
+			}
+			return true;
+		}
+
+		@Override
+		public RestObject next() {
+			if( !hasNext() ) {
+				throw new NoSuchElementException();
+			}
+			return mPage.get( mIndex++ );
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
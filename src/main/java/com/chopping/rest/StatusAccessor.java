@@ -0,0 +1,11 @@
+package com.chopping.rest;
+
+/**
+ * Implemented by database items of a {@link RestObject#DBType()} so that their "status" can be changed without
+ * reflection.
+ */
+public interface StatusAccessor {
+	int getStatus();
+
+	void setStatus( int status );
+}
@@ -0,0 +1,154 @@
+package com.chopping.rest;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.realm.RealmObject;
+
+/**
+ * Sync cursor of a {@link RestObject#DBType()}: the highest "reqTime" of items that have been loaded from server.
+ * <p/>
+ * The cursor is only advanced by loads, see {@link #advance(Collection)}, never by local writes, so uploads of this
+ * client that are stamped with its own clock can't move it past items of others. It is persisted in {@link
+ * SharedPreferences} after the loaded items have been written, reading it touches no database. Clearing a type by
+ * {@link com.chopping.utils.RestUtils#clear(Class)} resets its cursor so that it is loaded completely again, call
+ * {@link #reset(Class)} after removing all synced data in other ways. Items evicted by {@link DataRetention} are not
+ * loaded again. Loads after the first one only need items that are newer than the cursor, an update of an item must
+ * therefore renew its "reqTime".
+ *
+ * @author Xinyue Zhao
+ */
+public final class SyncCursor {
+	/**
+	 * Cursor of a type that has never been synced.
+	 */
+	public static final long NONE = 0;
+
+	private static final String PREFS = "com.chopping.rest.SyncCursor";
+
+	private static volatile SharedPreferences sPreferences;
+
+	private SyncCursor() {
+	}
+
+	/**
+	 * Initialize the storage of cursors, called by {@link com.chopping.utils.RestUtils#initRest(android.app.Application,
+	 * boolean)}. Without it every load gets all data.
+	 */
+	public static void init( Context context ) {
+		sPreferences = context.getApplicationContext()
+							  .getSharedPreferences(
+									  PREFS,
+									  Context.MODE_PRIVATE
+							  );
+	}
+
+	/**
+	 * Get cursor of a type, it can be called on main thread.
+	 *
+	 * @param dbType
+	 * 		The {@link RestObject#DBType()}.
+	 *
+	 * @return The highest "reqTime" of loaded items, {@link #NONE} if the type has never been synced or has been reset.
+	 */
+	public static long getWatermark( Class<? extends RealmObject> dbType ) {
+		SharedPreferences preferences = sPreferences;
+		if( preferences == null ) {
+			return NONE;
+		}
+		return preferences.getLong(
+				dbType.getName(),
+				NONE
+		);
+	}
+
+	/**
+	 * Advance cursors by items that have been loaded from server and written.
+	 *
+	 * @param loaded
+	 * 		Items of server, of one or more types.
+	 */
+	public static synchronized void advance( Collection<? extends RestObject> loaded ) {
+		SharedPreferences preferences = sPreferences;
+		if( preferences == null || loaded == null || loaded.isEmpty() ) {
+			return;
+		}
+		Map<String, Long> highest = new HashMap<>();
+		for( RestObject item : loaded ) {
+			String key     = item.DBType()
+							   .getName();
+			Long   reqTime = highest.get( key );
+			if( reqTime == null ) {
+				reqTime = preferences.getLong(
+						key,
+						NONE
+				);
+			}
+			highest.put(
+					key,
+					Math.max(
+							reqTime,
+							item.getReqTime()
+					)
+			);
+		}
+		SharedPreferences.Editor edit = preferences.edit();
+		for( Map.Entry<String, Long> entry : highest.entrySet() ) {
+			edit.putLong(
+					entry.getKey(),
+					entry.getValue()
+			);
+		}
+		edit.apply();
+	}
+
+	/**
+	 * Wrap a listener of the write of loaded items, the cursors are advanced when all of them have been written.
+	 *
+	 * @param loaded
+	 * 		Items of server that are written.
+	 * @param listener
+	 * 		The {@link RestWriter.OnWrittenListener} to call after, can be {@code null}.
+	 *
+	 * @return The {@link RestWriter.OnWrittenListener} of the write.
+	 */
+	public static RestWriter.OnWrittenListener afterWritten( final Collection<? extends RestObject> loaded,
+			@Nullable final RestWriter.OnWrittenListener listener
+	) {
+		return new RestWriter.OnWrittenListener() {
+			@Override
+			public void onWritten() {
+				advance( loaded );
+				if( listener != null ) {
+					listener.onWritten();
+				}
+			}
+
+			@Override
+			public void onWriteFailed( List<RestObject> lost ) {
+				//Not advanced, the lost items are loaded again.
+				if( listener != null ) {
+					listener.onWriteFailed( lost );
+				}
+			}
+		};
+	}
+
+	/**
+	 * Forget the cursor of a type, next load gets all data.
+	 */
+	public static void reset( Class<? extends RealmObject> dbType ) {
+		SharedPreferences preferences = sPreferences;
+		if( preferences != null ) {
+			preferences.edit()
+					   .remove( dbType.getName() )
+					   .apply();
+		}
+	}
+}
@@ -0,0 +1,576 @@
+package com.chopping.rest;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.chopping.bus.SyncProgressEvent;
+import com.chopping.utils.RestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.greenrobot.event.EventBus;
+import io.realm.RealmObject;
+import retrofit2.Call;
+
+/**
+ * Sends all pending items of registered {@link RestObject#DBType()}s with a bounded count of concurrent requests.
+ * <p/>
+ * Pending operations are coalesced(see {@link PendingCoalescer}) before sent, operations of same request-id run one
+ * after another. Progress is reported with {@link SyncProgressEvent} instead of one {@link
+ * com.chopping.bus.RestApiResponseEvent} per item.
+ * <p/>
+ * Every type has a priority and a budget of concurrent requests. Types are interleaved by weighted round robin on
+ * their priorities, so a large backlog of a low priority type shares requests with a small one of a high priority
+ * type instead of being sent first, see {@link #register(RestObject, CallFactory, int, int)}.
+ * <p/>
+ * Use it on main thread.
+ *
+ * @author Xinyue Zhao
+ */
+public class SyncEngine implements RestApiManager.OnResponseListener {
+	/**
+	 * Factory that creates the {@link Call} to send a {@link PendingRequest}.
+	 */
+	public interface CallFactory {
+		Call<? extends RestObject> create( PendingRequest request );
+	}
+
+	public static final int PRIORITY_LOW    = 1;
+	public static final int PRIORITY_NORMAL = 4;
+	public static final int PRIORITY_HIGH   = 16;
+
+	/**
+	 * Default min interval between two {@link SyncProgressEvent}s while syncing.
+	 */
+	private static final long PROGRESS_INTERVAL_MS = 500;
+
+	private final RestApiManager                                 mManager;
+	private final int                                            mMaxInFlight;
+	private final Handler                                        mHandler     = new Handler( Looper.getMainLooper() );
+	/**
+	 * Registered types associated with their {@link RestObject#DBType()}s.
+	 */
+	private final Map<Class<? extends RealmObject>, TypeQueue>   mTypes       = new LinkedHashMap<>();
+	/**
+	 * Requests that are running associated with their keys.
+	 */
+	private final Map<String, FactoryRequest>                    mInFlight    = new HashMap<>();
+	private int                                                  mTotal;
+	private int                                                  mCompleted;
+	private int                                                  mFailed;
+	private boolean                                              mProgressScheduled;
+	private long                                                 mProgressIntervalMs = PROGRESS_INTERVAL_MS;
+	private final Runnable                                       mPostProgress = new Runnable() {
+		@Override
+		public void run() {
+			mProgressScheduled = false;
+			postProgress();
+		}
+	};
+
+	/**
+	 * Constructor of {@link SyncEngine}
+	 *
+	 * @param manager
+	 * 		The {@link RestApiManager} that sends requests.
+	 * @param maxInFlight
+	 * 		Max count of concurrent requests of all types.
+	 */
+	public SyncEngine( RestApiManager manager, int maxInFlight ) {
+		if( maxInFlight <= 0 ) {
+			throw new IllegalArgumentException( "maxInFlight must be positive: " + maxInFlight );
+		}
+		mManager = manager;
+		mMaxInFlight = maxInFlight;
+	}
+
+	/**
+	 * Set min interval between two {@link SyncProgressEvent}s while syncing, default is 500ms.
+	 */
+	public void setProgressInterval( long intervalMs ) {
+		mProgressIntervalMs = intervalMs;
+	}
+
+	/**
+	 * Register a type to sync with {@link #PRIORITY_NORMAL} and the whole budget of concurrent requests.
+	 *
+	 * @param prototype
+	 * 		A {@link RestObject} of the type, it converts database items.
+	 * @param factory
+	 * 		The {@link CallFactory} of the type, can be {@code null} if batch mode of the type has been enabled on
+	 * 		{@link RestApiManager} before, see {@link RestApiManager#setBatchMode(Class, BatchCallFactory, int, long)}.
+	 */
+	public void register( RestObject prototype, @Nullable CallFactory factory ) {
+		register(
+				prototype,
+				factory,
+				PRIORITY_NORMAL,
+				mMaxInFlight
+		);
+	}
+
+	/**
+	 * Register a type to sync.
+	 *
+	 * @param prototype
+	 * 		A {@link RestObject} of the type, it converts database items.
+	 * @param factory
+	 * 		The {@link CallFactory} of the type, can be {@code null} if batch mode of the type has been enabled on
+	 * 		{@link RestApiManager} before, see {@link RestApiManager#setBatchMode(Class, BatchCallFactory, int, long)}.
+	 * @param priority
+	 * 		Weight of the type in interleaving, i.e. {@link #PRIORITY_HIGH} gets 4 times requests of {@link
+	 * 		#PRIORITY_NORMAL} while both are waiting.
+	 * @param maxInFlight
+	 * 		Max count of concurrent requests of the type.
+	 */
+	public void register( RestObject prototype, @Nullable CallFactory factory, int priority, int maxInFlight ) {
+		if( priority <= 0 || maxInFlight <= 0 ) {
+			throw new IllegalArgumentException( "priority and maxInFlight must be positive: " + priority + ", " + maxInFlight );
+		}
+		if( factory == null && !mManager.isBatchMode( prototype.DBType() ) ) {
+			throw new IllegalArgumentException( "A CallFactory is needed without batch mode: " + prototype.DBType()
+																									 .getName() );
+		}
+		TypeQueue type = mTypes.get( prototype.DBType() );
+		if( type != null && !type.mQueue.isEmpty() ) {
+			throw new IllegalStateException( "Type is syncing: " + prototype.DBType()
+																		 .getName() );
+		}
+		mTypes.put(
+				prototype.DBType(),
+				new TypeQueue(
+						prototype,
+						factory,
+						priority,
+						maxInFlight
+				)
+		);
+	}
+
+	/**
+	 * Send all pending items of all registered types.
+	 */
+	public void sync() {
+		for( final TypeQueue type : mTypes.values() ) {
+			RestUtils.executePendingCoalesced( new ExecutePendingRequests() {
+				@Override
+				public void executePending( final List<PendingRequest> pendingRequests ) {
+					mHandler.post( new Runnable() {
+						@Override
+						public void run() {
+							enqueue(
+									type,
+									pendingRequests
+							);
+						}
+					} );
+				}
+
+				@Override
+				public RestObject build() {
+					return type.mPrototype;
+				}
+			} );
+		}
+	}
+
+	/**
+	 * Send operations of an {@link OutboxJournal} that have not been acknowledged, i.e. after the app has restarted.
+	 * The journal is read on a background thread, only operations of registered types are sent.
+	 *
+	 * @param journal
+	 * 		The {@link OutboxJournal} to replay.
+	 */
+	public void resume( final OutboxJournal journal ) {
+		new Thread(
+				new Runnable() {
+					@Override
+					public void run() {
+						List<PendingRequest> operations = journal.replay();
+						final List<PendingRequest> requests = PendingCoalescer.coalesce( operations )
+																			  .getRequests();
+						//Operations that have been folded into others are done.
+						Set<PendingRequest> sent = Collections.newSetFromMap( new IdentityHashMap<PendingRequest, Boolean>() );
+						sent.addAll( requests );
+						for( PendingRequest operation : operations ) {
+							if( !sent.contains( operation ) ) {
+								journal.acknowledge(
+										operation.getObject(),
+										operation.getStatusBefore()
+								);
+							}
+						}
+						mHandler.post( new Runnable() {
+							@Override
+							public void run() {
+								for( TypeQueue type : mTypes.values() ) {
+									List<PendingRequest> ofType = new ArrayList<>();
+									for( PendingRequest request : requests ) {
+										if( request.getObject()
+												   .DBType() == type.mPrototype.DBType() ) {
+											ofType.add( request );
+										}
+									}
+									if( !ofType.isEmpty() ) {
+										enqueue(
+												type,
+												ofType
+										);
+									}
+								}
+							}
+						} );
+					}
+				},
+				"SyncEngine-resume"
+		).start();
+	}
+
+	/**
+	 * Drop all requests that have not been sent, running requests are not cancelled.
+	 */
+	public void cancel() {
+		for( TypeQueue type : mTypes.values() ) {
+			mTotal -= type.mQueue.size();
+			type.mQueue.clear();
+		}
+		mHandler.removeCallbacks( mPostProgress );
+		mProgressScheduled = false;
+	}
+
+	/**
+	 * @return {@code true} if there're requests queued or running.
+	 */
+	public boolean isSyncing() {
+		if( !mInFlight.isEmpty() ) {
+			return true;
+		}
+		for( TypeQueue type : mTypes.values() ) {
+			if( !type.mQueue.isEmpty() ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param dbType
+	 * 		A registered {@link RestObject#DBType()}.
+	 *
+	 * @return Current {@link QueueStats} of the type, {@code null} if the type has not been registered.
+	 */
+	public
+	@Nullable
+	QueueStats getQueueStats( Class<? extends RealmObject> dbType ) {
+		TypeQueue type = mTypes.get( dbType );
+		if( type == null ) {
+			return null;
+		}
+		long oldestWaitMs = 0;
+		if( !type.mQueue.isEmpty() ) {
+			oldestWaitMs = SystemClock.elapsedRealtime() - type.mQueue.values()
+																	 .iterator()
+																	 .next().mQueuedAt;
+		}
+		return new QueueStats(
+				type.mQueue.size(),
+				type.mInFlight,
+				type.mDispatched == 0 ? 0 : type.mTotalWaitMs / type.mDispatched,
+				type.mMaxWaitMs,
+				oldestWaitMs
+		);
+	}
+
+	/**
+	 * Queue requests of a registered type and send them, as {@link #sync()} does after the database has been read.
+	 */
+	void enqueue( Class<? extends RealmObject> dbType, List<PendingRequest> requests ) {
+		enqueue(
+				mTypes.get( dbType ),
+				requests
+		);
+	}
+
+	private void enqueue( TypeQueue type, List<PendingRequest> requests ) {
+		if( !isSyncing() ) {
+			mTotal = 0;
+			mCompleted = 0;
+			mFailed = 0;
+		}
+		long now = SystemClock.elapsedRealtime();
+		for( PendingRequest request : requests ) {
+			String         key     = keyOf( request.getObject() );
+			PendingRequest running = mInFlight.get( key );
+			if( running != null && running.getStatusBefore() == request.getStatusBefore() ) {
+				//Read before the running one has been written.
+				continue;
+			}
+			FactoryRequest queued = new FactoryRequest(
+					type.mFactory,
+					request
+			);
+			FactoryRequest replaced = type.mQueue.put(
+					key,
+					queued
+			);
+			if( replaced == null ) {
+				queued.mQueuedAt = now;
+				mTotal++;
+			} else {
+				//KEEP THE WAIT OF THE FIRST ONE.
+				queued.mQueuedAt = replaced.mQueuedAt;
+			}
+		}
+		dispatch();
+	}
+
+	private void dispatch() {
+		while( mInFlight.size() < mMaxInFlight ) {
+			TypeQueue type = nextType();
+			if( type == null ) {
+				break;
+			}
+			Map.Entry<String, FactoryRequest> entry = type.next( mInFlight );
+			type.mQueue.remove( entry.getKey() );
+			FactoryRequest request = entry.getValue();
+			mInFlight.put(
+					entry.getKey(),
+					request
+			);
+			type.onDispatched( SystemClock.elapsedRealtime() - request.mQueuedAt );
+			send( request );
+		}
+		if( !isSyncing() ) {
+			mHandler.removeCallbacks( mPostProgress );
+			mProgressScheduled = false;
+			postProgress();
+		}
+	}
+
+	/**
+	 * Smooth weighted round robin over types that can send now.
+	 *
+	 * @return The type to send next, {@code null} if no type can send.
+	 */
+	private
+	@Nullable
+	TypeQueue nextType() {
+		TypeQueue selected    = null;
+		int       totalWeight = 0;
+		for( TypeQueue type : mTypes.values() ) {
+			if( type.mInFlight >= type.mMaxInFlight || type.next( mInFlight ) == null ) {
+				continue;
+			}
+			type.mCurrentWeight += type.mPriority;
+			totalWeight += type.mPriority;
+			if( selected == null || type.mCurrentWeight > selected.mCurrentWeight ) {
+				selected = type;
+			}
+		}
+		if( selected != null ) {
+			selected.mCurrentWeight -= totalWeight;
+		}
+		return selected;
+	}
+
+	/**
+	 * Send a request, subclasses can change how a request is sent.
+	 */
+	protected void send( FactoryRequest request ) {
+		if( mManager.isBatchMode( request.getObject()
+										 .DBType() ) ) {
+			mManager.batchAsync(
+					request.getObject(),
+					request.getStatusBefore(),
+					request.getStatusAfter(),
+					this
+			);
+			return;
+		}
+		mManager.execAsync(
+				request.mFactory.create( request ),
+				request.getObject(),
+				request.getStatusBefore(),
+				request.getStatusAfter(),
+				this
+		);
+	}
+
+	@Override
+	public void onResponse( RestObject requestObject, boolean success ) {
+		if( mInFlight.remove( keyOf( requestObject ) ) == null ) {
+			return;
+		}
+		TypeQueue type = mTypes.get( requestObject.DBType() );
+		if( type != null && type.mInFlight > 0 ) {
+			type.mInFlight--;
+		}
+		if( success ) {
+			mCompleted++;
+		} else {
+			mFailed++;
+		}
+		if( !mProgressScheduled ) {
+			mProgressScheduled = true;
+			mHandler.postDelayed(
+					mPostProgress,
+					mProgressIntervalMs
+			);
+		}
+		dispatch();
+	}
+
+	private void postProgress() {
+		EventBus.getDefault()
+				.post( new SyncProgressEvent(
+						mTotal,
+						mCompleted,
+						mFailed
+				) );
+	}
+
+	private static String keyOf( RestObject object ) {
+		return object.DBType()
+					 .getName() + "#" + object.getReqId();
+	}
+
+	/**
+	 * A {@link PendingRequest} with its {@link CallFactory}.
+	 */
+	protected static final class FactoryRequest extends PendingRequest {
+		private final CallFactory mFactory;
+		/**
+		 * Time when the request has been queued, {@link SystemClock#elapsedRealtime()}.
+		 */
+		private       long        mQueuedAt;
+
+		private FactoryRequest( CallFactory factory, PendingRequest request ) {
+			super(
+					request.getObject(),
+					request.getStatusBefore()
+			);
+			mFactory = factory;
+		}
+
+		public CallFactory getFactory() {
+			return mFactory;
+		}
+	}
+
+	/**
+	 * Queue and counters of a registered type.
+	 */
+	private static final class TypeQueue {
+		private final RestObject                            mPrototype;
+		private final CallFactory                           mFactory;
+		private final int                                   mPriority;
+		private final int                                   mMaxInFlight;
+		/**
+		 * Requests waiting to be sent associated with their keys.
+		 */
+		private final LinkedHashMap<String, FactoryRequest> mQueue = new LinkedHashMap<>();
+		private       int                                   mInFlight;
+		/**
+		 * Weight of smooth weighted round robin.
+		 */
+		private       int                                   mCurrentWeight;
+		private       long                                  mDispatched;
+		private       long                                  mTotalWaitMs;
+		private       long                                  mMaxWaitMs;
+
+		private TypeQueue( RestObject prototype, @Nullable CallFactory factory, int priority, int maxInFlight ) {
+			mPrototype = prototype;
+			mFactory = factory;
+			mPriority = priority;
+			mMaxInFlight = maxInFlight;
+		}
+
+		/**
+		 * @return The first request whose request-id is not running, {@code null} if there's no one.
+		 */
+		private
+		@Nullable
+		Map.Entry<String, FactoryRequest> next( Map<String, FactoryRequest> inFlight ) {
+			//Skips at most the running requests.
+			for( Map.Entry<String, FactoryRequest> entry : mQueue.entrySet() ) {
+				if( !inFlight.containsKey( entry.getKey() ) ) {
+					return entry;
+				}
+			}
+			return null;
+		}
+
+		private void onDispatched( long waitMs ) {
+			mInFlight++;
+			mDispatched++;
+			mTotalWaitMs += waitMs;
+			mMaxWaitMs = Math.max(
+					mMaxWaitMs,
+					waitMs
+			);
+		}
+	}
+
+	/**
+	 * Queue depth and wait time of a type.
+	 */
+	public static final class QueueStats {
+		private final int  mQueueDepth;
+		private final int  mInFlight;
+		private final long mAverageWaitMs;
+		private final long mMaxWaitMs;
+		private final long mOldestWaitMs;
+
+		private QueueStats( int queueDepth, int inFlight, long averageWaitMs, long maxWaitMs, long oldestWaitMs ) {
+			mQueueDepth = queueDepth;
+			mInFlight = inFlight;
+			mAverageWaitMs = averageWaitMs;
+			mMaxWaitMs = maxWaitMs;
+			mOldestWaitMs = oldestWaitMs;
+		}
+
+		/**
+		 * @return Count of requests waiting to be sent.
+		 */
+		public int getQueueDepth() {
+			return mQueueDepth;
+		}
+
+		/**
+		 * @return Count of running requests.
+		 */
+		public int getInFlight() {
+			return mInFlight;
+		}
+
+		/**
+		 * @return Average time that sent requests have waited in queue.
+		 */
+		public long getAverageWaitMs() {
+			return mAverageWaitMs;
+		}
+
+		/**
+		 * @return Max time that a sent request has waited in queue.
+		 */
+		public long getMaxWaitMs() {
+			return mMaxWaitMs;
+		}
+
+		/**
+		 * @return Time that the oldest request in queue has waited, 0 if the queue is empty.
+		 */
+		public long getOldestWaitMs() {
+			return mOldestWaitMs;
+		}
+	}
+}
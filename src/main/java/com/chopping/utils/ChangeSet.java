@@ -0,0 +1,318 @@
+package com.chopping.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.realm.DynamicRealmObject;
+import io.realm.RealmObject;
+
+/**
+ * Incremental changes between two {@link Snapshot}s of a list of database items, i.e. for {@code
+ * RecyclerView.Adapter#notifyItemRange*}.
+ * <p/>
+ * Items are identified by {@link Identity#keyOf(RealmObject)}, an item whose {@link Identity#fingerprintOf(RealmObject)}
+ * differs has changed. Apply {@link #getRemoved()} in given order(positions of old list, from end to begin), then
+ * {@link #getInserted()}(positions of new list) and {@link #getChanged()}(positions of new list). When items have been
+ * moved the changes can not be expressed by ranges, then {@link #isReload()} is {@code true}.
+ *
+ * @author Xinyue Zhao
+ */
+public final class ChangeSet {
+	/**
+	 * Identity of database items, default uses "reqId" as key and "status", "reqTime" as fingerprint.
+	 */
+	public interface Identity {
+		String keyOf( RealmObject item );
+
+		long fingerprintOf( RealmObject item );
+	}
+
+	public static final Identity DEFAULT_IDENTITY = new Identity() {
+		@Override
+		public String keyOf( RealmObject item ) {
+			return new DynamicRealmObject( item ).getString( "reqId" );
+		}
+
+		@Override
+		public long fingerprintOf( RealmObject item ) {
+			DynamicRealmObject dynamic = new DynamicRealmObject( item );
+			return dynamic.getLong( "reqTime" ) * 31 + dynamic.getInt( "status" );
+		}
+	};
+
+	/**
+	 * Keys and fingerprints of a list at a moment.
+	 */
+	public static final class Snapshot {
+		private final String[] mKeys;
+		private final long[]   mFingerprints;
+
+		private Snapshot( String[] keys, long[] fingerprints ) {
+			mKeys = keys;
+			mFingerprints = fingerprints;
+		}
+
+		/**
+		 * @param items
+		 * 		The list of database items, i.e. a {@link io.realm.RealmResults}.
+		 * @param identity
+		 * 		The {@link Identity} of items.
+		 *
+		 * @return The {@link Snapshot} of {@code items}.
+		 */
+		public static Snapshot of( List<? extends RealmObject> items, Identity identity ) {
+			int      size         = items.size();
+			String[] keys         = new String[ size ];
+			long[]   fingerprints = new long[ size ];
+			for( int i = 0; i < size; i++ ) {
+				RealmObject item = items.get( i );
+				keys[ i ] = identity.keyOf( item );
+				fingerprints[ i ] = identity.fingerprintOf( item );
+			}
+			return new Snapshot(
+					keys,
+					fingerprints
+			);
+		}
+
+		/**
+		 * @return The {@link Snapshot} of lists one after another, i.e. pages.
+		 */
+		public static Snapshot concat( List<Snapshot> snapshots ) {
+			int size = 0;
+			for( Snapshot snapshot : snapshots ) {
+				size += snapshot.size();
+			}
+			String[] keys         = new String[ size ];
+			long[]   fingerprints = new long[ size ];
+			int      position     = 0;
+			for( Snapshot snapshot : snapshots ) {
+				System.arraycopy(
+						snapshot.mKeys,
+						0,
+						keys,
+						position,
+						snapshot.size()
+				);
+				System.arraycopy(
+						snapshot.mFingerprints,
+						0,
+						fingerprints,
+						position,
+						snapshot.size()
+				);
+				position += snapshot.size();
+			}
+			return new Snapshot(
+					keys,
+					fingerprints
+			);
+		}
+
+		public int size() {
+			return mKeys.length;
+		}
+	}
+
+	/**
+	 * A range of positions.
+	 */
+	public static final class Range {
+		private final int mStart;
+		private final int mCount;
+
+		private Range( int start, int count ) {
+			mStart = start;
+			mCount = count;
+		}
+
+		public int getStart() {
+			return mStart;
+		}
+
+		public int getCount() {
+			return mCount;
+		}
+	}
+
+	private static final ChangeSet RELOAD = new ChangeSet(
+			true,
+			Collections.<Range>emptyList(),
+			Collections.<Range>emptyList(),
+			Collections.<Range>emptyList()
+	);
+
+	private final boolean     mReload;
+	private final List<Range> mRemoved;
+	private final List<Range> mInserted;
+	private final List<Range> mChanged;
+
+	private ChangeSet( boolean reload, List<Range> removed, List<Range> inserted, List<Range> changed ) {
+		mReload = reload;
+		mRemoved = removed;
+		mInserted = inserted;
+		mChanged = changed;
+	}
+
+	/**
+	 * @return A {@link ChangeSet} that tells to rebuild the whole list.
+	 */
+	public static ChangeSet reload() {
+		return RELOAD;
+	}
+
+	/**
+	 * @return A {@link ChangeSet} of {@code count} items inserted at {@code start}, i.e. a page that has been appended.
+	 */
+	public static ChangeSet inserted( int start, int count ) {
+		return new ChangeSet(
+				false,
+				Collections.<Range>emptyList(),
+				Collections.singletonList( new Range(
+						start,
+						count
+				) ),
+				Collections.<Range>emptyList()
+		);
+	}
+
+	/**
+	 * @return A {@link ChangeSet} of {@code count} items changed at {@code start}, i.e. placeholders of a page that has
+	 * been loaded.
+	 */
+	public static ChangeSet changed( int start, int count ) {
+		return new ChangeSet(
+				false,
+				Collections.<Range>emptyList(),
+				Collections.<Range>emptyList(),
+				Collections.singletonList( new Range(
+						start,
+						count
+				) )
+		);
+	}
+
+	/**
+	 * Compute changes from {@code before} to {@code after}.
+	 */
+	public static ChangeSet diff( Snapshot before, Snapshot after ) {
+		Map<String, Integer> afterPositions = new HashMap<>( after.size() * 2 );
+		for( int i = 0; i < after.size(); i++ ) {
+			if( afterPositions.put(
+					after.mKeys[ i ],
+					i
+			) != null ) {
+				//DUPLICATED KEYS, NO IDENTITY.
+				return RELOAD;
+			}
+		}
+		RangeBuilder removed   = new RangeBuilder();
+		RangeBuilder changed   = new RangeBuilder();
+		boolean[]    kept      = new boolean[ after.size() ];
+		int          lastAfter = -1;
+		for( int i = 0; i < before.size(); i++ ) {
+			Integer position = afterPositions.get( before.mKeys[ i ] );
+			if( position == null ) {
+				removed.add( i );
+				continue;
+			}
+			if( position < lastAfter ) {
+				//MOVED.
+				return RELOAD;
+			}
+			lastAfter = position;
+			kept[ position ] = true;
+			if( before.mFingerprints[ i ] != after.mFingerprints[ position ] ) {
+				changed.add( position );
+			}
+		}
+		RangeBuilder inserted = new RangeBuilder();
+		for( int i = 0; i < after.size(); i++ ) {
+			if( !kept[ i ] ) {
+				inserted.add( i );
+			}
+		}
+		List<Range> removedRanges = removed.build();
+		//From end to begin, positions of former ranges are still valid.
+		Collections.reverse( removedRanges );
+		return new ChangeSet(
+				false,
+				removedRanges,
+				inserted.build(),
+				//Kept items are not moved, positions of changes are ascending.
+				changed.build()
+		);
+	}
+
+	/**
+	 * @return {@code true} if the whole list should be rebuilt.
+	 */
+	public boolean isReload() {
+		return mReload;
+	}
+
+	/**
+	 * @return {@code true} if nothing has changed.
+	 */
+	public boolean isEmpty() {
+		return !mReload && mRemoved.isEmpty() && mInserted.isEmpty() && mChanged.isEmpty();
+	}
+
+	/**
+	 * @return Removed ranges in positions of old list, from end to begin.
+	 */
+	public List<Range> getRemoved() {
+		return mRemoved;
+	}
+
+	/**
+	 * @return Inserted ranges in positions of new list, from begin to end.
+	 */
+	public List<Range> getInserted() {
+		return mInserted;
+	}
+
+	/**
+	 * @return Changed ranges in positions of new list, from begin to end.
+	 */
+	public List<Range> getChanged() {
+		return mChanged;
+	}
+
+	/**
+	 * Merges ascending positions into ranges.
+	 */
+	private static final class RangeBuilder {
+		private final List<Range> mRanges = new ArrayList<>();
+		private       int         mStart  = -1;
+		private       int         mCount;
+
+		private void add( int position ) {
+			if( mStart >= 0 && position == mStart + mCount ) {
+				mCount++;
+				return;
+			}
+			flush();
+			mStart = position;
+			mCount = 1;
+		}
+
+		private void flush() {
+			if( mStart >= 0 ) {
+				mRanges.add( new Range(
+						mStart,
+						mCount
+				) );
+			}
+		}
+
+		private List<Range> build() {
+			flush();
+			mStart = -1;
+			return mRanges;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.chopping.utils;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Merges requests of UI updates into at most one update per frame, i.e. change notifications of database during bulk
+ * writes. The update is run on next frame by {@link Choreographer}, below API 16 a {@link Handler} with a frame time
+ * is used.
+ * <p/>
+ * Use it on main thread.
+ *
+ * @author Xinyue Zhao
+ */
+public final class FrameCoalescer {
+	/**
+	 * Frame time when there's no {@link Choreographer}.
+	 */
+	private static final long FRAME_MS = 16;
+
+	private final Runnable mUpdate;
+	private final long     mMinIntervalMs;
+	private final Handler  mHandler = new Handler( Looper.getMainLooper() );
+	private final Runnable mRun     = new Runnable() {
+		@Override
+		public void run() {
+			dispatch();
+		}
+	};
+	private FrameCallback mFrameCallback;
+	private boolean       mScheduled;
+	private long          mLastDispatchMs;
+	/**
+	 * Count of requests that have been merged into others.
+	 */
+	private long          mMerged;
+	/**
+	 * Count of updates that have been run.
+	 */
+	private long          mDispatched;
+
+	/**
+	 * Constructor of {@link FrameCoalescer}
+	 *
+	 * @param update
+	 * 		The UI update.
+	 * @param minIntervalMs
+	 * 		Min time between two updates, 0 for one update per frame.
+	 */
+	public FrameCoalescer( Runnable update, long minIntervalMs ) {
+		mUpdate = update;
+		mMinIntervalMs = minIntervalMs;
+	}
+
+	/**
+	 * Request an update, it is merged into a scheduled one.
+	 */
+	public void request() {
+		if( mScheduled ) {
+			mMerged++;
+			return;
+		}
+		mScheduled = true;
+		long delay = Math.max(
+				0,
+				mLastDispatchMs + mMinIntervalMs - SystemClock.uptimeMillis()
+		);
+		if( Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ) {
+			if( mFrameCallback == null ) {
+				mFrameCallback = new FrameCallback( this );
+			}
+			mFrameCallback.post( delay );
+		} else {
+			mHandler.postDelayed(
+					mRun,
+					Math.max(
+							delay,
+							FRAME_MS
+					)
+			);
+		}
+	}
+
+	/**
+	 * Drop a scheduled update.
+	 */
+	public void cancel() {
+		if( !mScheduled ) {
+			return;
+		}
+		mScheduled = false;
+		if( mFrameCallback != null ) {
+			mFrameCallback.remove();
+		}
+		mHandler.removeCallbacks( mRun );
+	}
+
+	/**
+	 * @return Count of requests that have been merged into others.
+	 */
+	public long getMerged() {
+		return mMerged;
+	}
+
+	/**
+	 * @return Count of updates that have been run.
+	 */
+	public long getDispatched() {
+		return mDispatched;
+	}
+
+	/**
+	 * Run the scheduled update, called on next frame.
+	 */
+	void dispatch() {
+		if( !mScheduled ) {
+			return;
+		}
+		mScheduled = false;
+		mLastDispatchMs = SystemClock.uptimeMillis();
+		mDispatched++;
+		mUpdate.run();
+	}
+
+	/**
+	 * {@link Choreographer.FrameCallback}, it's loaded only from API 16.
+	 */
+	@TargetApi( Build.VERSION_CODES.JELLY_BEAN )
+	private static final class FrameCallback implements Choreographer.FrameCallback {
+		private final FrameCoalescer mCoalescer;
+
+		private FrameCallback( FrameCoalescer coalescer ) {
+			mCoalescer = coalescer;
+		}
+
+		private void post( long delayMs ) {
+			if( delayMs > 0 ) {
+				Choreographer.getInstance()
+							 .postFrameCallbackDelayed(
+									 this,
+									 delayMs
+							 );
+			} else {
+				Choreographer.getInstance()
+							 .postFrameCallback( this );
+			}
+		}
+
+		private void remove() {
+			Choreographer.getInstance()
+						 .removeFrameCallback( this );
+		}
+
+		@Override
+		public void doFrame( long frameTimeNanos ) {
+			mCoalescer.dispatch();
+		}
+	}
+}
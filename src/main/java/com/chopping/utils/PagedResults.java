@@ -0,0 +1,679 @@
+package com.chopping.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import com.chopping.application.LL;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.realm.DynamicRealmObject;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmObject;
+import io.realm.RealmQuery;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Pages of database items sorted by "reqTime" descending, a replacement of a whole live {@link RealmResults} for large
+ * tables.
+ * <p/>
+ * Pages are loaded on a background thread by a keyset query("reqTime" not newer than the last item of the page before)
+ * whose scan stops after the page, and copied out of database, so views bind against detached items. The next page is
+ * loaded when an item within the prefetch distance of the end is accessed. Pages that are far from the accessed one are
+ * released, they are loaded again on access and {@link #get(int)} returns {@code null} as placeholder meanwhile.
+ * <p/>
+ * Items are not live, call {@link #invalidate()} when the database has changed, the reloaded pages are diffed against
+ * the former ones. Keys and fingerprints of all loaded items are kept for it, also of released pages.
+ *
+ * @author Xinyue Zhao
+ */
+public final class PagedResults extends AbstractList<RealmObject> {
+	private static final String REQ_TIME = "reqTime";
+	private static final String REQ_ID   = "reqId";
+
+	private static final ExecutorService sLoader = Executors.newSingleThreadExecutor();
+
+	/**
+	 * Creates the query of items, i.e. with the filters of {@link com.chopping.activities.RestfulActivity#buildQuery(RealmQuery)}.
+	 * It is called on a background thread.
+	 */
+	public interface QueryFactory {
+		RealmQuery<? extends RealmObject> create( Realm realm );
+	}
+
+	/**
+	 * Callback when pages have been loaded, called on main thread.
+	 */
+	public interface OnPagesChangedListener {
+		/**
+		 * @param changes
+		 * 		The {@link ChangeSet}: a page that has been appended, a released page that has been loaded again in place of
+		 * 		its placeholders, or changes of all pages after {@link #invalidate()}.
+		 */
+		void onPagesChanged( ChangeSet changes );
+	}
+
+	/**
+	 * Where a page starts: items that are not newer than {@code mReqTime}, except those of {@code mReqTime} that have
+	 * been on pages before.
+	 */
+	static final class Cursor {
+		static final Cursor FIRST = new Cursor(
+				Long.MAX_VALUE,
+				Collections.<String>emptySet()
+		);
+
+		private final long        mReqTime;
+		private final Set<String> mSeen;
+
+		private Cursor( long reqTime, Set<String> seen ) {
+			mReqTime = reqTime;
+			mSeen = seen;
+		}
+	}
+
+	/**
+	 * Splits items sorted by "reqTime" descending into pages, the first page starts at a {@link Cursor}.
+	 */
+	static class Keyset {
+		private final List<? extends RealmObject> mSorted;
+		private final Cursor                      mFrom;
+		private       Cursor                      mStart;
+		private       int                         mPosition;
+
+		/**
+		 * @param sorted
+		 * 		Items sorted by "reqTime" descending, none is newer than {@code from}.
+		 * @param from
+		 * 		Where the first page starts.
+		 */
+		Keyset( List<? extends RealmObject> sorted, Cursor from ) {
+			mSorted = sorted;
+			mFrom = from;
+			mStart = from;
+		}
+
+		/**
+		 * Items of next page, the scan of sorted items stops after the page.
+		 *
+		 * @return At most {@code pageSize} items, not full if the sorted items have been passed.
+		 */
+		List<RealmObject> nextPage( int pageSize ) {
+			List<RealmObject> items = new ArrayList<>( pageSize );
+			long              last  = mStart.mReqTime;
+			Set<String>       seen  = new HashSet<>( mStart.mSeen );
+			for( int size = mSorted.size(); mPosition < size && items.size() < pageSize; mPosition++ ) {
+				RealmObject item    = mSorted.get( mPosition );
+				long        reqTime = reqTimeOf( item );
+				String      reqId   = reqIdOf( item );
+				if( reqTime == mFrom.mReqTime && mFrom.mSeen.contains( reqId ) ) {
+					continue;
+				}
+				if( reqTime != last ) {
+					last = reqTime;
+					seen.clear();
+				}
+				seen.add( reqId );
+				items.add( item );
+			}
+			mStart = items.isEmpty() ? null : new Cursor(
+					last,
+					seen
+			);
+			return items;
+		}
+
+		/**
+		 * @return Where the page after the last read one starts, {@code null} if that page is empty.
+		 */
+		@Nullable
+		Cursor getNext() {
+			return mStart;
+		}
+
+		long reqTimeOf( RealmObject item ) {
+			return new DynamicRealmObject( item ).getLong( REQ_TIME );
+		}
+
+		String reqIdOf( RealmObject item ) {
+			return new DynamicRealmObject( item ).getString( REQ_ID );
+		}
+	}
+
+	/**
+	 * A page that has been read on loader thread.
+	 */
+	private static final class Page {
+		/**
+		 * Copied items, {@code null} if the page is not kept in memory.
+		 */
+		private final List<RealmObject>  mItems;
+		private final ChangeSet.Snapshot mSnapshot;
+		/**
+		 * Where the page after starts, {@code null} if the page is empty.
+		 */
+		private final Cursor             mNext;
+
+		private Page( @Nullable List<RealmObject> items, ChangeSet.Snapshot snapshot, @Nullable Cursor next ) {
+			mItems = items;
+			mSnapshot = snapshot;
+			mNext = next;
+		}
+
+		private boolean isFull( int pageSize ) {
+			return mSnapshot.size() == pageSize;
+		}
+	}
+
+	/**
+	 * A read of pages on loader thread, its result is delivered on main thread while it is still wanted.
+	 */
+	private abstract class Load implements Runnable {
+		private final int mGeneration = PagedResults.this.mGeneration;
+
+		/**
+		 * Read pages, run on loader thread.
+		 */
+		abstract void load( Realm realm );
+
+		/**
+		 * Apply the read pages, run on main thread.
+		 */
+		abstract void deliver();
+
+		/**
+		 * The read has failed, run on main thread.
+		 */
+		abstract void fail();
+
+		/**
+		 * @return {@code true} if the result should be applied, default is {@code true} unless pages have been invalidated
+		 * since the read has been started.
+		 */
+		boolean isWanted() {
+			return mGeneration == PagedResults.this.mGeneration;
+		}
+
+		@Override
+		public final void run() {
+			boolean loaded = false;
+			Realm   realm  = null;
+			try {
+				realm = Realm.getInstance( mConfig );
+				load( realm );
+				loaded = true;
+			} catch( RuntimeException e ) {
+				LL.e( "PagedResults: " + e.toString() );
+			} finally {
+				if( realm != null ) {
+					realm.close();
+				}
+			}
+			final boolean success = loaded;
+			mHandler.post( new Runnable() {
+				@Override
+				public void run() {
+					if( !isWanted() ) {
+						return;
+					}
+					if( success ) {
+						deliver();
+					} else {
+						fail();
+					}
+				}
+			} );
+		}
+	}
+
+	private final RealmConfiguration mConfig;
+	private final QueryFactory       mQueryFactory;
+	private final ChangeSet.Identity mIdentity;
+	private final int                mPageSize;
+	private final int                mPrefetchDistance;
+	private final int                mKeptPages;
+	private final Handler mHandler = new Handler( Looper.getMainLooper() );
+	/**
+	 * Items of pages, {@code null} for released pages.
+	 */
+	private final List<List<RealmObject>>  mPages        = new ArrayList<>();
+	/**
+	 * Keys and fingerprints of items of every page, also of released ones.
+	 */
+	private final List<ChangeSet.Snapshot> mSnapshots    = new ArrayList<>();
+	/**
+	 * Start of every page and the page after the last one.
+	 */
+	private final List<Cursor>             mCursors      = new ArrayList<>();
+	/**
+	 * Released pages that are being loaded again.
+	 */
+	private final Set<Integer>             mLoadingPages = new HashSet<>();
+	/**
+	 * Released pages whose placeholders have been returned by {@link #get(int)}.
+	 */
+	private final Set<Integer>             mPlaceholders = new HashSet<>();
+	private       int                      mSize;
+	private       boolean                  mHasMore;
+	private       boolean                  mLoaded;
+	/**
+	 * {@code true} while the next page is being loaded.
+	 */
+	private       boolean                  mLoading;
+	/**
+	 * {@code true} while all pages are being loaded again.
+	 */
+	private       boolean                  mReloading;
+	/**
+	 * {@code true} if pages have been invalidated again while they are being loaded again.
+	 */
+	private       boolean                  mReloadAgain;
+	private       boolean                  mClosed;
+	/**
+	 * Incremented by {@link #invalidate()}, loads of a former generation are dropped.
+	 */
+	private       int                      mGeneration;
+	private       int                      mCurrentPage;
+	private @Nullable OnPagesChangedListener mListener;
+
+	/**
+	 * @param realm
+	 * 		The opened {@link Realm} of the calling thread, pages are read by other instances of its configuration.
+	 * @param queryFactory
+	 * 		Creates the query of items.
+	 * @param identity
+	 * 		The {@link ChangeSet.Identity} of items.
+	 * @param pageSize
+	 * 		Count of items of a page.
+	 * @param prefetchDistance
+	 * 		Count of items to the end when next page is loaded.
+	 * @param keptPages
+	 * 		Count of pages before and after the accessed page that are kept in memory.
+	 */
+	public PagedResults( Realm realm, QueryFactory queryFactory, ChangeSet.Identity identity, int pageSize, int prefetchDistance,
+			int keptPages ) {
+		if( pageSize <= 0 ) {
+			throw new IllegalArgumentException( "pageSize must be positive." );
+		}
+		mConfig = realm.getConfiguration();
+		mQueryFactory = queryFactory;
+		mIdentity = identity;
+		mPageSize = pageSize;
+		mPrefetchDistance = Math.max(
+				0,
+				prefetchDistance
+		);
+		mKeptPages = Math.max(
+				0,
+				keptPages
+		);
+		mCursors.add( Cursor.FIRST );
+		mHasMore = true;
+		loadNext();
+	}
+
+	public void setOnPagesChangedListener( @Nullable OnPagesChangedListener listener ) {
+		mListener = listener;
+	}
+
+	/**
+	 * @return Count of items of loaded pages, it grows while the end is accessed.
+	 */
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * @return The item at {@code location}, {@code null} as placeholder while its page is being loaded again, the
+	 * listener is called when the page is there.
+	 */
+	@Override
+	public
+	@Nullable
+	RealmObject get( int location ) {
+		if( location < 0 || location >= mSize ) {
+			throw new IndexOutOfBoundsException( "Invalid index " + location + ", size is " + mSize );
+		}
+		int page = location / mPageSize;
+		if( page != mCurrentPage ) {
+			mCurrentPage = page;
+			releaseFarPages();
+		}
+		List<RealmObject> items = mPages.get( page );
+		if( items == null ) {
+			mPlaceholders.add( page );
+			loadPage( page );
+			return null;
+		}
+		if( location >= mSize - 1 - mPrefetchDistance ) {
+			//Async, it is safe while views are being bound.
+			loadNext();
+		}
+		return items.get( location % mPageSize );
+	}
+
+	/**
+	 * @return {@code true} if the first page has been loaded.
+	 */
+	public boolean isLoaded() {
+		return mLoaded;
+	}
+
+	/**
+	 * @return {@code true} if there are items after loaded pages.
+	 */
+	public boolean hasMore() {
+		return mHasMore;
+	}
+
+	/**
+	 * @return Count of pages that are in memory.
+	 */
+	public int getLoadedPageCount() {
+		int count = 0;
+		for( List<RealmObject> page : mPages ) {
+			if( page != null ) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Load the page after loaded pages on background thread, the listener is called when it has items.
+	 */
+	public void loadNext() {
+		if( !mHasMore || mLoading || mReloading || mClosed ) {
+			return;
+		}
+		mLoading = true;
+		final Cursor from = mCursors.get( mPages.size() );
+		sLoader.execute( new Load() {
+			private Page mPage;
+
+			@Override
+			void load( Realm realm ) {
+				mPage = read(
+						realm,
+						from,
+						1,
+						0,
+						0
+				).get( 0 );
+			}
+
+			@Override
+			void deliver() {
+				mLoading = false;
+				mLoaded = true;
+				mHasMore = mPage.isFull( mPageSize );
+				if( mPage.mNext == null ) {
+					return;
+				}
+				int start = mSize;
+				add( mPage );
+				releaseFarPages();
+				notifyChanged( ChangeSet.inserted(
+						start,
+						mPage.mSnapshot.size()
+				) );
+			}
+
+			@Override
+			void fail() {
+				mLoading = false;
+			}
+		} );
+	}
+
+	/**
+	 * Load a released page again on background thread.
+	 */
+	private void loadPage( final int page ) {
+		if( mReloading || mClosed || !mLoadingPages.add( page ) ) {
+			return;
+		}
+		final Cursor from = mCursors.get( page );
+		sLoader.execute( new Load() {
+			private Page mPage;
+
+			@Override
+			void load( Realm realm ) {
+				mPage = read(
+						realm,
+						from,
+						1,
+						0,
+						0
+				).get( 0 );
+			}
+
+			@Override
+			void deliver() {
+				mLoadingPages.remove( page );
+				if( mPages.get( page ) != null ) {
+					return;
+				}
+				if( !ChangeSet.diff(
+						mSnapshots.get( page ),
+						mPage.mSnapshot
+				)
+							  .isEmpty() ) {
+					//CHANGED AFTER LAST INVALIDATE(), THE PAGE DOESN'T FIT, RELOAD ALL.
+					invalidate();
+					return;
+				}
+				mPages.set(
+						page,
+						mPage.mItems
+				);
+				releaseFarPages();
+				if( mPlaceholders.remove( page ) ) {
+					notifyChanged( ChangeSet.changed(
+							page * mPageSize,
+							mPage.mSnapshot.size()
+					) );
+				}
+			}
+
+			@Override
+			void fail() {
+				mLoadingPages.remove( page );
+			}
+		} );
+	}
+
+	/**
+	 * Load the pages again on background thread after changes of database, count of pages is kept and the end may be
+	 * moved. Until the listener is called the former pages stay.
+	 */
+	public void invalidate() {
+		if( mClosed ) {
+			return;
+		}
+		//Loads of former pages don't fit anymore.
+		mGeneration++;
+		mLoading = false;
+		mLoadingPages.clear();
+		if( mReloading ) {
+			mReloadAgain = true;
+			return;
+		}
+		mReloading = true;
+		final int pages     = Math.max(
+				1,
+				mPages.size()
+		);
+		final int keptStart = mCurrentPage - mKeptPages;
+		final int keptEnd   = mCurrentPage + mKeptPages;
+		sLoader.execute( new Load() {
+			private List<Page> mRead;
+
+			@Override
+			boolean isWanted() {
+				//A reload is never dropped, changes meanwhile cause another one.
+				return !mClosed;
+			}
+
+			@Override
+			void load( Realm realm ) {
+				mRead = read(
+						realm,
+						Cursor.FIRST,
+						pages,
+						keptStart,
+						keptEnd
+				);
+			}
+
+			@Override
+			void deliver() {
+				List<ChangeSet.Snapshot> before = new ArrayList<>( mSnapshots );
+				mPages.clear();
+				mSnapshots.clear();
+				mCursors.clear();
+				mCursors.add( Cursor.FIRST );
+				mSize = 0;
+				mHasMore = true;
+				for( Page page : mRead ) {
+					mHasMore = page.isFull( mPageSize );
+					if( page.mNext == null ) {
+						break;
+					}
+					add( page );
+				}
+				if( mCurrentPage >= mPages.size() ) {
+					mCurrentPage = Math.max(
+							0,
+							mPages.size() - 1
+					);
+				}
+				releaseFarPages();
+				mLoaded = true;
+				ChangeSet changes;
+				if( mPlaceholders.isEmpty() ) {
+					changes = ChangeSet.diff(
+							ChangeSet.Snapshot.concat( before ),
+							ChangeSet.Snapshot.concat( mSnapshots )
+					);
+				} else {
+					//Placeholders of pages that have not been loaded again must be bound again.
+					mPlaceholders.clear();
+					changes = ChangeSet.reload();
+				}
+				onReloaded();
+				if( !changes.isEmpty() ) {
+					notifyChanged( changes );
+				}
+			}
+
+			@Override
+			void fail() {
+				onReloaded();
+			}
+		} );
+	}
+
+	private void onReloaded() {
+		mReloading = false;
+		if( mReloadAgain ) {
+			mReloadAgain = false;
+			invalidate();
+		}
+	}
+
+	/**
+	 * Stop pending loads, call it when views are destroyed.
+	 */
+	public void close() {
+		mClosed = true;
+		mGeneration++;
+		mListener = null;
+	}
+
+	private void add( Page page ) {
+		mPages.add( page.mItems );
+		mSnapshots.add( page.mSnapshot );
+		mCursors.add( page.mNext );
+		mSize += page.mSnapshot.size();
+	}
+
+	private void releaseFarPages() {
+		for( int i = 0; i < mPages.size(); i++ ) {
+			if( Math.abs( i - mCurrentPage ) > mKeptPages ) {
+				mPages.set(
+						i,
+						null
+				);
+			}
+		}
+	}
+
+	private void notifyChanged( ChangeSet changes ) {
+		if( mListener != null ) {
+			mListener.onPagesChanged( changes );
+		}
+	}
+
+	/**
+	 * Read pages one after another, run on loader thread. The scan of sorted items stops after the last page.
+	 *
+	 * @param from
+	 * 		Where the first page starts.
+	 * @param count
+	 * 		Max count of pages, reading stops after a page that is not full.
+	 * @param keptStart
+	 * 		Index(from 0 of read pages) of first page whose items are copied, pages out of {@code keptStart} and {@code
+	 * 		keptEnd} are released.
+	 * @param keptEnd
+	 * 		Index of last page whose items are copied.
+	 *
+	 * @return Read pages, at least one.
+	 */
+	private List<Page> read( Realm realm, Cursor from, int count, int keptStart, int keptEnd ) {
+		RealmQuery<? extends RealmObject> q = mQueryFactory.create( realm );
+		if( from.mReqTime != Long.MAX_VALUE ) {
+			q.lessThanOrEqualTo(
+					REQ_TIME,
+					from.mReqTime
+			);
+		}
+		RealmResults<? extends RealmObject> results = q.findAllSorted(
+				REQ_TIME,
+				Sort.DESCENDING
+		);
+		List<Page> pages  = new ArrayList<>( count );
+		Keyset     keyset = new Keyset(
+				results,
+				from
+		);
+		while( pages.size() < count ) {
+			List<RealmObject> items = keyset.nextPage( mPageSize );
+			boolean           kept  = pages.size() >= keptStart && pages.size() <= keptEnd;
+			Page page = new Page(
+					kept ? realm.copyFromRealm( items ) : null,
+					ChangeSet.Snapshot.of(
+							items,
+							mIdentity
+					),
+					keyset.getNext()
+			);
+			pages.add( page );
+			if( !page.isFull( mPageSize ) ) {
+				break;
+			}
+		}
+		return pages;
+	}
+}
@@ -0,0 +1,186 @@
+package com.chopping.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.chopping.application.LL;
+import com.chopping.rest.RestWriter;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmMigration;
+
+/**
+ * Opt-in maintenance of the default database, see {@link RestUtils#initRest(android.app.Application, boolean,
+ * RealmMaintenance)}.
+ * <p/>
+ * The database file keeps free space and old versions, it grows to many times the size of its live data. The ratio of
+ * file size to live data size is checked at startup and when main thread is idle, the file is compacted when the ratio
+ * reaches a threshold. Compaction needs all {@link Realm} instances closed, it is skipped while any is open, i.e. by
+ * an {@link android.app.Activity}, and tried again at next idle check.
+ *
+ * @author Xinyue Zhao
+ */
+public final class RealmMaintenance {
+	private static final long CLOSE_WRITER_TIMEOUT_MS = 5000;
+
+	private final long           mSchemaVersion;
+	private final RealmMigration mMigration;
+	private final float          mCompactRatio;
+	private final long           mMinFileBytes;
+	private final long           mIdleIntervalMs;
+	private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+	private final AtomicBoolean   mChecking = new AtomicBoolean();
+	private RealmConfiguration mConfig;
+	/**
+	 * Time of last check, only touched on main thread.
+	 */
+	private long               mLastCheck;
+	/**
+	 * File size of last check that needed no compaction, only touched on background thread.
+	 */
+	private long               mCheckedFileBytes;
+	/**
+	 * {@code true} if a compaction has been postponed by open instances, only touched on background thread.
+	 */
+	private boolean            mCompactionDue;
+
+	private final Runnable mCheck = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				check();
+			} catch( RuntimeException e ) {
+				LL.e( "RealmMaintenance: " + e.toString() );
+			} finally {
+				mChecking.set( false );
+			}
+		}
+	};
+
+	private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+		@Override
+		public boolean queueIdle() {
+			long now = SystemClock.elapsedRealtime();
+			if( now - mLastCheck >= mIdleIntervalMs ) {
+				mLastCheck = now;
+				checkAsync();
+			}
+			//Keep it.
+			return true;
+		}
+	};
+
+	/**
+	 * Constructor of {@link RealmMaintenance}
+	 *
+	 * @param schemaVersion
+	 * 		Schema version of the database.
+	 * @param migration
+	 * 		{@link RealmMigration} to {@code schemaVersion}, can be {@code null} when schema has never changed.
+	 * @param compactRatio
+	 * 		Ratio of file size to live data size that causes a compaction, i.e. 2.
+	 * @param minFileBytes
+	 * 		Files that are smaller are never checked, a check writes a copy of live data.
+	 * @param idleIntervalMs
+	 * 		Min time between two checks when main thread is idle, 0 checks only at startup.
+	 */
+	public RealmMaintenance( long schemaVersion, @Nullable RealmMigration migration, float compactRatio, long minFileBytes,
+			long idleIntervalMs ) {
+		if( compactRatio <= 1 ) {
+			throw new IllegalArgumentException( "compactRatio must be greater than 1." );
+		}
+		mSchemaVersion = schemaVersion;
+		mMigration = migration;
+		mCompactRatio = compactRatio;
+		mMinFileBytes = minFileBytes;
+		mIdleIntervalMs = idleIntervalMs;
+	}
+
+	/**
+	 * Apply schema of maintenance to the configuration of database.
+	 */
+	void configure( RealmConfiguration.Builder builder ) {
+		builder.schemaVersion( mSchemaVersion );
+		if( mMigration != null ) {
+			builder.migration( mMigration );
+		}
+	}
+
+	/**
+	 * Check at once and later when main thread is idle.
+	 */
+	void start( RealmConfiguration config ) {
+		mConfig = config;
+		checkAsync();
+		if( mIdleIntervalMs > 0 ) {
+			new Handler( Looper.getMainLooper() ).post( new Runnable() {
+				@Override
+				public void run() {
+					mLastCheck = SystemClock.elapsedRealtime();
+					Looper.myQueue()
+						  .addIdleHandler( mIdleHandler );
+				}
+			} );
+		}
+	}
+
+	/**
+	 * Check the database on background thread, compact it if needed.
+	 */
+	public void checkAsync() {
+		if( mConfig != null && mChecking.compareAndSet(
+				false,
+				true
+		) ) {
+			mExecutor.execute( mCheck );
+		}
+	}
+
+	private void check() {
+		File file      = new File( mConfig.getPath() );
+		long fileBytes = file.length();
+		if( fileBytes < mMinFileBytes || fileBytes == mCheckedFileBytes ) {
+			//Too small, or unchanged since a check that needed no compaction.
+			return;
+		}
+		long start = SystemClock.elapsedRealtime();
+		if( !mCompactionDue ) {
+			long  liveBytes;
+			Realm db = Realm.getInstance( mConfig );
+			try {
+				liveBytes = RestUtils.measureLiveBytes( db );
+			} finally {
+				db.close();
+			}
+			float ratio = liveBytes <= 0 ? Float.MAX_VALUE : (float) fileBytes / liveBytes;
+			LL.d( "RealmMaintenance: file bytes: " + fileBytes + ", live bytes: " + liveBytes + ", ratio: " + ratio );
+			if( ratio < mCompactRatio ) {
+				mCheckedFileBytes = fileBytes;
+				return;
+			}
+			mCompactionDue = true;
+		}
+		//The writer holds the only long-lived instance off UI.
+		RestWriter.getInstance()
+				  .closeRealm( CLOSE_WRITER_TIMEOUT_MS );
+		int opened = Realm.getGlobalInstanceCount( mConfig );
+		if( opened > 0 ) {
+			LL.d( "RealmMaintenance: " + opened + " instances are open, compaction is postponed." );
+			return;
+		}
+		boolean compacted = Realm.compactRealm( mConfig );
+		mCompactionDue = !compacted;
+		long    after     = file.length();
+		LL.d( "RealmMaintenance: compacted: " + compacted + ", file bytes: " + fileBytes + "->" + after + ", saved: " + ( fileBytes - after ) +
+				", elapsed: " + ( SystemClock.elapsedRealtime() - start ) + "ms" );
+	}
+}
@@ -1,22 +1,37 @@
 package com.chopping.utils;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import android.app.Application;
 import android.content.Context;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 
 import com.chopping.application.LL;
 import com.chopping.rest.ExecutePending;
+import com.chopping.rest.ExecutePendingPaged;
+import com.chopping.rest.ExecutePendingRequests;
+import com.chopping.rest.PendingCoalescer;
+import com.chopping.rest.PendingPager;
+import com.chopping.rest.PendingRequest;
 import com.chopping.rest.RestObject;
+import com.chopping.rest.StatusAccessor;
+import com.chopping.rest.SyncCursor;
 
+import io.realm.DynamicRealmObject;
 import io.realm.Realm;
 import io.realm.RealmConfiguration;
 import io.realm.RealmObject;
@@ -27,6 +42,18 @@ import io.realm.Sort;
  * Utils class for Rest-package.
  */
 public final class RestUtils {
+	/**
+	 * Background thread to read pending items.
+	 */
+	private static final ExecutorService sPendingExecutor = Executors.newSingleThreadExecutor();
+	/**
+	 * All status of items that wait for sync.
+	 */
+	private static final int[]           PENDING_STATUS   = { RestObject.NOT_SYNCED , RestObject.UPDATE , RestObject.DELETE };
+	/**
+	 * Numbers of copies of {@link #measureLiveBytes(Realm)} that are being written.
+	 */
+	private static final Set<Integer>    sLiveCopies      = new HashSet<>();
 
 	/**
 	 * Helper for checking current network status.
@@ -56,29 +83,14 @@ public final class RestUtils {
 																RestObject.NOT_SYNCED
 														)
 														.findAll();
-		RealmResults<? extends RealmObject> wantDeleteResults = db.where( clazz )
-																 .equalTo(
-																		 "status",
-																		 RestObject.DELETE
-																 )
-																 .findAll();
 		db.beginTransaction();
 		notSyncedResults.clear();
-
-		List<? extends RealmObject> delRes = new ArrayList<>( wantDeleteResults );
-		for(RealmObject deleted : delRes){
-			try {
-				Class cls = Class.forName(clazz.getName());
-				Method setMethod      = cls.getMethod(  "setStatus", Integer.TYPE );
-				setMethod.invoke(
-						deleted,
-						RestObject.SYNCED
-				);
-			} catch( Exception ex ) {
-				LL.e( ex.toString() );
-			}
-			db.copyToRealmOrUpdate( deleted );
-		}
+		setStatus(
+				db,
+				clazz,
+				RestObject.DELETE,
+				RestObject.SYNCED
+		);
 		db.commitTransaction();
 
 		if( !db.isClosed() ) {
@@ -86,9 +98,106 @@ public final class RestUtils {
 		}
 	}
 
+	/**
+	 * Result of {@link #transitStatus(Class, int, int)}.
+	 */
+	public static final class StatusTransition {
+		private final int  mRows;
+		private final long mElapsedMs;
+
+		private StatusTransition( int rows, long elapsedMs ) {
+			mRows = rows;
+			mElapsedMs = elapsedMs;
+		}
+
+		/**
+		 * @return Count of objects whose status has been changed.
+		 */
+		public int getRows() {
+			return mRows;
+		}
+
+		/**
+		 * @return Time of transition in milliseconds.
+		 */
+		public long getElapsedMs() {
+			return mElapsedMs;
+		}
+	}
+
+	/**
+	 * Change status of all objects of status {@code from} to {@code to} in one transaction.
+	 *
+	 * @param clazz
+	 * 		The meta of object, implements {@link StatusAccessor} for best performance.
+	 * @param from
+	 * 		The status to change.
+	 * @param to
+	 * 		The new status.
+	 *
+	 * @return {@link StatusTransition} that reports the transition.
+	 */
+	public static StatusTransition transitStatus( Class<? extends RealmObject> clazz, int from, int to ) {
+		long  start = SystemClock.elapsedRealtime();
+		Realm db    = Realm.getDefaultInstance();
+		int   rows;
+		db.beginTransaction();
+		try {
+			rows = setStatus(
+					db,
+					clazz,
+					from,
+					to
+			);
+			db.commitTransaction();
+		} catch( RuntimeException e ) {
+			db.cancelTransaction();
+			throw e;
+		} finally {
+			if( !db.isClosed() ) {
+				db.close();
+			}
+		}
+		StatusTransition transition = new StatusTransition(
+				rows,
+				SystemClock.elapsedRealtime() - start
+		);
+		LL.d( "transitStatus: " + clazz.getSimpleName() + " " + from + "->" + to + ", rows: " + transition.getRows() + ", elapsed: " +
+				transition.getElapsedMs() + "ms" );
+		return transition;
+	}
+
+	/**
+	 * Change status of all objects of status {@code from} to {@code to}, call it in a transaction.
+	 *
+	 * @return Count of changed objects.
+	 */
+	private static int setStatus( Realm db, Class<? extends RealmObject> clazz, int from, int to ) {
+		RealmResults<? extends RealmObject> results = db.where( clazz )
+														.equalTo(
+																"status",
+																from
+														)
+														.findAll();
+		int rows = results.size();
+		//Backwards, changed objects might leave the results.
+		for( int i = rows - 1; i >= 0; i-- ) {
+			RealmObject object = results.get( i );
+			if( object instanceof StatusAccessor ) {
+				( (StatusAccessor) object ).setStatus( to );
+			} else {
+				new DynamicRealmObject( object ).setInt(
+						"status",
+						to
+				);
+			}
+		}
+		return rows;
+	}
+
 
 	/**
-	 * Delete all objects .
+	 * Delete all objects, the {@link SyncCursor} of the type is reset so that next load gets all data.
 	 *
 	 * @param clazz
 	 * 		The meta of object.
@@ -104,6 +213,49 @@ public final class RestUtils {
 		if( !db.isClosed() ) {
 			db.close();
 		}
+		SyncCursor.reset( clazz );
+	}
+
+	/**
+	 * Measure size of live data of a database: the size of a compacted copy of it, i.e. without free space and old
+	 * versions. It writes the whole database, don't call it on UI thread. Measurements that run at the same time, i.e.
+	 * of {@link RealmMaintenance} and {@link com.chopping.rest.DataRetention}, write different copies.
+	 *
+	 * @param db
+	 * 		The opened {@link Realm}.
+	 *
+	 * @return Size in bytes, or size of database file if the copy fails.
+	 */
+	public static long measureLiveBytes( Realm db ) {
+		File file = new File( db.getConfiguration()
+								.getPath() );
+		int number;
+		synchronized( sLiveCopies ) {
+			//THE LOWEST FREE NUMBER, A COPY LEFT BY A CRASH IS REPLACED NEXT TIME.
+			number = 0;
+			while( sLiveCopies.contains( number ) ) {
+				number++;
+			}
+			sLiveCopies.add( number );
+		}
+		File copy = new File( file.getPath() + ".live" + number );
+		try {
+			if( copy.exists() && !copy.delete() ) {
+				return file.length();
+			}
+			db.writeCopyTo( copy );
+			return copy.length();
+		} catch( RuntimeException e ) {
+			LL.e( "measureLiveBytes: " + e.toString() );
+			return file.length();
+		} finally {
+			if( copy.exists() && !copy.delete() ) {
+				LL.w( "measureLiveBytes: can't delete " + copy );
+			}
+			synchronized( sLiveCopies ) {
+				sLiveCopies.remove( number );
+			}
+		}
 	}
 
 	/**
@@ -115,9 +267,9 @@ public final class RestUtils {
 	 * 		Status of sync.
 	 */
 	public static void executePending( ExecutePending exp, int statusBefore ) {
+		RestObject prototype = exp.build();
 		Realm db = Realm.getDefaultInstance();
-		RealmResults<? extends RealmObject> notSyncItems = db.where( exp.build()
-																		.DBType() )
+		RealmResults<? extends RealmObject> notSyncItems = db.where( prototype.DBType() )
 															 .equalTo(
 																	 "status",
 																	 statusBefore
@@ -126,10 +278,9 @@ public final class RestUtils {
 																	 "reqTime",
 																	 Sort.ASCENDING
 															 );
-		List<RestObject> restObjects = new ArrayList<>();
+		List<RestObject> restObjects = new ArrayList<>( notSyncItems.size() );
 		for( RealmObject item : notSyncItems ) {
-			restObjects.add( exp.build()
-								.newFromDB( item ) );
+			restObjects.add( prototype.newFromDB( item ) );
 		}
 		if( !db.isClosed() ) {
 			db.close();
@@ -137,6 +288,119 @@ public final class RestUtils {
 		exp.executePending( restObjects );
 	}
 
+	/**
+	 * Help method to execute pending requests page by page on a background thread, see {@link ExecutePendingPaged}.
+	 *
+	 * @param exp
+	 * 		{@link ExecutePendingPaged} to execute pending.
+	 * @param statusBefore
+	 * 		Status of sync.
+	 */
+	public static void executePendingPaged( final ExecutePendingPaged exp, final int statusBefore ) {
+		sPendingExecutor.execute( new Runnable() {
+			@Override
+			public void run() {
+				PendingPager pager = new PendingPager(
+						exp.build(),
+						statusBefore,
+						exp.getPageSize()
+				);
+				try {
+					//The last page is always delivered, empty when nothing is pending, so that the caller can finish.
+					do {
+						List<RestObject> page = pager.next();
+						exp.executePending(
+								page,
+								!pager.hasNext()
+						);
+					} while( pager.hasNext() );
+				} finally {
+					pager.close();
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Help method to execute pending requests of all pending status on a background thread, chains of operations of
+	 * same request-id are coalesced into one net operation, see {@link PendingCoalescer}.
+	 *
+	 * @param exp
+	 * 		{@link ExecutePendingRequests} to execute pending.
+	 */
+	public static void executePendingCoalesced( final ExecutePendingRequests exp ) {
+		sPendingExecutor.execute( new Runnable() {
+			@Override
+			public void run() {
+				PendingCoalescer coalescer = PendingCoalescer.coalesce( selectPendingRequests( exp.build() ) );
+				if( !coalescer.getDropped()
+							  .isEmpty() ) {
+					RestObject.updateDBAsync(
+							coalescer.getDropped(),
+							RestObject.DELETE_SYNCED,
+							null
+					);
+				}
+				if( coalescer.getSaved() > 0 ) {
+					LL.d( "executePendingCoalesced: saved " + coalescer.getSaved() + " requests." );
+				}
+				exp.executePending( coalescer.getRequests() );
+			}
+		} );
+	}
+
+	/**
+	 * Select all pending operations({@link RestObject#NOT_SYNCED}, {@link RestObject#UPDATE}, {@link
+	 * RestObject#DELETE}) of type {@link RestObject#DBType()} of {@code prototype}.
+	 *
+	 * @param prototype
+	 * 		The {@link RestObject} that converts database items.
+	 *
+	 * @return Pending operations sorted by "reqTime".
+	 */
+	public static List<PendingRequest> selectPendingRequests( RestObject prototype ) {
+		List<PendingRequest> requests = new ArrayList<>();
+		Realm                db       = Realm.getDefaultInstance();
+		try {
+			for( int status : PENDING_STATUS ) {
+				RealmResults<? extends RealmObject> items = db.where( prototype.DBType() )
+															  .equalTo(
+																	  "status",
+																	  status
+															  )
+															  .findAll();
+				for( RealmObject item : items ) {
+					RestObject restObject = prototype.newFromDB( item );
+					if( restObject != null ) {
+						requests.add( new PendingRequest(
+								restObject,
+								status
+						) );
+					}
+				}
+			}
+		} finally {
+			if( !db.isClosed() ) {
+				db.close();
+			}
+		}
+		//Stable, operations of same time keep the order of status.
+		Collections.sort(
+				requests,
+				new Comparator<PendingRequest>() {
+					@Override
+					public int compare( PendingRequest lhs, PendingRequest rhs ) {
+						long l = lhs.getObject()
+									.getReqTime();
+						long r = rhs.getObject()
+									.getReqTime();
+						return l < r ? -1 : ( l == r ? 0 : 1 );
+					}
+				}
+		);
+		return requests;
+	}
+
 	/**
 	 * Initialize Rest-package.
 	 *
@@ -150,8 +414,38 @@ public final class RestUtils {
 	public static
 	@Nullable
 	String[] initRest( Application app, boolean useFirebase ) {
-		RealmConfiguration config = new RealmConfiguration.Builder( app ).build();
+		return initRest(
+				app,
+				useFirebase,
+				null
+		);
+	}
+
+	/**
+	 * Initialize Rest-package with maintenance of database.
+	 *
+	 * @param app
+	 * 		The {@link Application} context.
+	 * @param useFirebase
+	 * 		{@code true} if this application use Firebase.
+	 * @param maintenance
+	 * 		{@link RealmMaintenance} that gives schema version and compacts the database, {@code null} for none.
+	 *
+	 * @return An array of strings, first element is the base url to Firebase, second is auth code to it, third is last-limit of data.
+	 */
+	public static
+	@Nullable
+	String[] initRest( Application app, boolean useFirebase, @Nullable RealmMaintenance maintenance ) {
+		RealmConfiguration.Builder builder = new RealmConfiguration.Builder( app );
+		if( maintenance != null ) {
+			maintenance.configure( builder );
+		}
+		RealmConfiguration config = builder.build();
 		Realm.setDefaultConfiguration( config );
+		SyncCursor.init( app );
+		if( maintenance != null ) {
+			maintenance.start( config );
+		}
 		if( useFirebase ) {
 			Properties  prop  = new Properties();
 			InputStream input = null;
@@ -0,0 +1,43 @@
+package com.chopping.rest;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+
+/**
+ * {@link RestObject} of tests, shared by unit tests and tests on device. It is not stored, {@link #DBType()} is {@link
+ * RealmObject}, subclasses add fields and storage. Fields have the json keys "reqId" and "reqTime".
+ *
+ * @author Xinyue Zhao
+ */
+public class TestItem extends RestObject {
+	private String reqId;
+	private long   reqTime;
+
+	public TestItem() {
+	}
+
+	public TestItem( String reqId, long reqTime ) {
+		this.reqId = reqId;
+		this.reqTime = reqTime;
+	}
+
+	@Override
+	public String getReqId() {
+		return reqId;
+	}
+
+	@Override
+	public long getReqTime() {
+		return reqTime;
+	}
+
+	@Override
+	protected RealmObject[] newInstances( Realm db, int status ) {
+		return null;
+	}
+
+	@Override
+	public Class<? extends RealmObject> DBType() {
+		return RealmObject.class;
+	}
+}
@@ -0,0 +1,164 @@
+package com.chopping.rest;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The breaker opens after failures in a row, lets one trial through after the open time and closes when the trial
+ * succeeds. Only a cancelled trial opens it again. Times are passed in, the clock does not run in unit tests.
+ *
+ * @author Xinyue Zhao
+ */
+public class CircuitBreakerTest {
+	private static final int  THRESHOLD = 3;
+	private static final long OPEN_MS   = 1000;
+
+	@Test
+	public void opensAfterFailuresInARow() {
+		CircuitBreaker breaker = new CircuitBreaker(
+				THRESHOLD,
+				OPEN_MS
+		);
+		breaker.onFailure( 0 );
+		breaker.onFailure( 0 );
+		//A success resets the count.
+		breaker.onSuccess();
+		breaker.onFailure( 0 );
+		breaker.onFailure( 0 );
+		assertFalse( breaker.isOpen() );
+		assertTrue( breaker.allowRequest(
+				new Object(),
+				0
+		) );
+
+		breaker.onFailure( 100 );
+		assertTrue( breaker.isOpen() );
+		assertFalse( breaker.allowRequest(
+				new Object(),
+				100
+		) );
+		assertEquals(
+				OPEN_MS - 400,
+				breaker.getWaitMs( 500 )
+		);
+	}
+
+	@Test
+	public void oneTrialAfterOpenTimeClosesOnSuccess() {
+		CircuitBreaker breaker = open();
+		assertFalse( breaker.allowRequest(
+				new Object(),
+				OPEN_MS - 1
+		) );
+		assertTrue( breaker.allowRequest(
+				new Object(),
+				OPEN_MS
+		) );
+		//Only one trial.
+		assertFalse( breaker.allowRequest(
+				new Object(),
+				OPEN_MS
+		) );
+
+		breaker.onSuccess();
+		assertFalse( breaker.isOpen() );
+		assertEquals(
+				0,
+				breaker.getWaitMs( OPEN_MS )
+		);
+	}
+
+	@Test
+	public void failedTrialOpensAgain() {
+		CircuitBreaker breaker = open();
+		assertTrue( breaker.allowRequest(
+				new Object(),
+				OPEN_MS
+		) );
+		breaker.onFailure( OPEN_MS );
+		assertTrue( breaker.isOpen() );
+		assertFalse( breaker.allowRequest(
+				new Object(),
+				OPEN_MS * 2 - 1
+		) );
+		assertTrue( breaker.allowRequest(
+				new Object(),
+				OPEN_MS * 2
+		) );
+	}
+
+	@Test
+	public void onlyCancelledTrialOpensAgain() {
+		CircuitBreaker breaker = open();
+		Object         trial   = new Object();
+		assertTrue( breaker.allowRequest(
+				trial,
+				OPEN_MS
+		) );
+
+		//Another request, i.e. one that was parked before the breaker opened.
+		breaker.onCancelled(
+				new Object(),
+				OPEN_MS + 10
+		);
+		assertEquals(
+				OPEN_MS,
+				breaker.getWaitMs( OPEN_MS )
+		);
+
+		breaker.onCancelled(
+				trial,
+				OPEN_MS + 10
+		);
+		assertFalse( breaker.allowRequest(
+				new Object(),
+				OPEN_MS * 2
+		) );
+		assertTrue( breaker.allowRequest(
+				new Object(),
+				OPEN_MS * 2 + 10
+		) );
+	}
+
+	@Test
+	public void lostTrialIsReplaced() {
+		CircuitBreaker breaker = open();
+		assertTrue( breaker.allowRequest(
+				new Object(),
+				OPEN_MS
+		) );
+		assertFalse( breaker.allowRequest(
+				new Object(),
+				OPEN_MS * 2 - 1
+		) );
+		assertTrue( breaker.allowRequest(
+				new Object(),
+				OPEN_MS * 2
+		) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void thresholdMustBePositive() {
+		new CircuitBreaker(
+				0,
+				OPEN_MS
+		);
+	}
+
+	/**
+	 * @return A {@link CircuitBreaker} that has opened at time 0.
+	 */
+	private static CircuitBreaker open() {
+		CircuitBreaker breaker = new CircuitBreaker(
+				THRESHOLD,
+				OPEN_MS
+		);
+		for( int i = 0; i < THRESHOLD; i++ ) {
+			breaker.onFailure( 0 );
+		}
+		return breaker;
+	}
+}
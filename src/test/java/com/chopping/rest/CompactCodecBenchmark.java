@@ -0,0 +1,216 @@
+package com.chopping.rest;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+
+import io.realm.RealmObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Size and time of encoding and decoding of one object by {@link RestCodecs} with a {@link RestCodec} against {@link
+ * java.io.Serializable} and {@link Gson}, on the JVM. Results are printed, only the sizes are asserted.
+ *
+ * @author Xinyue Zhao
+ */
+public class CompactCodecBenchmark {
+	private static final int     WARM_UP = 2000;
+	private static final int     COUNT   = 20000;
+	private static final Charset UTF_8   = Charset.forName( "UTF-8" );
+
+	public static class Message extends RestObject {
+		private static final RestCodec<Message> CODEC = new RestCodec<Message>() {
+			@Override
+			public void encode( Message object, CompactWriter out ) throws IOException {
+				out.writeString( object.mReqId )
+				   .writeLong( object.mReqTime )
+				   .writeString( object.mAuthor )
+				   .writeString( object.mText )
+				   .writeInt( object.mLikes )
+				   .writeBoolean( object.mRead );
+			}
+
+			@Override
+			public Message decode( CompactReader in ) throws IOException {
+				Message message = new Message();
+				message.mReqId = in.readString();
+				message.mReqTime = in.readLong();
+				message.mAuthor = in.readString();
+				message.mText = in.readString();
+				message.mLikes = in.readInt();
+				message.mRead = in.readBoolean();
+				return message;
+			}
+		};
+
+		private String  mReqId;
+		private long    mReqTime;
+		private String  mAuthor;
+		private String  mText;
+		private int     mLikes;
+		private boolean mRead;
+
+		public Message() {
+		}
+
+		@Override
+		public String getReqId() {
+			return mReqId;
+		}
+
+		@Override
+		public long getReqTime() {
+			return mReqTime;
+		}
+
+		@Override
+		public Class<? extends RealmObject> DBType() {
+			return RealmObject.class;
+		}
+
+		@Override
+		protected RestCodec<? extends RestObject> codec() {
+			return CODEC;
+		}
+	}
+
+	/**
+	 * One way to encode and decode a {@link Message}.
+	 */
+	private static abstract class Format {
+		private final String mName;
+
+		private Format( String name ) {
+			mName = name;
+		}
+
+		abstract byte[] encode( Message message ) throws Exception;
+
+		abstract Message decode( byte[] bytes ) throws Exception;
+	}
+
+	private static final Format COMPACT = new Format( "Compact" ) {
+		@Override
+		byte[] encode( Message message ) throws Exception {
+			return RestCodecs.encode( message );
+		}
+
+		@Override
+		Message decode( byte[] bytes ) throws Exception {
+			return (Message) RestCodecs.decode(
+					Message.class.getName(),
+					bytes
+			);
+		}
+	};
+
+	private static final Format SERIALIZABLE = new Format( "Serializable" ) {
+		@Override
+		byte[] encode( Message message ) throws Exception {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream    out   = new ObjectOutputStream( bytes );
+			out.writeObject( message );
+			out.close();
+			return bytes.toByteArray();
+		}
+
+		@Override
+		Message decode( byte[] bytes ) throws Exception {
+			ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( bytes ) );
+			try {
+				return (Message) in.readObject();
+			} finally {
+				in.close();
+			}
+		}
+	};
+
+	private static final Format GSON = new Format( "Gson" ) {
+		private final Gson mGson = new Gson();
+
+		@Override
+		byte[] encode( Message message ) throws Exception {
+			return mGson.toJson( message )
+						.getBytes( UTF_8 );
+		}
+
+		@Override
+		Message decode( byte[] bytes ) throws Exception {
+			return mGson.fromJson(
+					new String(
+							bytes,
+							UTF_8
+					),
+					Message.class
+			);
+		}
+	};
+
+	@Test
+	public void compactIsSmallest() throws Exception {
+		Message message = newMessage();
+		int     compact = run(
+				COMPACT,
+				message
+		);
+		int     serializable = run(
+				SERIALIZABLE,
+				message
+		);
+		int     gson         = run(
+				GSON,
+				message
+		);
+		assertTrue( compact < serializable );
+		assertTrue( compact < gson );
+	}
+
+	/**
+	 * Encode and decode {@code message} {@link #COUNT} times and print the result.
+	 *
+	 * @return Size of encoded {@code message} in bytes.
+	 */
+	private static int run( Format format, Message message ) throws Exception {
+		byte[] bytes = format.encode( message );
+		assertEquals(
+				message.mText,
+				format.decode( bytes ).mText
+		);
+		for( int i = 0; i < WARM_UP; i++ ) {
+			format.decode( format.encode( message ) );
+		}
+		long start = System.nanoTime();
+		for( int i = 0; i < COUNT; i++ ) {
+			bytes = format.encode( message );
+		}
+		long encodeNs = ( System.nanoTime() - start ) / COUNT;
+		start = System.nanoTime();
+		for( int i = 0; i < COUNT; i++ ) {
+			format.decode( bytes );
+		}
+		long decodeNs = ( System.nanoTime() - start ) / COUNT;
+		System.out.println( "CompactCodecBenchmark: " + format.mName + " bytes: " + bytes.length + ", encode: " + encodeNs + "ns, decode: " +
+				decodeNs + "ns" );
+		return bytes.length;
+	}
+
+	private static Message newMessage() {
+		Message message = new Message();
+		message.mReqId = "3f2b8c1e-5d4a-4e7b-9c61-0a8f2d7e4b19";
+		message.mReqTime = 1467331200000L;
+		message.mAuthor = "Xinyue Zhao";
+		message.mText = "See you at the station at eight, the train leaves at quarter past.";
+		message.mLikes = 12;
+		message.mRead = true;
+		return message;
+	}
+}
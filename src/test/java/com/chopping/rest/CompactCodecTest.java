@@ -0,0 +1,223 @@
+package com.chopping.rest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Values written by {@link CompactWriter} are read back by {@link CompactReader}, objects encoded by {@link RestCodecs}
+ * are decoded again with or without {@link RestCodec}.
+ *
+ * @author Xinyue Zhao
+ */
+public class CompactCodecTest {
+	public static class CodecItem extends TestItem {
+		private static final RestCodec<CodecItem> CODEC = new RestCodec<CodecItem>() {
+			@Override
+			public void encode( CodecItem object, CompactWriter out ) throws IOException {
+				out.writeString( object.getReqId() )
+				   .writeLong( object.getReqTime() );
+			}
+
+			@Override
+			public CodecItem decode( CompactReader in ) throws IOException {
+				return new CodecItem(
+						in.readString(),
+						in.readLong()
+				);
+			}
+		};
+
+		public CodecItem() {
+		}
+
+		private CodecItem( String reqId, long reqTime ) {
+			super(
+					reqId,
+					reqTime
+			);
+		}
+
+		@Override
+		protected RestCodec<? extends RestObject> codec() {
+			return CODEC;
+		}
+	}
+
+	@Test
+	public void valuesRoundTrip() throws Exception {
+		String text = "Grüße, 日本語, 😀";
+		byte[] bytes = new CompactWriter().writeString( null )
+										  .writeString( "" )
+										  .writeString( text )
+										  .writeLong( 0 )
+										  .writeLong( -1 )
+										  .writeLong( Long.MIN_VALUE )
+										  .writeLong( Long.MAX_VALUE )
+										  .writeInt( Integer.MIN_VALUE )
+										  .writeInt( 300 )
+										  .writeBoolean( true )
+										  .writeDouble( -0.5 )
+										  .writeBytes( new byte[] { 1 , 2 , 3 } )
+										  .toByteArray();
+
+		CompactReader in = new CompactReader( bytes );
+		assertNull( in.readString() );
+		assertEquals(
+				"",
+				in.readString()
+		);
+		assertEquals(
+				text,
+				in.readString()
+		);
+		assertEquals(
+				0,
+				in.readLong()
+		);
+		assertEquals(
+				-1,
+				in.readLong()
+		);
+		assertEquals(
+				Long.MIN_VALUE,
+				in.readLong()
+		);
+		assertEquals(
+				Long.MAX_VALUE,
+				in.readLong()
+		);
+		assertEquals(
+				Integer.MIN_VALUE,
+				in.readInt()
+		);
+		assertEquals(
+				300,
+				in.readInt()
+		);
+		assertTrue( in.readBoolean() );
+		assertEquals(
+				-0.5,
+				in.readDouble(),
+				0
+		);
+		assertArrayEquals(
+				new byte[] { 1 , 2 , 3 },
+				in.readBytes()
+		);
+	}
+
+	@Test
+	public void repeatedStringsAreReferenced() throws Exception {
+		String text  = "a string that is repeated";
+		byte[] once  = new CompactWriter().writeString( text )
+										  .toByteArray();
+		byte[] twice = new CompactWriter().writeString( text )
+										  .writeString( "other" )
+										  .writeString( text )
+										  .toByteArray();
+		//The repetition costs one byte.
+		assertEquals(
+				once.length + 1 + 1 + "other".length() + 1,
+				twice.length
+		);
+
+		CompactReader in = new CompactReader( twice );
+		assertEquals(
+				text,
+				in.readString()
+		);
+		assertEquals(
+				"other",
+				in.readString()
+		);
+		assertEquals(
+				text,
+				in.readString()
+		);
+	}
+
+	@Test
+	public void truncatedBytesFail() throws Exception {
+		byte[] bytes = new CompactWriter().writeString( "text" )
+										  .toByteArray();
+		byte[] cut   = new byte[ bytes.length - 1 ];
+		System.arraycopy(
+				bytes,
+				0,
+				cut,
+				0,
+				cut.length
+		);
+		try {
+			new CompactReader( cut ).readString();
+			fail();
+		} catch( IOException expected ) {
+		}
+	}
+
+	@Test
+	public void objectsRoundTrip() throws Exception {
+		CodecItem  codecItem = new CodecItem(
+				"ü-1",
+				Long.MAX_VALUE
+		);
+		RestObject decoded   = RestCodecs.decode(
+				CodecItem.class.getName(),
+				RestCodecs.encode( codecItem )
+		);
+		assertEquals(
+				"ü-1",
+				decoded.getReqId()
+		);
+		assertEquals(
+				Long.MAX_VALUE,
+				decoded.getReqTime()
+		);
+
+		//Without codec.
+		decoded = RestCodecs.decode(
+				TestItem.class.getName(),
+				RestCodecs.encode( new TestItem(
+						"2",
+						-2
+				) )
+		);
+		assertEquals(
+				"2",
+				decoded.getReqId()
+		);
+		assertEquals(
+				-2,
+				decoded.getReqTime()
+		);
+	}
+
+	@Test
+	public void codecBytesOfClassWithoutCodecFail() throws Exception {
+		byte[] bytes = RestCodecs.encode( new CodecItem(
+				"1",
+				1
+		) );
+		for( int i = 0; i < 2; i++ ) {
+			//Second time from cache.
+			try {
+				RestCodecs.decode(
+						TestItem.class.getName(),
+						bytes
+				);
+				fail();
+			} catch( IOException expected ) {
+				assertFalse( expected.getMessage()
+									 .isEmpty() );
+			}
+		}
+	}
+}
@@ -0,0 +1,454 @@
+package com.chopping.rest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.Body;
+import retrofit2.http.POST;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Duplicated deliveries of a mutation carry the same idempotency key, so that a server that remembers keys does it only
+ * once. Retries are tested through {@link RestApiManager} against a server whose first answer of every operation is
+ * lost.
+ *
+ * @author Xinyue Zhao
+ */
+public class IdempotencyInterceptorTest {
+	private static final MediaType JSON = MediaType.parse( "application/json; charset=utf-8" );
+
+	/**
+	 * A server that creates an item only once per idempotency key and answers duplicates with the first response. When
+	 * {@link #mLoseFirst} is set the first delivery of a key is done, but answered with an error, as if its answer had
+	 * been lost.
+	 */
+	private static final class IdempotentDispatcher extends Dispatcher {
+		private final Map<String, String> mDone = new HashMap<>();
+		private final List<String>        mKeys = new ArrayList<>();
+		private       int                 mCreated;
+		private       boolean             mLoseFirst;
+
+		@Override
+		public synchronized MockResponse dispatch( RecordedRequest request ) {
+			String key = request.getHeader( IdempotencyInterceptor.HEADER );
+			mKeys.add( key );
+			if( key == null ) {
+				mCreated++;
+				return new MockResponse().setBody( "{\"created\":" + mCreated + "}" );
+			}
+			String body = mDone.get( key );
+			if( body == null ) {
+				mCreated++;
+				body = request.getBody()
+							  .readUtf8();
+				mDone.put(
+						key,
+						body
+				);
+				if( mLoseFirst ) {
+					return new MockResponse().setResponseCode( 500 );
+				}
+			}
+			return new MockResponse().setBody( body );
+		}
+	}
+
+	private interface ItemApi {
+		@POST("items")
+		Call<Item> create( @Body Item item );
+	}
+
+	/**
+	 * {@link RestApiManager} whose main thread is a scheduler.
+	 */
+	private static final class TestManager extends RestApiManager {
+		private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor();
+
+		@Override
+		void post( Runnable task ) {
+			mScheduler.execute( task );
+		}
+
+		@Override
+		void postDelayed( Runnable task, long delayMs ) {
+			mScheduler.schedule(
+					task,
+					delayMs,
+					TimeUnit.MILLISECONDS
+			);
+		}
+
+		@Override
+		void removeCallbacks( Runnable task ) {
+		}
+	}
+
+	/**
+	 * Request data whose database writes are done at once.
+	 */
+	private static final class Item extends TestItem {
+		private Item( String reqId, long reqTime ) {
+			super(
+					reqId,
+					reqTime
+			);
+		}
+
+		@Override
+		public void updateDBAsync( int status ) {
+		}
+
+		@Override
+		public void updateDBAsync( int status, RestWriter.OnWrittenListener listener ) {
+			if( listener != null ) {
+				listener.onWritten();
+			}
+		}
+	}
+
+	/**
+	 * Listener that counts successful responses.
+	 */
+	private static final class Responses implements RestApiManager.OnResponseListener {
+		private final CountDownLatch mDone;
+		private final AtomicInteger  mSuccesses = new AtomicInteger();
+
+		private Responses( int count ) {
+			mDone = new CountDownLatch( count );
+		}
+
+		@Override
+		public void onResponse( RestObject requestObject, boolean success ) {
+			if( success ) {
+				mSuccesses.incrementAndGet();
+			}
+			mDone.countDown();
+		}
+	}
+
+	private MockWebServer        mServer;
+	private IdempotentDispatcher mDispatcher;
+	private OkHttpClient         mClient;
+	private TestManager          mManager;
+
+	@Before
+	public void setUp() throws Exception {
+		mDispatcher = new IdempotentDispatcher();
+		mServer = new MockWebServer();
+		mServer.setDispatcher( mDispatcher );
+		mServer.start();
+		mClient = new OkHttpClient.Builder().addInterceptor( IdempotencyInterceptor.getInstance() )
+											.build();
+		mManager = new TestManager();
+		mManager.setDefaultPolicy(
+				new RetryPolicy(
+						2,
+						10,
+						10
+				),
+				null
+		);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		mManager.mScheduler.shutdownNow();
+		mServer.shutdown();
+	}
+
+	@Test
+	public void keyIsStableForSameOperation() {
+		Item item = new Item(
+				"id1",
+				100
+		);
+		assertEquals(
+				IdempotencyInterceptor.keyOf(
+						item,
+						RestObject.NOT_SYNCED
+				),
+				IdempotencyInterceptor.keyOf(
+						new Item(
+								"id1",
+								100
+						),
+						RestObject.NOT_SYNCED
+				)
+		);
+		assertNotEquals(
+				IdempotencyInterceptor.keyOf(
+						item,
+						RestObject.NOT_SYNCED
+				),
+				IdempotencyInterceptor.keyOf(
+						item,
+						RestObject.DELETE
+				)
+		);
+		//A new edit is a new operation.
+		assertNotEquals(
+				IdempotencyInterceptor.keyOf(
+						item,
+						RestObject.UPDATE
+				),
+				IdempotencyInterceptor.keyOf(
+						new Item(
+								"id1",
+								101
+						),
+						RestObject.UPDATE
+				)
+		);
+	}
+
+	@Test
+	public void duplicatedDeliveriesAreHarmless() throws Exception {
+		Item   item = new Item(
+				"id1",
+				100
+		);
+		String key  = IdempotencyInterceptor.keyOf(
+				item,
+				RestObject.NOT_SYNCED
+		);
+		String first = null;
+		//First delivery, a retry after a timeout and a replay after restart: each is a new request.
+		for( int i = 0; i < 3; i++ ) {
+			Request request = newCreate();
+			IdempotencyInterceptor.getInstance()
+								  .register(
+										  request,
+										  key
+								  );
+			Response response = mClient.newCall( request )
+									   .execute();
+			String body = response.body()
+								  .string();
+			if( first == null ) {
+				first = body;
+			}
+			assertEquals(
+					first,
+					body
+			);
+		}
+		assertEquals(
+				1,
+				mDispatcher.mCreated
+		);
+		for( int i = 0; i < 3; i++ ) {
+			assertEquals(
+					key,
+					mServer.takeRequest()
+						   .getHeader( IdempotencyInterceptor.HEADER )
+			);
+		}
+	}
+
+	@Test
+	public void retryThroughManagerHasSameKey() throws Exception {
+		mDispatcher.mLoseFirst = true;
+		ItemApi   api       = newApi( mClient );
+		Responses responses = new Responses( 1 );
+		Item      item      = new Item(
+				"id1",
+				100
+		);
+		mManager.execAsync(
+				api.create( item ),
+				item,
+				RestObject.NOT_SYNCED,
+				RestObject.SYNCED,
+				responses
+		);
+		assertTrue( responses.mDone.await(
+				5,
+				TimeUnit.SECONDS
+		) );
+		assertEquals(
+				1,
+				responses.mSuccesses.get()
+		);
+		assertDelivered(
+				1,
+				2
+		);
+		String key = IdempotencyInterceptor.keyOf(
+				item,
+				RestObject.NOT_SYNCED
+		);
+		for( String delivered : mDispatcher.mKeys ) {
+			assertEquals(
+					key,
+					delivered
+			);
+		}
+	}
+
+	@Test
+	public void keySurvivesRebuiltRequest() throws Exception {
+		mDispatcher.mLoseFirst = true;
+		//An interceptor before the IdempotencyInterceptor that rebuilds every request.
+		OkHttpClient client = new OkHttpClient.Builder().addInterceptor( new Interceptor() {
+			@Override
+			public Response intercept( Chain chain ) throws IOException {
+				return chain.proceed( chain.request()
+										   .newBuilder()
+										   .header(
+												   "X-Trace",
+												   "1"
+										   )
+										   .build() );
+			}
+		} )
+														.addInterceptor( IdempotencyInterceptor.getInstance() )
+														.build();
+		Responses responses = new Responses( 1 );
+		Item      item      = new Item(
+				"id1",
+				100
+		);
+		mManager.execAsync(
+				newApi( client ).create( item ),
+				item,
+				RestObject.NOT_SYNCED,
+				RestObject.SYNCED,
+				responses
+		);
+		assertTrue( responses.mDone.await(
+				5,
+				TimeUnit.SECONDS
+		) );
+		assertEquals(
+				1,
+				responses.mSuccesses.get()
+		);
+		assertDelivered(
+				1,
+				2
+		);
+		assertEquals(
+				IdempotencyInterceptor.keyOf(
+						item,
+						RestObject.NOT_SYNCED
+				),
+				mDispatcher.mKeys.get( 1 )
+		);
+	}
+
+	@Test
+	public void parallelItemsAreAllDone() throws Exception {
+		mDispatcher.mLoseFirst = true;
+		ItemApi   api       = newApi( mClient );
+		Responses responses = new Responses( 5 );
+		for( int i = 0; i < 5; i++ ) {
+			Item item = new Item(
+					"id" + i,
+					100
+			);
+			mManager.execAsync(
+					api.create( item ),
+					item,
+					RestObject.NOT_SYNCED,
+					RestObject.SYNCED,
+					responses
+			);
+		}
+		assertTrue( responses.mDone.await(
+				5,
+				TimeUnit.SECONDS
+		) );
+		assertEquals(
+				5,
+				responses.mSuccesses.get()
+		);
+		assertDelivered(
+				5,
+				10
+		);
+		Set<String> keys = new HashSet<>( mDispatcher.mKeys );
+		assertEquals(
+				5,
+				keys.size()
+		);
+		assertTrue( !keys.contains( null ) );
+	}
+
+	@Test
+	public void requestWithoutKeyIsUnchanged() throws Exception {
+		mClient.newCall( newCreate() )
+			   .execute()
+			   .body()
+			   .close();
+		assertNull( mServer.takeRequest()
+						   .getHeader( IdempotencyInterceptor.HEADER ) );
+	}
+
+	private void assertDelivered( int created, int deliveries ) {
+		synchronized( mDispatcher ) {
+			assertEquals(
+					created,
+					mDispatcher.mCreated
+			);
+			assertEquals(
+					deliveries,
+					mDispatcher.mKeys.size()
+			);
+		}
+	}
+
+	private ItemApi newApi( OkHttpClient client ) {
+		return new Retrofit.Builder().baseUrl( mServer.url( "/" ) )
+									 .client( client )
+									 .addConverterFactory( GsonConverterFactory.create() )
+									 .callbackExecutor( new Executor() {
+										 @Override
+										 public void execute( Runnable command ) {
+											 command.run();
+										 }
+									 } )
+									 .build()
+									 .create( ItemApi.class );
+	}
+
+	private Request newCreate() {
+		return new Request.Builder().url( mServer.url( "/items" ) )
+									.post( RequestBody.create(
+											JSON,
+											"{\"reqId\":\"id1\"}"
+									) )
+									.build();
+	}
+}
@@ -0,0 +1,347 @@
+package com.chopping.rest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Only the latest operation of an object is replayed, acknowledged and superseded operations never come back.
+ *
+ * @author Xinyue Zhao
+ */
+public class OutboxJournalTest {
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private File          mFile;
+	private OutboxJournal mJournal;
+
+	@Before
+	public void setUp() throws Exception {
+		mFile = new File(
+				mFolder.getRoot(),
+				"outbox.journal"
+		);
+		mJournal = open( 4096 );
+	}
+
+	@After
+	public void tearDown() {
+		mJournal.close();
+	}
+
+	@Test
+	public void staleUpdateIsNotReplayed() {
+		mJournal.append(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.UPDATE
+		);
+		mJournal.append(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+
+		List<PendingRequest> replayed = mJournal.replay();
+		assertEquals(
+				1,
+				replayed.size()
+		);
+		assertEquals(
+				2,
+				replayed.get( 0 )
+						.getObject()
+						.getReqTime()
+		);
+	}
+
+	@Test
+	public void acknowledgedSupersededOperationKeepsLatest() {
+		mJournal.append(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.UPDATE
+		);
+		mJournal.append(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+		//The first one is answered after the second has been submitted.
+		mJournal.acknowledge(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.UPDATE
+		);
+		assertEquals(
+				1,
+				mJournal.replay()
+						.size()
+		);
+
+		mJournal.acknowledge(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+		assertTrue( mJournal.replay()
+							.isEmpty() );
+	}
+
+	@Test
+	public void unsyncedCreateIsFolded() {
+		mJournal.append(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.NOT_SYNCED
+		);
+		mJournal.append(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+		mJournal.append(
+				new TestItem(
+						"b",
+						3
+				),
+				RestObject.NOT_SYNCED
+		);
+		mJournal.append(
+				new TestItem(
+						"b",
+						4
+				),
+				RestObject.DELETE
+		);
+
+		List<PendingRequest> replayed = mJournal.replay();
+		assertEquals(
+				1,
+				replayed.size()
+		);
+		assertEquals(
+				"a",
+				replayed.get( 0 )
+						.getObject()
+						.getReqId()
+		);
+		assertEquals(
+				RestObject.NOT_SYNCED,
+				replayed.get( 0 )
+						.getStatusBefore()
+		);
+	}
+
+	@Test
+	public void changeOfAcknowledgedCreateIsReplayed() {
+		//Both are changed while their creates are in flight.
+		mJournal.append(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.NOT_SYNCED
+		);
+		mJournal.append(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+		mJournal.append(
+				new TestItem(
+						"b",
+						3
+				),
+				RestObject.NOT_SYNCED
+		);
+		mJournal.append(
+				new TestItem(
+						"b",
+						4
+				),
+				RestObject.DELETE
+		);
+		mJournal.acknowledge(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.NOT_SYNCED
+		);
+		mJournal.acknowledge(
+				new TestItem(
+						"b",
+						3
+				),
+				RestObject.NOT_SYNCED
+		);
+
+		List<PendingRequest> replayed = mJournal.replay();
+		assertEquals(
+				2,
+				replayed.size()
+		);
+		assertEquals(
+				RestObject.UPDATE,
+				replayed.get( 0 )
+						.getStatusBefore()
+		);
+		assertEquals(
+				RestObject.DELETE,
+				replayed.get( 1 )
+						.getStatusBefore()
+		);
+	}
+
+	@Test
+	public void foldedUpdateKeepsCreate() throws Exception {
+		mJournal.close();
+		mJournal = open( 1024 );
+		mJournal.append(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.NOT_SYNCED
+		);
+		//Folded into the create without request.
+		mJournal.append(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+		mJournal.acknowledge(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+		//Fill the journal until it is compacted.
+		for( int i = 0; i < 20; i++ ) {
+			TestItem item = new TestItem(
+					"b",
+					3 + i
+			);
+			mJournal.append(
+					item,
+					RestObject.UPDATE
+			);
+		}
+		List<PendingRequest> replayed = mJournal.replay();
+		assertEquals(
+				2,
+				replayed.size()
+		);
+		assertEquals(
+				RestObject.NOT_SYNCED,
+				replayed.get( 0 )
+						.getStatusBefore()
+		);
+		assertEquals(
+				2,
+				replayed.get( 0 )
+						.getObject()
+						.getReqTime()
+		);
+
+		mJournal.acknowledge(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.NOT_SYNCED
+		);
+		assertEquals(
+				1,
+				mJournal.replay()
+						.size()
+		);
+	}
+
+	@Test
+	public void compactionKeepsFoldedStatus() throws Exception {
+		mJournal.close();
+		mJournal = open( 1024 );
+		mJournal.append(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.NOT_SYNCED
+		);
+		//Fill the journal until it is compacted.
+		for( int i = 0; i < 20; i++ ) {
+			TestItem item = new TestItem(
+					"a",
+					2 + i
+			);
+			mJournal.append(
+					item,
+					RestObject.UPDATE
+			);
+		}
+		//Written on the thread of journal, wait for it.
+		mJournal.replay();
+		mJournal.close();
+		mJournal = open( 1024 );
+
+		List<PendingRequest> replayed = mJournal.replay();
+		assertEquals(
+				1,
+				replayed.size()
+		);
+		assertEquals(
+				RestObject.NOT_SYNCED,
+				replayed.get( 0 )
+						.getStatusBefore()
+		);
+		assertEquals(
+				21,
+				replayed.get( 0 )
+						.getObject()
+						.getReqTime()
+		);
+	}
+
+	private OutboxJournal open( int capacity ) throws Exception {
+		OutboxJournal journal = new OutboxJournal(
+				mFile,
+				capacity,
+				8,
+				50
+		);
+		journal.open();
+		return journal;
+	}
+}
@@ -0,0 +1,205 @@
+package com.chopping.rest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.realm.RealmObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The count of pending items never exceeds the limit, only creates that have never been sent are dropped and items
+ * refused by server leave the outbox.
+ *
+ * @author Xinyue Zhao
+ */
+public class OutboxTest {
+	@Test
+	public void coalesceNeverExceedsLimit() {
+		Outbox outbox = newOutbox(
+				OutboxPolicy.COALESCE,
+				new PendingRequest(
+						new TestItem(
+								"id0",
+								100
+						),
+						RestObject.NOT_SYNCED
+				)
+		);
+		//A new item is refused.
+		Outbox.Admission admission = outbox.admit(
+				new TestItem(
+						"id1",
+						101
+				),
+				RestObject.NOT_SYNCED
+		);
+		assertFalse( admission.mSend );
+		assertFalse( admission.mSave );
+		//A pending item is merged and waits for next sync.
+		admission = outbox.admit(
+				new TestItem(
+						"id0",
+						102
+				),
+				RestObject.UPDATE
+		);
+		assertFalse( admission.mSend );
+		assertTrue( admission.mSave );
+		assertTrue( outbox.isFull() );
+		//Still one pending item: once id0 is done there's room.
+		outbox.done( new TestItem(
+				"id0",
+				102
+		) );
+		assertFalse( outbox.isFull() );
+	}
+
+	@Test
+	public void dropOldestDropsOnlyUnsentCreates() {
+		Outbox outbox = newOutbox(
+				OutboxPolicy.DROP_OLDEST,
+				new PendingRequest(
+						new TestItem(
+								"updated",
+								100
+						),
+						RestObject.UPDATE
+				),
+				new PendingRequest(
+						new TestItem(
+								"created",
+								101
+						),
+						RestObject.NOT_SYNCED
+				)
+		);
+		Outbox.Admission admission = outbox.admit(
+				new TestItem(
+						"new1",
+						102
+				),
+				RestObject.NOT_SYNCED
+		);
+		assertTrue( admission.mSend );
+		assertEquals(
+				"created",
+				admission.mDropped.getObject()
+								  .getReqId()
+		);
+		//"new1" is being sent, "updated" is known by server: nothing can be dropped.
+		admission = outbox.admit(
+				new TestItem(
+						"new2",
+						103
+				),
+				RestObject.NOT_SYNCED
+		);
+		assertFalse( admission.mSend );
+		assertFalse( admission.mSave );
+		assertNull( admission.mDropped );
+		//"new1" could not be sent, it can be dropped now.
+		outbox.failed( new TestItem(
+				"new1",
+				102
+		) );
+		admission = outbox.admit(
+				new TestItem(
+						"new2",
+						103
+				),
+				RestObject.NOT_SYNCED
+		);
+		assertTrue( admission.mSend );
+		assertEquals(
+				"new1",
+				admission.mDropped.getObject()
+								  .getReqId()
+		);
+	}
+
+	@Test
+	public void updatedCreateIsStillCreate() {
+		Outbox outbox = newOutbox(
+				OutboxPolicy.DROP_OLDEST,
+				new PendingRequest(
+						new TestItem(
+								"created",
+								100
+						),
+						RestObject.NOT_SYNCED
+				),
+				new PendingRequest(
+						new TestItem(
+								"other",
+								101
+						),
+						RestObject.UPDATE
+				)
+		);
+		//Folded into the create that has never been synced, see PendingCoalescer.
+		outbox.admit(
+				new TestItem(
+						"created",
+						102
+				),
+				RestObject.UPDATE
+		);
+		outbox.failed( new TestItem(
+				"created",
+				102
+		) );
+		Outbox.Admission admission = outbox.admit(
+				new TestItem(
+						"new",
+						103
+				),
+				RestObject.NOT_SYNCED
+		);
+		assertEquals(
+				"created",
+				admission.mDropped.getObject()
+								  .getReqId()
+		);
+	}
+
+	@Test
+	public void refusedItemLeavesOutbox() {
+		Outbox   outbox = newOutbox( OutboxPolicy.REJECT_NEW );
+		TestItem item   = new TestItem(
+				"id0",
+				100
+		);
+		assertTrue( outbox.admit(
+				item,
+				RestObject.NOT_SYNCED
+		).mSend );
+		assertTrue( outbox.isFull() );
+		//Answered with 4xx, it will never be done.
+		outbox.done( item );
+		assertFalse( outbox.isFull() );
+	}
+
+	private static Outbox newOutbox( OutboxPolicy policy, PendingRequest... pending ) {
+		List<PendingRequest> requests = new ArrayList<>( pending.length );
+		Collections.addAll(
+				requests,
+				pending
+		);
+		return new Outbox(
+				RealmObject.class,
+				Math.max(
+						1,
+						pending.length
+				),
+				policy,
+				requests
+		);
+	}
+}
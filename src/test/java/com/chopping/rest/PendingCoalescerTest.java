@@ -0,0 +1,259 @@
+package com.chopping.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.realm.Realm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Chains of offline operations of one request-id end in one net operation, or in none for items that have never been
+ * on server.
+ *
+ * @author Xinyue Zhao
+ */
+public class PendingCoalescerTest {
+	/**
+	 * Stored items of one type like the database keeps them: one per request-id, written as {@link
+	 * RestObject#writeToDB(Realm, int)} does.
+	 */
+	private final Map<String, PendingRequest> mStore = new LinkedHashMap<>();
+
+	@Before
+	public void setUp() {
+		mStore.clear();
+	}
+
+	@Test
+	public void createThenDeleteSendsNothing() {
+		write(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.NOT_SYNCED
+		);
+		write(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.DELETE
+		);
+
+		PendingCoalescer coalescer = PendingCoalescer.coalesce( pending() );
+		assertTrue( coalescer.getRequests()
+							 .isEmpty() );
+		assertTrue( mStore.isEmpty() );
+	}
+
+	@Test
+	public void createThenUpdatesSendOneCreateWithLatestData() {
+		write(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.NOT_SYNCED
+		);
+		write(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+		write(
+				new TestItem(
+						"a",
+						3
+				),
+				RestObject.UPDATE
+		);
+
+		List<PendingRequest> requests = PendingCoalescer.coalesce( pending() )
+														.getRequests();
+		assertEquals(
+				1,
+				requests.size()
+		);
+		assertEquals(
+				RestObject.NOT_SYNCED,
+				requests.get( 0 )
+						.getStatusBefore()
+		);
+		assertEquals(
+				3,
+				requests.get( 0 )
+						.getObject()
+						.getReqTime()
+		);
+	}
+
+	@Test
+	public void syncedItemIsStillDeletedOnServer() {
+		write(
+				new TestItem(
+						"a",
+						1
+				),
+				RestObject.SYNCED
+		);
+		write(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.UPDATE
+		);
+		write(
+				new TestItem(
+						"a",
+						3
+				),
+				RestObject.DELETE
+		);
+
+		List<PendingRequest> requests = PendingCoalescer.coalesce( pending() )
+														.getRequests();
+		assertEquals(
+				1,
+				requests.size()
+		);
+		assertEquals(
+				RestObject.DELETE,
+				requests.get( 0 )
+						.getStatusBefore()
+		);
+	}
+
+	@Test
+	public void journalChainOfCreateAndDeleteIsDropped() {
+		PendingCoalescer coalescer = PendingCoalescer.coalesce( Arrays.asList(
+				new PendingRequest(
+						new TestItem(
+								"a",
+								1
+						),
+						RestObject.NOT_SYNCED
+				),
+				new PendingRequest(
+						new TestItem(
+								"b",
+								2
+						),
+						RestObject.UPDATE
+				),
+				new PendingRequest(
+						new TestItem(
+								"a",
+								3
+						),
+						RestObject.DELETE
+				)
+		) );
+		assertEquals(
+				1,
+				coalescer.getRequests()
+						 .size()
+		);
+		assertEquals(
+				"b",
+				coalescer.getRequests()
+						 .get( 0 )
+						 .getObject()
+						 .getReqId()
+		);
+		assertEquals(
+				2,
+				coalescer.getDropped()
+						 .size()
+		);
+		assertEquals(
+				2,
+				coalescer.getSaved()
+		);
+	}
+
+	@Test
+	public void createInFlightIsNotFolded() {
+		TestItem create = new TestItem(
+				"a",
+				1
+		);
+		write(
+				create,
+				RestObject.NOT_SYNCED
+		);
+		//Sent twice, i.e. by a retry of another manager.
+		PendingCoalescer.onDispatched( create );
+		PendingCoalescer.onDispatched( create );
+		PendingCoalescer.onSettled( create );
+		write(
+				new TestItem(
+						"a",
+						2
+				),
+				RestObject.DELETE
+		);
+		PendingCoalescer.onSettled( create );
+		assertFalse( PendingCoalescer.isDispatched( create ) );
+
+		//The server will have the item, it must be deleted there.
+		List<PendingRequest> requests = PendingCoalescer.coalesce( pending() )
+														.getRequests();
+		assertEquals(
+				1,
+				requests.size()
+		);
+		assertEquals(
+				RestObject.DELETE,
+				requests.get( 0 )
+						.getStatusBefore()
+		);
+	}
+
+	private void write( RestObject object, int status ) {
+		PendingRequest stored = mStore.get( object.getReqId() );
+		if( ( status == RestObject.UPDATE || status == RestObject.DELETE ) && !PendingCoalescer.isDispatched( object ) ) {
+			status = PendingCoalescer.fold(
+					stored != null && stored.getStatusBefore() == RestObject.NOT_SYNCED,
+					status
+			);
+		}
+		if( status == RestObject.DELETE_SYNCED ) {
+			mStore.remove( object.getReqId() );
+		} else {
+			mStore.put(
+					object.getReqId(),
+					new PendingRequest(
+							object,
+							status
+					)
+			);
+		}
+	}
+
+	/**
+	 * @return Stored items of a pending status, like {@link com.chopping.utils.RestUtils#selectPendingRequests(RestObject)}.
+	 */
+	private List<PendingRequest> pending() {
+		List<PendingRequest> pending = new ArrayList<>();
+		for( PendingRequest stored : mStore.values() ) {
+			int status = stored.getStatusBefore();
+			if( status == RestObject.NOT_SYNCED || status == RestObject.UPDATE || status == RestObject.DELETE ) {
+				pending.add( stored );
+			}
+		}
+		return pending;
+	}
+}
@@ -0,0 +1,115 @@
+package com.chopping.rest;
+
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A patch has the keys of its target: keys of Gson for Retrofit, names of getters for Firebase.
+ *
+ * @author Xinyue Zhao
+ */
+public class RestPatchTest {
+	private static final class Item extends TestItem {
+		@SerializedName( "display_name" )
+		private String mName;
+		private int    mCount;
+
+		private Item() {
+			super(
+					"1",
+					2
+			);
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		public int getCount() {
+			return mCount;
+		}
+	}
+
+	@Test
+	public void mergePatchHasKeysOfGson() {
+		Item item = new Item();
+		item.mName = "name";
+		item.markDirty( "display_name" );
+
+		JsonObject patch = RestPatch.mergePatch( item )
+									.getAsJsonObject();
+		assertEquals(
+				3,
+				patch.size()
+		);
+		assertEquals(
+				"name",
+				patch.get( "display_name" )
+					 .getAsString()
+		);
+		assertTrue( patch.has( "reqId" ) );
+		assertTrue( patch.has( "reqTime" ) );
+		assertTrue( item.dirtyFields()
+						.isEmpty() );
+	}
+
+	@Test
+	public void childrenPatchHasNamesOfGetters() {
+		Item item = new Item();
+		item.mName = "name";
+		item.mCount = 3;
+		item.markDirty( "display_name" );
+		item.markDirty( "mCount" );
+
+		Map<String, Object> children = RestPatch.childrenPatch( item );
+		assertEquals(
+				4,
+				children.size()
+		);
+		assertEquals(
+				"name",
+				children.get( "name" )
+		);
+		assertEquals(
+				3,
+				children.get( "count" )
+		);
+		assertEquals(
+				"1",
+				children.get( "reqId" )
+		);
+		assertEquals(
+				2L,
+				children.get( "reqTime" )
+		);
+		assertFalse( children.containsKey( "display_name" ) );
+		//Consumed.
+		assertNull( RestPatch.childrenPatch( item ) );
+	}
+
+	@Test
+	public void bothPathsCountBytesSaved() {
+		Item item = new Item();
+		item.mName = "a name that is not sent by the patch";
+		item.mCount = 3;
+
+		RestStats.reset();
+		item.markDirty( "mCount" );
+		RestPatch.mergePatch( item );
+		assertTrue( RestStats.getPatchBytesSaved() > item.mName.length() );
+
+		RestStats.reset();
+		item.markDirty( "mCount" );
+		RestPatch.childrenPatch( item );
+		assertTrue( RestStats.getPatchBytesSaved() > item.mName.length() );
+	}
+}
@@ -0,0 +1,220 @@
+package com.chopping.rest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.RealmObject;
+import retrofit2.Call;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Types are interleaved by weighted round robin on their priorities: a backlog of a low priority type does not hold
+ * back a high priority one and is not starved by it. Requests are not sent, every sent one is answered by the test.
+ *
+ * @author Xinyue Zhao
+ */
+public class SyncEngineTest {
+	static final class HighRecord extends RealmObject {
+	}
+
+	static final class LowRecord extends RealmObject {
+	}
+
+	static final class HighItem extends TestItem {
+		HighItem( String reqId ) {
+			super(
+					reqId,
+					1
+			);
+		}
+
+		@Override
+		public Class<? extends RealmObject> DBType() {
+			return HighRecord.class;
+		}
+	}
+
+	static final class LowItem extends TestItem {
+		LowItem( String reqId ) {
+			super(
+					reqId,
+					1
+			);
+		}
+
+		@Override
+		public Class<? extends RealmObject> DBType() {
+			return LowRecord.class;
+		}
+	}
+
+	private static final SyncEngine.CallFactory NO_CALL = new SyncEngine.CallFactory() {
+		@Override
+		public Call<? extends RestObject> create( PendingRequest request ) {
+			return null;
+		}
+	};
+
+	/**
+	 * Objects of sent requests in order of sending.
+	 */
+	private final List<RestObject> mSent = new ArrayList<>();
+	private       SyncEngine       mEngine;
+
+	@Before
+	public void setUp() {
+		mSent.clear();
+		mEngine = new SyncEngine(
+				new RestApiManager(),
+				1
+		) {
+			@Override
+			protected void send( FactoryRequest request ) {
+				mSent.add( request.getObject() );
+			}
+		};
+		mEngine.register(
+				new HighItem( "prototype" ),
+				NO_CALL,
+				SyncEngine.PRIORITY_NORMAL,
+				1
+		);
+		mEngine.register(
+				new LowItem( "prototype" ),
+				NO_CALL,
+				SyncEngine.PRIORITY_LOW,
+				1
+		);
+	}
+
+	@Test
+	public void typesShareRequestsByPriority() {
+		mEngine.enqueue(
+				LowRecord.class,
+				requests(
+						false,
+						20
+				)
+		);
+		mEngine.enqueue(
+				HighRecord.class,
+				requests(
+						true,
+						20
+				)
+		);
+		answer( 20 );
+
+		//The low priority backlog has been queued first, the first one has been sent at once.
+		assertTrue( mSent.get( 0 ) instanceof LowItem );
+		//Then 4 of the high priority type per one of the low priority type.
+		int high = 0;
+		for( RestObject sent : mSent.subList(
+				1,
+				21
+		) ) {
+			if( sent instanceof HighItem ) {
+				high++;
+			}
+		}
+		assertEquals(
+				16,
+				high
+		);
+	}
+
+	@Test
+	public void lowPriorityIsNotStarved() {
+		mEngine.enqueue(
+				HighRecord.class,
+				requests(
+						true,
+						50
+				)
+		);
+		mEngine.enqueue(
+				LowRecord.class,
+				requests(
+						false,
+						2
+				)
+		);
+		answer( 12 );
+		int low = 0;
+		for( RestObject sent : mSent ) {
+			if( sent instanceof LowItem ) {
+				low++;
+			}
+		}
+		assertEquals(
+				2,
+				low
+		);
+	}
+
+	@Test
+	public void waitingTypeGathersNoWeight() {
+		mEngine.enqueue(
+				LowRecord.class,
+				requests(
+						false,
+						10
+				)
+		);
+		//Without others the low priority type gets all requests.
+		answer( 4 );
+		assertEquals(
+				5,
+				mSent.size()
+		);
+		mEngine.enqueue(
+				HighRecord.class,
+				requests(
+						true,
+						10
+				)
+		);
+		answer( 5 );
+		int high = 0;
+		for( RestObject sent : mSent.subList(
+				5,
+				10
+		) ) {
+			if( sent instanceof HighItem ) {
+				high++;
+			}
+		}
+		assertEquals(
+				4,
+				high
+		);
+	}
+
+	/**
+	 * Answer the running request {@code count} times, every answer lets the next request through.
+	 */
+	private void answer( int count ) {
+		for( int i = 0; i < count; i++ ) {
+			mEngine.onResponse(
+					mSent.get( mSent.size() - 1 ),
+					true
+			);
+		}
+	}
+
+	private static List<PendingRequest> requests( boolean high, int count ) {
+		List<PendingRequest> requests = new ArrayList<>( count );
+		for( int i = 0; i < count; i++ ) {
+			requests.add( new PendingRequest(
+					high ? new HighItem( "h" + i ) : new LowItem( "l" + i ),
+					RestObject.NOT_SYNCED
+			) );
+		}
+		return requests;
+	}
+}
@@ -0,0 +1,183 @@
+package com.chopping.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.RealmObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Changes between two snapshots are ranges of positions: removed ones from end to begin in old list, inserted and
+ * changed ones in new list. Moved or duplicated items reload the whole list.
+ *
+ * @author Xinyue Zhao
+ */
+public class ChangeSetTest {
+	/**
+	 * An item with a key and a version, the version is its fingerprint.
+	 */
+	static final class Row extends RealmObject {
+		private final String mKey;
+		private final long   mVersion;
+
+		Row( String key, long version ) {
+			mKey = key;
+			mVersion = version;
+		}
+	}
+
+	static final ChangeSet.Identity IDENTITY = new ChangeSet.Identity() {
+		@Override
+		public String keyOf( RealmObject item ) {
+			return ( (Row) item ).mKey;
+		}
+
+		@Override
+		public long fingerprintOf( RealmObject item ) {
+			return ( (Row) item ).mVersion;
+		}
+	};
+
+	@Test
+	public void sameItemsAreEmpty() {
+		ChangeSet changes = ChangeSet.diff(
+				snapshot( "a:1 b:1 c:1" ),
+				snapshot( "a:1 b:1 c:1" )
+		);
+		assertFalse( changes.isReload() );
+		assertTrue( changes.isEmpty() );
+	}
+
+	@Test
+	public void removedRangesRunFromEndToBegin() {
+		ChangeSet changes = ChangeSet.diff(
+				snapshot( "a:1 b:1 c:1 d:1 e:1 f:1" ),
+				snapshot( "a:1 d:1 f:1" )
+		);
+		assertFalse( changes.isReload() );
+		assertRanges(
+				changes.getRemoved(),
+				4,
+				1,
+				1,
+				2
+		);
+		assertTrue( changes.getInserted()
+						   .isEmpty() );
+		assertTrue( changes.getChanged()
+						   .isEmpty() );
+	}
+
+	@Test
+	public void insertedAndChangedArePositionsOfNewList() {
+		ChangeSet changes = ChangeSet.diff(
+				snapshot( "a:1 b:1 c:1" ),
+				snapshot( "x:1 a:1 b:2 y:1 z:1 c:2" )
+		);
+		assertFalse( changes.isReload() );
+		assertTrue( changes.getRemoved()
+						   .isEmpty() );
+		assertRanges(
+				changes.getInserted(),
+				0,
+				1,
+				3,
+				2
+		);
+		assertRanges(
+				changes.getChanged(),
+				2,
+				1,
+				5,
+				1
+		);
+	}
+
+	@Test
+	public void movedItemsReload() {
+		ChangeSet changes = ChangeSet.diff(
+				snapshot( "a:1 b:1 c:1" ),
+				snapshot( "a:1 c:1 b:1" )
+		);
+		assertTrue( changes.isReload() );
+		assertFalse( changes.isEmpty() );
+	}
+
+	@Test
+	public void duplicatedKeysReload() {
+		ChangeSet changes = ChangeSet.diff(
+				snapshot( "a:1 b:1" ),
+				snapshot( "a:1 b:1 b:2" )
+		);
+		assertTrue( changes.isReload() );
+	}
+
+	@Test
+	public void concatIsDiffedAsOneList() {
+		List<ChangeSet.Snapshot> pages = new ArrayList<>();
+		pages.add( snapshot( "a:1 b:1" ) );
+		pages.add( snapshot( "c:1 d:1" ) );
+		ChangeSet changes = ChangeSet.diff(
+				ChangeSet.Snapshot.concat( pages ),
+				snapshot( "a:1 c:2 d:1" )
+		);
+		assertFalse( changes.isReload() );
+		assertRanges(
+				changes.getRemoved(),
+				1,
+				1
+		);
+		assertRanges(
+				changes.getChanged(),
+				1,
+				1
+		);
+	}
+
+	/**
+	 * @param rows
+	 * 		Items separated by spaces, each is "key:version".
+	 */
+	static ChangeSet.Snapshot snapshot( String rows ) {
+		List<Row> items = new ArrayList<>();
+		for( String row : rows.split( " " ) ) {
+			String[] keyAndVersion = row.split( ":" );
+			items.add( new Row(
+					keyAndVersion[ 0 ],
+					Long.parseLong( keyAndVersion[ 1 ] )
+			) );
+		}
+		return ChangeSet.Snapshot.of(
+				items,
+				IDENTITY
+		);
+	}
+
+	/**
+	 * @param startsAndCounts
+	 * 		Start and count of every expected range.
+	 */
+	private static void assertRanges( List<ChangeSet.Range> ranges, int... startsAndCounts ) {
+		assertEquals(
+				startsAndCounts.length / 2,
+				ranges.size()
+		);
+		for( int i = 0; i < ranges.size(); i++ ) {
+			assertEquals(
+					startsAndCounts[ i * 2 ],
+					ranges.get( i )
+						  .getStart()
+			);
+			assertEquals(
+					startsAndCounts[ i * 2 + 1 ],
+					ranges.get( i )
+						  .getCount()
+			);
+		}
+	}
+}
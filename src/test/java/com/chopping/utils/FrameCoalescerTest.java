@@ -0,0 +1,93 @@
+package com.chopping.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Requests between two frames run the update once, a cancelled update does not run. The frame is simulated by calling
+ * {@link FrameCoalescer#dispatch()}.
+ *
+ * @author Xinyue Zhao
+ */
+public class FrameCoalescerTest {
+	private int            mUpdates;
+	private FrameCoalescer mCoalescer;
+
+	@Before
+	public void setUp() {
+		mUpdates = 0;
+		mCoalescer = new FrameCoalescer(
+				new Runnable() {
+					@Override
+					public void run() {
+						mUpdates++;
+					}
+				},
+				0
+		);
+	}
+
+	@Test
+	public void requestsOfOneFrameRunOnce() {
+		for( int i = 0; i < 100; i++ ) {
+			mCoalescer.request();
+		}
+		mCoalescer.dispatch();
+		assertEquals(
+				1,
+				mUpdates
+		);
+		assertEquals(
+				99,
+				mCoalescer.getMerged()
+		);
+		assertEquals(
+				1,
+				mCoalescer.getDispatched()
+		);
+	}
+
+	@Test
+	public void everyFrameWithRequestsRunsOnce() {
+		for( int frame = 0; frame < 3; frame++ ) {
+			mCoalescer.request();
+			mCoalescer.request();
+			mCoalescer.dispatch();
+		}
+		//A frame without request.
+		mCoalescer.dispatch();
+		assertEquals(
+				3,
+				mUpdates
+		);
+		assertEquals(
+				3,
+				mCoalescer.getMerged()
+		);
+	}
+
+	@Test
+	public void cancelledUpdateDoesNotRun() {
+		mCoalescer.request();
+		mCoalescer.cancel();
+		mCoalescer.dispatch();
+		assertEquals(
+				0,
+				mUpdates
+		);
+
+		//A request after the cancel is scheduled again.
+		mCoalescer.request();
+		mCoalescer.dispatch();
+		assertEquals(
+				1,
+				mUpdates
+		);
+		assertEquals(
+				0,
+				mCoalescer.getMerged()
+		);
+	}
+}
@@ -0,0 +1,190 @@
+package com.chopping.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.RealmObject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keyset paging: a page starts after the last item of the page before, items of the same "reqTime" are neither lost
+ * nor repeated across pages, and items that are newer than a page do not shift it.
+ *
+ * @author Xinyue Zhao
+ */
+public class PagedResultsTest {
+	private static final int PAGE_SIZE = 2;
+
+	/**
+	 * An item with request-id and request-time.
+	 */
+	static final class Row extends RealmObject {
+		private final String mReqId;
+		private final long   mReqTime;
+
+		Row( String reqId, long reqTime ) {
+			mReqId = reqId;
+			mReqTime = reqTime;
+		}
+	}
+
+	static final ChangeSet.Identity IDENTITY = new ChangeSet.Identity() {
+		@Override
+		public String keyOf( RealmObject item ) {
+			return ( (Row) item ).mReqId;
+		}
+
+		@Override
+		public long fingerprintOf( RealmObject item ) {
+			return ( (Row) item ).mReqTime;
+		}
+	};
+
+	@Test
+	public void pagesSplitItemsOfSameTime() {
+		PagedResults.Keyset keyset = keyset(
+				rows( "a:5 b:5 c:4 d:4 e:4 f:3" ),
+				PagedResults.Cursor.FIRST
+		);
+		assertPage(
+				"a b",
+				keyset.nextPage( PAGE_SIZE )
+		);
+		assertPage(
+				"c d",
+				keyset.nextPage( PAGE_SIZE )
+		);
+		assertPage(
+				"e f",
+				keyset.nextPage( PAGE_SIZE )
+		);
+		assertPage(
+				"",
+				keyset.nextPage( PAGE_SIZE )
+		);
+		assertNull( keyset.getNext() );
+	}
+
+	@Test
+	public void pageAfterCursorSkipsSeenItemsOfSameTime() {
+		PagedResults.Keyset first = keyset(
+				rows( "a:5 b:4 c:4 d:4 e:3" ),
+				PagedResults.Cursor.FIRST
+		);
+		first.nextPage( PAGE_SIZE );
+		PagedResults.Cursor cursor = first.getNext();
+
+		//Read again as the query does: not newer than the cursor, "b" has been on the page before.
+		PagedResults.Keyset next = keyset(
+				rows( "b:4 c:4 d:4 e:3" ),
+				cursor
+		);
+		assertPage(
+				"c d",
+				next.nextPage( PAGE_SIZE )
+		);
+		assertPage(
+				"e",
+				next.nextPage( PAGE_SIZE )
+		);
+	}
+
+	@Test
+	public void newerItemsDoNotShiftPages() {
+		PagedResults.Keyset first = keyset(
+				rows( "a:5 b:4 c:3 d:2" ),
+				PagedResults.Cursor.FIRST
+		);
+		List<RealmObject> page = first.nextPage( PAGE_SIZE );
+		ChangeSet.Snapshot before = ChangeSet.Snapshot.of(
+				page,
+				IDENTITY
+		);
+
+		//The page after still starts behind "b".
+		PagedResults.Keyset next = keyset(
+				rows( "b:4 c:3 d:2" ),
+				first.getNext()
+		);
+		assertPage(
+				"c d",
+				next.nextPage( PAGE_SIZE )
+		);
+		//"x" is newer than all items and "y" is as old as "b", both are inserted into the reloaded first page.
+		ChangeSet changes = ChangeSet.diff(
+				before,
+				ChangeSet.Snapshot.of(
+						keyset(
+								rows( "x:9 a:5 y:4 b:4 c:3" ),
+								PagedResults.Cursor.FIRST
+						).nextPage( 4 ),
+						IDENTITY
+				)
+		);
+		assertFalse( changes.isReload() );
+		assertEquals(
+				2,
+				changes.getInserted()
+					   .size()
+		);
+		assertTrue( changes.getRemoved()
+						   .isEmpty() );
+	}
+
+	private static PagedResults.Keyset keyset( List<Row> sorted, PagedResults.Cursor from ) {
+		return new PagedResults.Keyset(
+				sorted,
+				from
+		) {
+			@Override
+			long reqTimeOf( RealmObject item ) {
+				return ( (Row) item ).mReqTime;
+			}
+
+			@Override
+			String reqIdOf( RealmObject item ) {
+				return IDENTITY.keyOf( item );
+			}
+		};
+	}
+
+	/**
+	 * @param rows
+	 * 		Items sorted by time descending, separated by spaces, each is "reqId:reqTime".
+	 */
+	private static List<Row> rows( String rows ) {
+		List<Row> items = new ArrayList<>();
+		for( String row : rows.split( " " ) ) {
+			String[] idAndTime = row.split( ":" );
+			items.add( new Row(
+					idAndTime[ 0 ],
+					Long.parseLong( idAndTime[ 1 ] )
+			) );
+		}
+		return items;
+	}
+
+	/**
+	 * @param reqIds
+	 * 		Expected request-ids separated by spaces.
+	 */
+	private static void assertPage( String reqIds, List<RealmObject> page ) {
+		StringBuilder actual = new StringBuilder();
+		for( RealmObject item : page ) {
+			if( actual.length() > 0 ) {
+				actual.append( ' ' );
+			}
+			actual.append( IDENTITY.keyOf( item ) );
+		}
+		assertEquals(
+				reqIds,
+				actual.toString()
+		);
+	}
+}